@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Создание фильма через сервис: проверки рейтинга, дубликата и жанров, вставка с жанрами.
+ * Каждый вызов добавляет новый фильм, поэтому каталог растёт по ходу прогона.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmServiceBenchmark {
+    private final AtomicInteger sequence = new AtomicInteger();
+    private FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp(SeededApplication application) {
+        filmService = application.getBean(FilmService.class);
+    }
+
+    @Benchmark
+    public Optional<Film> create(QueryCounters counters) {
+        Optional<Film> result = filmService.create(new Film(0,
+                "Benchmark film " + sequence.incrementAndGet(),
+                "description",
+                LocalDate.of(2000, 1, 1),
+                100,
+                0,
+                new Mpa(1, "G", null),
+                new ArrayList<>(List.of(new Genre(1, null), new Genre(2, null))),
+                new ArrayList<>()));
+        counters.record();
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтения FilmDbStorage напрямую, в обход кеша сущностей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+    private FilmDbStorage filmStorage;
+    private int films;
+
+    @Setup(Level.Trial)
+    public void setUp(SeededApplication application) {
+        filmStorage = application.getBean(FilmDbStorage.class);
+        films = application.films;
+    }
+
+    @Benchmark
+    public Collection<Film> findAll(QueryCounters counters) {
+        Collection<Film> result = filmStorage.findAll();
+        counters.record();
+        return result;
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilms(QueryCounters counters) {
+        List<Film> result = filmStorage.getPopularFilms(10);
+        counters.record();
+        return result;
+    }
+
+    @Benchmark
+    public Optional<Film> getById(QueryCounters counters) {
+        Optional<Film> result = filmStorage.getById(ThreadLocalRandom.current().nextInt(films) + 1);
+        counters.record();
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Level;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+
+/**
+ * Вторичная метрика JMH: SQL-запросы в секунду. Запросов на операцию — её отношение к основному ops/s.
+ * Запросы считает SqlStatementCounter приложения; его счётчик хранится на поток и общий для всех экземпляров,
+ * поэтому достаточно своего экземпляра без обращения к контексту.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class QueryCounters {
+    private final SqlStatementCounter statementCounter = new SqlStatementCounter();
+    private long recorded;
+    public long queries;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        recorded = statementCounter.current();
+        queries = 0;
+    }
+
+    public void record() {
+        long current = statementCounter.current();
+        queries += current - recorded;
+        recorded = current;
+    }
+}
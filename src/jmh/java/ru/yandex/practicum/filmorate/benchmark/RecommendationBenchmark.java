@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рекомендации фильмов на 100 000 пользователей и 10 000 фильмов.
+ * recommend — только расчёт по индексу, getRecommendations — весь путь сервиса с чтением фильмов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecommendationBenchmark {
+    @Param("100000")
+    public int users;
+
+    @Param("10000")
+    public int films;
+
+    @Param("20")
+    public int likesPerUser;
+
+    private ConfigurableApplicationContext context;
+    private FilmService filmService;
+    private FilmLikeIndex likeIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SeededApplication.boot(users, films, 0, likesPerUser);
+        filmService = context.getBean(FilmService.class);
+        likeIndex = context.getBean(FilmLikeIndex.class);
+        likeIndex.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Integer> recommend() {
+        return likeIndex.recommend(randomUser(), 10);
+    }
+
+    @Benchmark
+    public Collection<Film> getRecommendations(QueryCounters counters) {
+        Collection<Film> result = filmService.getRecommendations(randomUser(), 10);
+        counters.record();
+        return result;
+    }
+
+    private int randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.web.servlet.setup.StandaloneMockMvcBuilder;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.servlet.LogbookFilter;
+import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.logging.AsyncRequestLogSink;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Задержка, которую журнал запросов добавляет к обработке в потоке запроса, по режимам filmorate.logging.requests.mode.
+ * none — без фильтра Logbook вовсе, от него считается добавка остальных режимов. Запросы идут через MockMvc
+ * с LogbookFilter поверх контроллера из наполненного контекста, сеть в замер не входит.
+ * getAllFilms отдаёт весь каталог (при films=1000 — сотни килобайт), getFilmById — короткий ответ.
+ * Журнал пишется в target/request-log-benchmark.log, в консоль не выводится; записи, отброшенные
+ * из-за полной очереди, печатаются в конце прогона — при них добавка занижена.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestLogBenchmark {
+    @Param({"none", "off", "headers", "truncated", "full"})
+    public String mode;
+
+    @Param("1000")
+    public int films;
+
+    @Param("1.0")
+    public double sampleRate;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SeededApplication.boot(1000, films, 20, 20,
+                "--filmorate.logging.requests.mode=" + (mode.equals("none") ? "off" : mode),
+                "--filmorate.logging.requests.sample-rate=" + sampleRate,
+                "--logging.level.ru.yandex.practicum.filmorate.logging=INFO",
+                "--logging.file.name=target/request-log-benchmark.log",
+                "--logging.threshold.console=OFF");
+        StandaloneMockMvcBuilder builder = MockMvcBuilders.standaloneSetup(context.getBean(FilmController.class));
+        if (!mode.equals("none")) {
+            builder.addFilters(new LogbookFilter(context.getBean(Logbook.class)));
+        }
+        mockMvc = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long dropped = context.getBean(AsyncRequestLogSink.class).droppedCount();
+        if (dropped > 0) {
+            System.out.println("Отброшено записей журнала: " + dropped);
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getAllFilms() throws Exception {
+        return mockMvc.perform(get("/films")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getFilmById() throws Exception {
+        return mockMvc.perform(get("/films/{id}", ThreadLocalRandom.current().nextInt(films) + 1)).andReturn();
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SocialGraphIndex;
+import ru.yandex.practicum.filmorate.support.DataSeeder;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Контекст приложения без веб-сервера поверх отдельной H2 в памяти, наполненной на весь прогон.
+ * Объёмы задаются параметрами JMH, например {@code -p films=10000 -p likesPerUser=50};
+ * {@code -p entityCacheWeight=0} выключает кеши фильмов и пользователей, чтобы мерить путь до базы.
+ */
+@State(Scope.Benchmark)
+public class SeededApplication {
+    @Param("1000")
+    public int users;
+
+    @Param("1000")
+    public int films;
+
+    @Param("20")
+    public int friendsPerUser;
+
+    @Param("20")
+    public int likesPerUser;
+
+    @Param("200000")
+    public long entityCacheWeight;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = boot(users, films, friendsPerUser, likesPerUser,
+                "--filmorate.cache.films.maximum-weight=" + entityCacheWeight,
+                "--filmorate.cache.users.maximum-weight=" + entityCacheWeight);
+    }
+
+    /**
+     * Поднимает и наполняет контекст, дополнительные аргументы переопределяют свойства приложения.
+     */
+    static ConfigurableApplicationContext boot(int users, int films, int friendsPerUser, int likesPerUser,
+                                               String... args) {
+        String[] allArgs = Stream.concat(Stream.of(
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--logging.level.root=WARN"), Arrays.stream(args))
+                .toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(allArgs);
+        DataSeeder.seed(context.getBean(JdbcTemplate.class), users, films, friendsPerUser, likesPerUser);
+        context.getBean(FilmPopularityIndex.class).rebuild();
+        context.getBean(SocialGraphIndex.class).rebuild();
+        return context;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+}
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.util.FileSystemUtils;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.support.DataSeeder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время старта на файловой H2, заранее наполненной данными: users=40000 даёт около миллиона строк
+ * (по 12 друзей и 12 лайков на пользователя). Каждый вызов заново открывает файл базы, как при запуске;
+ * openDatabase — только это открытие, его время входит во все остальные замеры.
+ * flywayMigrate — инициализация схемы сейчас: сверка истории миграций без выполнения DDL.
+ * sqlInit — как было при spring.sql.init.mode=always: весь скрипт схемы и справочников на каждом старте.
+ * applicationStartup — подъём контекста без веб-сервера. Индексы в памяти загружаются при первом чтении
+ * и в замер не входят; закрытие контекста (и сжатие файла H2 при закрытии) тоже вынесено из замера.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class StartupBenchmark {
+    @Param({"0", "40000"})
+    public int users;
+
+    @Param("12")
+    public int friendsPerUser;
+
+    @Param("12")
+    public int likesPerUser;
+
+    private Path directory;
+    private String url;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        directory = Files.createTempDirectory("filmorate-startup");
+        url = "jdbc:h2:file:" + directory.resolve("filmorate");
+        SingleConnectionDataSource connection = open();
+        try {
+            flyway(connection).migrate();
+            DataSeeder.seed(new JdbcTemplate(connection), users, users / 4, friendsPerUser, likesPerUser);
+        } finally {
+            connection.destroy();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean openDatabase() throws SQLException {
+        SingleConnectionDataSource connection = open();
+        try {
+            return connection.getConnection().isValid(0);
+        } finally {
+            connection.destroy();
+        }
+    }
+
+    @Benchmark
+    public MigrateResult flywayMigrate() {
+        SingleConnectionDataSource connection = open();
+        try {
+            return flyway(connection).migrate();
+        } finally {
+            connection.destroy();
+        }
+    }
+
+    @Benchmark
+    public boolean sqlInit() {
+        SingleConnectionDataSource connection = open();
+        try {
+            new ResourceDatabasePopulator(
+                    new ClassPathResource("db/migration/V1__create_schema.sql"),
+                    new ClassPathResource("db/migration/R__reference_data.sql")).execute(connection);
+            return true;
+        } finally {
+            connection.destroy();
+        }
+    }
+
+    @Benchmark
+    public boolean applicationStartup() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url, "--logging.level.root=WARN");
+        return context.isActive();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeContext() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    // Одно соединение на весь вызов: иначе H2 закрывает и заново открывает файл базы между соединениями
+    private SingleConnectionDataSource open() {
+        return new SingleConnectionDataSource(url, "sa", "password", true);
+    }
+
+    // Те же настройки, что spring.flyway.* в application.properties
+    private static Flyway flyway(DataSource dataSource) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load();
+    }
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие чтения через основные хранилища приложения: db — H2 с кешами сущностей, in-memory — профиль
+ * in-memory, sharded — профиль sharded с четырьмя шардами H2 в памяти. Для in-memory и sharded данные
+ * переносятся из наполненного контекста с базой через create, поэтому у всех движков одинаковые фильмы,
+ * лайки и друзья. Мерить несколькими потоками: {@code -t 8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageEngineBenchmark {
+    @Param({"db", "in-memory", "sharded"})
+    public String engine;
+
+    @Param("10000")
+    public int users;
+
+    @Param("10000")
+    public int films;
+
+    private ConfigurableApplicationContext seeded;
+    private ConfigurableApplicationContext context;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        seeded = SeededApplication.boot(users, films, 20, 20);
+        if (engine.equals("db")) {
+            context = seeded;
+        } else {
+            context = new SpringApplicationBuilder(FilmorateApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .profiles(engine)
+                    .run("--logging.level.root=WARN",
+                            "--filmorate.storage.shards.url=jdbc:h2:mem:benchmark-shard-{shard};DB_CLOSE_DELAY=-1");
+            copy(seeded, context);
+        }
+        filmStorage = context.getBean(FilmStorage.class);
+        userStorage = context.getBean(UserStorage.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        seeded.close();
+    }
+
+    @Benchmark
+    public Optional<Film> getFilmById() {
+        return filmStorage.getById(ThreadLocalRandom.current().nextInt(films) + 1);
+    }
+
+    @Benchmark
+    public Collection<Film> getPopularFilms() {
+        return filmStorage.getPopularFilms(10);
+    }
+
+    @Benchmark
+    public Optional<User> getUserById() {
+        return userStorage.getById(ThreadLocalRandom.current().nextInt(users) + 1);
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return userStorage.getFriends(ThreadLocalRandom.current().nextInt(users) + 1);
+    }
+
+    // Ids в базе идут подряд с единицы, поэтому в пустом хранилище create выдаёт те же
+    private static void copy(ConfigurableApplicationContext from, ConfigurableApplicationContext to) {
+        UserStorage target = to.getBean(UserStorage.class);
+        Map<Integer, List<Integer>> friends = new HashMap<>();
+        from.getBean(UserStorage.class).streamAll(user -> {
+            friends.put(user.getId(), user.getFriends());
+            user.setFriends(new ArrayList<>());
+            target.create(user);
+        });
+        friends.forEach((userId, friendIds) -> friendIds.forEach(friendId -> target.addFriend(userId, friendId)));
+        FilmStorage filmTarget = to.getBean(FilmStorage.class);
+        from.getBean(FilmStorage.class).streamAll(filmTarget::create);
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рекомендации друзей на графе в миллион связей (20 000 пользователей по 50 друзей).
+ * Режим SampleTime даёт перцентили задержки: p99 сравнивается с time-budget.
+ * graph=false — тот же запрос агрегатом в SQL, без графа в памяти.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestionBenchmark {
+    @Param("20000")
+    public int users;
+
+    @Param("50")
+    public int friendsPerUser;
+
+    @Param({"true", "false"})
+    public boolean graph;
+
+    @Param("1000")
+    public int maxFanout;
+
+    @Param("PT0.05S")
+    public String timeBudget;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SeededApplication.boot(users, 1, friendsPerUser, 0,
+                "--filmorate.graph.enabled=" + graph,
+                "--filmorate.graph.suggestions.max-fanout=" + maxFanout,
+                "--filmorate.graph.suggestions.time-budget=" + timeBudget);
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Collection<User> getSuggestions(QueryCounters counters) {
+        Collection<User> result = userService.getSuggestions(ThreadLocalRandom.current().nextInt(users) + 1, 10);
+        counters.record();
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+    private UserService userService;
+    private int users;
+
+    @Setup(Level.Trial)
+    public void setUp(SeededApplication application) {
+        userService = application.getBean(UserService.class);
+        users = application.users;
+    }
+
+    @Benchmark
+    public Collection<User> getFriendsListById(QueryCounters counters) {
+        Collection<User> result = userService.getFriendsListById(randomUser());
+        counters.record();
+        return result;
+    }
+
+    @Benchmark
+    public Collection<User> getCommonFriendsList(QueryCounters counters) {
+        Collection<User> result = userService.getCommonFriendsList(randomUser(), randomUser());
+        counters.record();
+        return result;
+    }
+
+    private int randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1;
+    }
+}
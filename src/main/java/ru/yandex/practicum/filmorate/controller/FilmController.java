@@ -1,10 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
@@ -16,7 +21,10 @@ import java.util.*;
 @RequestMapping("/films")
 public class FilmController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final FilmService filmService;
+    private final NdjsonStreamer ndjsonStreamer;
 
     @PostMapping
     public Optional<Film> addFilm(@Valid @RequestBody Film film) {
@@ -29,8 +37,24 @@ public class FilmController {
     }
 
     @GetMapping
-    public Collection<Film> getAllFilms() {
-        return filmService.findAll();
+    public Collection<Film> getAllFilms(@RequestParam(required = false) @PositiveOrZero Integer after,
+                                        @RequestParam(required = false) @Positive @Max(1000) Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.findAll();
+        }
+        return filmService.findPage(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        return ndjsonStreamer.stream(filmService::streamAll);
+    }
+
+    @GetMapping("/search")
+    public Collection<Film> search(@RequestParam String query,
+                                   @RequestParam(defaultValue = "title,description") List<String> by,
+                                   @RequestParam(defaultValue = "10") @Positive @Max(100) int limit) {
+        return filmService.search(query, by, limit);
     }
 
     @GetMapping("/{id}")
@@ -49,7 +73,10 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public Collection<Film> getPopularFilms(@RequestParam(defaultValue = "10") @Positive(message = "Количество должно быть положительным") Integer count) {
-        return filmService.getPopularFilms(count);
+    public Collection<Film> getPopularFilms(@RequestParam(defaultValue = "10") @Positive(message = "Количество должно быть положительным") Integer count,
+                                            @RequestParam(required = false) Integer genreId,
+                                            @RequestParam(required = false) Integer mpaId,
+                                            @RequestParam(required = false) Integer year) {
+        return filmService.getPopularFilms(count, genreId, mpaId, year);
     }
 }
\ No newline at end of file
@@ -1,19 +1,33 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import java.util.Collection;
 import java.util.Optional;
 
+@Validated
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/users")
 public class UserController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final UserService userService;
+    private final FilmService filmService;
+    private final NdjsonStreamer ndjsonStreamer;
 
     @PostMapping
     public Optional<User> createUser(@Valid @RequestBody User user) {
@@ -26,8 +40,17 @@ public class UserController {
     }
 
     @GetMapping
-    public Collection<User> getAllUsers() {
-        return userService.findAll();
+    public Collection<User> getAllUsers(@RequestParam(required = false) @PositiveOrZero Integer after,
+                                        @RequestParam(required = false) @Positive @Max(1000) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.findAll();
+        }
+        return userService.findPage(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        return ndjsonStreamer.stream(userService::streamAll);
     }
 
     @GetMapping("/{id}")
@@ -54,4 +77,16 @@ public class UserController {
     public Collection<User> getCommonFriends(@PathVariable int firstId, @PathVariable int secondId) {
         return userService.getCommonFriendsList(firstId, secondId);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/{id}/suggestions")
+    public Collection<User> getSuggestions(@PathVariable int id,
+                                           @RequestParam(defaultValue = "10") @Positive @Max(100) int limit) {
+        return userService.getSuggestions(id, limit);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public Collection<Film> getRecommendations(@PathVariable int id,
+                                               @RequestParam(defaultValue = "10") @Positive @Max(100) int limit) {
+        return filmService.getRecommendations(id, limit);
+    }
+}
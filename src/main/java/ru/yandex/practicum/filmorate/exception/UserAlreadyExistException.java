@@ -4,4 +4,8 @@ public class UserAlreadyExistException extends RuntimeException {
     public UserAlreadyExistException(String s) {
         super(s);
     }
+
+    public UserAlreadyExistException(String s, Throwable cause) {
+        super(s, cause);
+    }
 }
\ No newline at end of file
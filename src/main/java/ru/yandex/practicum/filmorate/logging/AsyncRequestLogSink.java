@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpHeaders;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Приёмник Logbook, который не пишет журнал в потоке запроса. Поток запроса только снимает
+ * со случившегося обмена то, что нужно для строки журнала (заголовки, тела уже обрезаны фильтрами),
+ * и кладёт в ограниченную очередь без ожидания. Если очередь полна, запись отбрасывается и считается
+ * в filmorate.logging.requests.dropped — медленный диск не должен тормозить ответы.
+ * Строки собирает и пишет один фоновый поток в переиспользуемый буфер; запрос и ответ — одной строкой.
+ * Бин создаёт {@link RequestLogConfiguration}: при выключенном журнале приложения приёмник не должен
+ * подменять приёмник стартера Logbook.
+ */
+@Slf4j
+public class AsyncRequestLogSink implements Sink, MeterBinder {
+    private static final int BATCH_SIZE = 256;
+
+    private final BlockingQueue<Entry> queue;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+    private Thread worker;
+
+    public AsyncRequestLogSink(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runWorker, "request-log");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+        // Что не успел записать поток, дописываем при остановке
+        drain(new ArrayList<>(), new StringBuilder());
+    }
+
+    // При выключенном уровне INFO Logbook не тратит время на запрос вовсе
+    @Override
+    public boolean isActive() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request) {
+        // Запрос пишется вместе с ответом
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response) throws IOException {
+        Entry entry = new Entry(correlation.getId(), correlation.getDuration().toNanos(),
+                request.getMethod(), request.getPath(), request.getQuery(), request.getHeaders(), request.getBodyAsString(),
+                response.getStatus(), response.getHeaders(), response.getBodyAsString());
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.logging.requests.queued", queue, BlockingQueue::size)
+                .description("Записей журнала запросов в очереди на запись")
+                .register(registry);
+        FunctionCounter.builder("filmorate.logging.requests.written", written, LongAdder::sum)
+                .description("Записей журнала запросов, отправленных в лог")
+                .register(registry);
+        FunctionCounter.builder("filmorate.logging.requests.dropped", dropped, LongAdder::sum)
+                .description("Записей журнала запросов, отброшенных из-за полной очереди")
+                .register(registry);
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    private void runWorker() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder line = new StringBuilder(1024);
+        while (running) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            drain(batch, line);
+        }
+    }
+
+    private void drain(List<Entry> batch, StringBuilder line) {
+        do {
+            queue.drainTo(batch, BATCH_SIZE - batch.size());
+            for (Entry entry : batch) {
+                line.setLength(0);
+                entry.format(line);
+                log.info("{}", line);
+                written.increment();
+            }
+            batch.clear();
+        } while (!queue.isEmpty());
+    }
+
+    private record Entry(String id, long durationNanos,
+                         String method, String path, String query, HttpHeaders requestHeaders, String requestBody,
+                         int status, HttpHeaders responseHeaders, String responseBody) {
+
+        void format(StringBuilder line) {
+            line.append(method).append(' ').append(path);
+            if (!query.isEmpty()) {
+                line.append('?').append(query);
+            }
+            line.append(' ').append(status).append(' ')
+                    .append(durationNanos / 1_000_000).append('.')
+                    .append(durationNanos / 100_000 % 10).append("ms id=").append(id);
+            appendHeaders(line.append(" request=["), requestHeaders);
+            appendBody(line, requestBody);
+            appendHeaders(line.append(" response=["), responseHeaders);
+            appendBody(line, responseBody);
+        }
+
+        private static void appendHeaders(StringBuilder line, HttpHeaders headers) {
+            boolean first = true;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (!first) {
+                    line.append(", ");
+                }
+                line.append(header.getKey()).append(": ");
+                List<String> values = header.getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    line.append(i == 0 ? "" : ",").append(values.get(i));
+                }
+                first = false;
+            }
+            line.append(']');
+        }
+
+        private static void appendBody(StringBuilder line, String body) {
+            if (!body.isEmpty()) {
+                line.append(' ').append(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.zalando.logbook.BodyFilter;
+import org.zalando.logbook.ForwardingHttpRequest;
+import org.zalando.logbook.ForwardingHttpResponse;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.RequestFilter;
+import org.zalando.logbook.ResponseFilter;
+import org.zalando.logbook.core.DefaultStrategy;
+import org.zalando.logbook.core.RequestFilters;
+import org.zalando.logbook.core.ResponseFilters;
+import org.zalando.logbook.core.WithoutBodyStrategy;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Logbook приложения вместо настроенного стартером: режим из {@link RequestLogMode}, выборка доли запросов
+ * и асинхронная запись через {@link AsyncRequestLogSink}. Невыбранный запрос Logbook пропускает без обёрток.
+ * В режиме truncated тело обрезается по байтам до того, как Logbook превратит его в строку, поэтому
+ * многомегабайтный ответ GET /films не декодируется целиком; буферизуется он при этом всё равно.
+ * Фильтры тел Logbook по умолчанию (разбор и сжатие JSON) отключены, заголовки по-прежнему маскируются.
+ * filmorate.logging.requests.enabled=false убирает и Logbook, и приёмник приложения: остаётся Logbook стартера
+ * с его синхронным приёмником (logging.level.org.zalando.logbook).
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.logging.requests.enabled", matchIfMissing = true)
+public class RequestLogConfiguration {
+
+    // Остановку выполняет @PreDestroy приёмника, выведенный метод shutdown вызвал бы её второй раз
+    @Bean(destroyMethod = "")
+    public AsyncRequestLogSink asyncRequestLogSink(
+            @Value("${filmorate.logging.requests.queue-capacity:4096}") int capacity) {
+        return new AsyncRequestLogSink(capacity);
+    }
+
+    @Bean
+    public Logbook logbook(AsyncRequestLogSink sink,
+                           @Value("${filmorate.logging.requests.mode:headers}") RequestLogMode mode,
+                           @Value("${filmorate.logging.requests.sample-rate:1.0}") double sampleRate,
+                           @Value("${filmorate.logging.requests.max-body-size:1024}") int maxBodySize) {
+        log.info("Журнал запросов: режим {}, доля {}, тела до {} байт", mode, sampleRate, maxBodySize);
+        RequestFilter requestFilter = RequestFilters.defaultValue();
+        ResponseFilter responseFilter = ResponseFilters.defaultValue();
+        if (mode == RequestLogMode.TRUNCATED) {
+            // Обрезка идёт первой: следующие фильтры Logbook читают тело уже обрезанным
+            requestFilter = RequestFilter.merge(request -> new TruncatedRequest(request, maxBodySize), requestFilter);
+            responseFilter = ResponseFilter.merge(response -> new TruncatedResponse(response, maxBodySize),
+                    responseFilter);
+        }
+        return Logbook.builder()
+                .condition(condition(mode, sampleRate))
+                .strategy(mode == RequestLogMode.HEADERS ? new WithoutBodyStrategy() : new DefaultStrategy())
+                .requestFilter(requestFilter)
+                .responseFilter(responseFilter)
+                .bodyFilter(BodyFilter.none())
+                .sink(sink)
+                .build();
+    }
+
+    private static Predicate<HttpRequest> condition(RequestLogMode mode, double sampleRate) {
+        if (mode == RequestLogMode.OFF || sampleRate <= 0) {
+            return request -> false;
+        }
+        if (sampleRate >= 1) {
+            return request -> true;
+        }
+        return request -> ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    // В UTF-8 граница отступает к началу символа, на который пришлась: иначе кириллица обрывается на «�»
+    static byte[] truncate(byte[] body, int limit, Charset charset) {
+        if (body.length <= limit) {
+            return body;
+        }
+        int end = limit;
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            while (end > 0 && (body[end] & 0xC0) == 0x80) {
+                end--;
+            }
+        }
+        return Arrays.copyOf(body, end);
+    }
+
+    private record TruncatedRequest(HttpRequest delegate, int limit) implements ForwardingHttpRequest {
+        @Override
+        public byte[] getBody() throws IOException {
+            return truncate(delegate.getBody(), limit, getCharset());
+        }
+
+        @Override
+        public String getBodyAsString() throws IOException {
+            return new String(getBody(), getCharset());
+        }
+    }
+
+    private record TruncatedResponse(HttpResponse delegate, int limit) implements ForwardingHttpResponse {
+        @Override
+        public byte[] getBody() throws IOException {
+            return truncate(delegate.getBody(), limit, getCharset());
+        }
+
+        @Override
+        public String getBodyAsString() throws IOException {
+            return new String(getBody(), getCharset());
+        }
+    }
+}
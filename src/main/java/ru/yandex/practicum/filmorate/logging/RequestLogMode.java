@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.logging;
+
+/**
+ * Что попадает в журнал HTTP-запросов.
+ */
+public enum RequestLogMode {
+    /** Журнал выключен, Logbook не оборачивает запросы. */
+    OFF,
+    /** Строка запроса, статус, время и заголовки; тела не буферизуются. */
+    HEADERS,
+    /** Как FULL, но в журнал идут только первые max-body-size байт каждого тела. */
+    TRUNCATED,
+    /** Тела запроса и ответа целиком. */
+    FULL
+}
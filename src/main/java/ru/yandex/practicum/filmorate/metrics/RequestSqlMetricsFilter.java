@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Число SQL-запросов за HTTP-запрос: сводка filmorate.http.sql.statements с тегами method и uri
+ * (шаблон пути, как у http.server.requests). Рост среднего на одном uri при том же ответе — признак N+1.
+ * Запрос, выполнивший больше warn-threshold запросов, дополнительно пишется в лог.
+ */
+@Slf4j
+@Component
+public class RequestSqlMetricsFilter extends OncePerRequestFilter {
+    private final MeterRegistry registry;
+    private final SqlStatementCounter statementCounter;
+    private final int warnThreshold;
+
+    public RequestSqlMetricsFilter(MeterRegistry registry,
+                                   SqlStatementCounter statementCounter,
+                                   @Value("${filmorate.metrics.sql.warn-threshold:50}") int warnThreshold) {
+        this.registry = registry;
+        this.statementCounter = statementCounter;
+        this.warnThreshold = warnThreshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long before = statementCounter.current();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            long statements = statementCounter.current() - before;
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            DistributionSummary.builder("filmorate.http.sql.statements")
+                    .description("SQL-запросов за HTTP-запрос")
+                    .tags("method", request.getMethod(), "uri", uri)
+                    .register(registry)
+                    .record(statements);
+            if (statements > warnThreshold) {
+                log.warn("{} {} выполнил SQL-запросов: {}", request.getMethod(), request.getRequestURI(), statements);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Оборачивает DataSource приложения и считает SQL-запросы, отправленные из каждого потока.
+ * Счётчик только растёт: число запросов за участок кода — разность {@link #current()} в конце и в начале,
+ * так вложенные замеры (HTTP-запрос, метод хранилища внутри него) не мешают друг другу.
+ * Задача, обёрнутая {@link #propagate}, считает свои запросы в счётчик создавшего её потока: так в замер
+ * запроса попадают параллельные запросы к шардам. Прочие потоки (фоновый сброс лайков, потоковая выдача
+ * ответа) в замер потока запроса не попадают.
+ * Слушатели получают текст каждого запроса из любого потока — так их перечисляют тесты.
+ */
+@Component
+public class SqlStatementCounter implements BeanPostProcessor {
+    private static final ThreadLocal<AtomicLong> COUNT = ThreadLocal.withInitial(AtomicLong::new);
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public long current() {
+        return COUNT.get().get();
+    }
+
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    public <T> Callable<T> propagate(Callable<T> task) {
+        AtomicLong owner = COUNT.get();
+        return () -> {
+            AtomicLong own = COUNT.get();
+            COUNT.set(owner);
+            try {
+                return task.call();
+            } finally {
+                COUNT.set(own);
+            }
+        };
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return wrap(dataSource);
+        }
+        return bean;
+    }
+
+    // Для баз, которые не объявлены бинами (шарды): их запросы считаются так же
+    public DataSource wrap(DataSource dataSource) {
+        return (DataSource) proxy(DataSource.class, dataSource);
+    }
+
+    private Object proxy(Class<?> type, Object target) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            String name = method.getName();
+            if (result instanceof Connection) {
+                return proxy(Connection.class, result);
+            }
+            if (name.equals("prepareStatement") || name.equals("prepareCall")) {
+                record((String) args[0]);
+            }
+            if (type == Connection.class && name.equals("createStatement")) {
+                return proxy(Statement.class, result);
+            }
+            if (type == Statement.class && name.startsWith("execute") && args != null) {
+                record((String) args[0]);
+            }
+            return result;
+        });
+    }
+
+    private void record(String sql) {
+        COUNT.get().incrementAndGet();
+        listeners.forEach(listener -> listener.accept(sql));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
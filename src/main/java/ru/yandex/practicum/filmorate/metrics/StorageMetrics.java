@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеряет каждый вызов методов FilmStorage, UserStorage, GenreStorage и MpaStorage у всех их реализаций:
+ * таймер filmorate.storage и число SQL-запросов за вызов filmorate.storage.sql.statements,
+ * с тегами storage (класс реализации) и method. Слои замеряются отдельно: вызов кеширующего хранилища
+ * включает вложенный вызов хранилища в базе, по разнице видно, сколько снял кеш.
+ * Прокси создаётся подклассом, поэтому внедрение по конкретному классу (FilmDbStorage) продолжает работать.
+ */
+@Component
+public class StorageMetrics implements BeanPostProcessor {
+    private static final List<Class<?>> STORAGES =
+            List.of(FilmStorage.class, UserStorage.class, GenreStorage.class, MpaStorage.class);
+
+    private final ObjectProvider<MeterRegistry> registry;
+    private final SqlStatementCounter statementCounter;
+    private final boolean enabled;
+
+    // Реестр берётся при первом вызове: получить его при создании обработчика значило бы создать раньше биндеров
+    public StorageMetrics(ObjectProvider<MeterRegistry> registry,
+                          SqlStatementCounter statementCounter,
+                          @Value("${filmorate.metrics.storage.enabled:true}") boolean enabled) {
+        this.registry = registry;
+        this.statementCounter = statementCounter;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || STORAGES.stream().noneMatch(type -> type.isInstance(bean))) {
+            return bean;
+        }
+        // Бин может быть уже обёрнут другим прокси (чтение с реплики), в тег идёт исходный класс
+        String storage = AopUtils.getTargetClass(bean).getSimpleName();
+        // Свои счётчики у каждого хранилища: унаследованный default-метод интерфейса у них общий
+        Map<Method, Optional<Meters>> meters = new ConcurrentHashMap<>();
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            Optional<Meters> methodMeters = meters.computeIfAbsent(invocation.getMethod(), method ->
+                    isStorageMethod(method) ? Optional.of(new Meters(storage, method.getName())) : Optional.empty());
+            if (methodMeters.isEmpty()) {
+                return invocation.proceed();
+            }
+            return methodMeters.get().record(invocation);
+        });
+        return factory.getProxy();
+    }
+
+    private static boolean isStorageMethod(Method method) {
+        return STORAGES.stream()
+                .flatMap(type -> Arrays.stream(type.getMethods()))
+                .anyMatch(declared -> declared.getName().equals(method.getName())
+                        && Arrays.equals(declared.getParameterTypes(), method.getParameterTypes()));
+    }
+
+    private final class Meters {
+        private final String storage;
+        private final String method;
+        private final Timer success;
+        private final DistributionSummary statements;
+
+        Meters(String storage, String method) {
+            this.storage = storage;
+            this.method = method;
+            this.success = timer("none");
+            this.statements = DistributionSummary.builder("filmorate.storage.sql.statements")
+                    .description("SQL-запросов за вызов метода хранилища")
+                    .tags("storage", storage, "method", method)
+                    .register(registry.getObject());
+        }
+
+        Object record(MethodInvocation invocation) throws Throwable {
+            long before = statementCounter.current();
+            long start = System.nanoTime();
+            Timer timer = success;
+            try {
+                return invocation.proceed();
+            } catch (RuntimeException e) {
+                timer = timer(e.getClass().getSimpleName());
+                throw e;
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                statements.record(statementCounter.current() - before);
+            }
+        }
+
+        // Таймеры неуспешных вызовов заводятся по мере появления исключений
+        private Timer timer(String exception) {
+            return Timer.builder("filmorate.storage")
+                    .description("Время вызова метода хранилища")
+                    .tags("storage", storage, "method", method, "exception", exception)
+                    .register(registry.getObject());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -16,6 +17,7 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,13 +29,14 @@ public class FilmService {
     private final UserService userService;
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
+    private final LikeWriteBehindBuffer likeBuffer;
 
+    @Transactional
     public Optional<Film> create(Film film) throws ValidationException {
-        check(film);
-
         if (mpaStorage.getMpaById(film.getMpa().getId()).isEmpty()) {
             throw new ValidationException(String.format("Возрастной рейтинг с id: '%d' не найден", film.getMpa().getId()));
         }
+        check(film);
 
         Set<Integer> genreFilmIds = film.getGenres().stream()
                 .map(Genre::getId)
@@ -50,6 +53,7 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    @Transactional
     public Optional<Film> update(Film film) {
         return filmStorage.update(film);
     }
@@ -59,9 +63,19 @@ public class FilmService {
         return filmStorage.findAll();
     }
 
+    public Collection<Film> findPage(int afterId, int limit) {
+        log.info("Страница фильмов после id: '{}' отправлена", afterId);
+        return filmStorage.findPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<Film> action) {
+        log.info("Потоковая выгрузка фильмов");
+        filmStorage.streamAll(action);
+    }
+
     public Film getById(int id) {
         log.info("Фильм с id: '{}' отправлен", id);
-        return getFilmStored(id);
+        return likeBuffer.withPendingLikes(getFilmStored(id));
     }
 
     public Film addLike(int filmId, int userId) {
@@ -69,7 +83,7 @@ public class FilmService {
                 .orElseThrow(() -> new ObjectNotFoundException("Фильм не найден"));
         User user = userStorage.getById(userId)
             .orElseThrow(() -> new ObjectNotFoundException("Пользователь не найден"));
-        filmStorage.addLike(film.getId(), user.getId());
+        likeBuffer.addLike(film.getId(), user.getId());
         log.info("Пользователь с id: {} поставил лайк фильму с id {}", userId, filmId);
         return film;
     }
@@ -77,14 +91,30 @@ public class FilmService {
     public void removeLike(int filmId, int userId) {
         Film film = getFilmStored(filmId);
         User user = userService.getById(userId);
-        filmStorage.deleteLike(film.getId(), user.getId());
+        likeBuffer.deleteLike(film.getId(), user.getId());
         log.info("У Фильм с id: '{}' удалён лайк", filmId);
     }
 
-    public Collection<Film> getPopularFilms(int count) {
+    public Collection<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year) {
 
         log.info("Список популярных фильмов отправлен");
-        return filmStorage.getPopularFilms(count);
+        return filmStorage.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    public Collection<Film> getRecommendations(int userId, int limit) {
+        userService.getById(userId);
+        log.info("Рекомендации для пользователя с id: '{}' отправлены", userId);
+        return filmStorage.getRecommendations(userId, limit);
+    }
+
+    public Collection<Film> search(String query, Collection<String> by, int limit) {
+        for (String field : by) {
+            if (!field.equals("title") && !field.equals("description")) {
+                throw new ValidationException(String.format("Поиск по полю '%s' не поддерживается", field));
+            }
+        }
+        log.info("Результаты поиска по запросу '{}' отправлены", query);
+        return filmStorage.search(query, by.contains("title"), by.contains("description"), limit);
     }
 
     private Film getFilmStored(int supposedId) {
@@ -96,7 +126,8 @@ public class FilmService {
     }
 
     private void check(Film filmToAdd) {
-        boolean exists = filmStorage.findAll().stream()
+        boolean exists = filmStorage.findByNaturalKey(filmToAdd.getName(), filmToAdd.getReleaseDate(),
+                        filmToAdd.getDuration(), filmToAdd.getMpa().getId()).stream()
                 .anyMatch(film -> isAlreadyExist(filmToAdd, film));
         if (exists) {
             log.warn("Фильм к добавлению: {}", filmToAdd);
@@ -104,11 +135,14 @@ public class FilmService {
         }
     }
 
+    // Название, дата, длительность и рейтинг уже совпали в запросе к хранилищу, осталось сравнить жанры
     private boolean isAlreadyExist(Film filmToAdd, Film film) {
-        return filmToAdd.getName().equals(film.getName()) &&
-                filmToAdd.getReleaseDate().equals(film.getReleaseDate()) &&
-                filmToAdd.getDuration() == (film.getDuration()) &&
-                filmToAdd.getMpa().equals(film.getMpa()) &&
-                filmToAdd.getGenres().equals(film.getGenres());
+        return genreIds(filmToAdd).equals(genreIds(film));
+    }
+
+    private Set<Integer> genreIds(Film film) {
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
     }
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -19,8 +21,8 @@ public class GenreService {
         return genreStorage.getAllGenres();
     }
 
-    public Collection<Genre> getFilmGenres(int filmId) {
-        return genreStorage.getGenresByFilmId(filmId);
+    public Map<Integer, List<Genre>> getFilmsGenres(Collection<Integer> filmIds) {
+        return genreStorage.getGenresByFilmIds(filmIds);
     }
 
     public Optional<Genre> getGenreById(int strId) {
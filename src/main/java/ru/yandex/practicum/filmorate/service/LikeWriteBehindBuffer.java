@@ -0,0 +1,382 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись лайков. В буфере хранится только последнее действие для каждой пары (фильм, пользователь),
+ * фоновый поток сбрасывает буфер в LIKES через FilmStorage по размеру или по таймеру — пакетами
+ * не больше flush-size пар, каждый одной транзакцией.
+ * Если буфер полон дольше offer-timeout, лайк записывается синхронно в потоке запроса.
+ * Если пакет не записался, его пары пишутся по одному. Лайк, который не удалось записать,
+ * возвращается в буфер и пробуется снова при следующих сбросах, всего до max-attempts раз; после этого он отбрасывается и учитывается в счётчике dead-letters.
+ * При выключенном режиме все лайки сразу уходят в хранилище.
+ * <p>
+ * Буфер живёт только в памяти процесса: лайки, не записанные к моменту падения процесса, теряются.
+ * Штатная остановка сбрасывает буфер. Незаписанные лайки накладываются только на фильм, прочитанный
+ * по id; популярные фильмы, рекомендации, поиск и полный список видят лайки после сброса.
+ */
+@Slf4j
+@Component
+public class LikeWriteBehindBuffer implements MeterBinder {
+    private final FilmStorage filmStorage;
+    private final boolean enabled;
+    private final int capacity;
+    private final int flushSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final int maxAttempts;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+    // Неудачные попытки по парам (фильм, пользователь), меняется только под flushLock
+    private final Map<Integer, Map<Integer, Integer>> failures = new HashMap<>();
+    private Map<Integer, Map<Integer, Boolean>> pending = new HashMap<>();
+    private Map<Integer, Map<Integer, Boolean>> inFlight = new HashMap<>();
+    private int pendingCount;
+    private volatile boolean running;
+    private Thread worker;
+
+    public LikeWriteBehindBuffer(FilmStorage filmStorage,
+                                 @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                 @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                                 @Value("${filmorate.likes.write-behind.flush-size:500}") int flushSize,
+                                 @Value("${filmorate.likes.write-behind.flush-interval:PT0.2S}") Duration flushInterval,
+                                 @Value("${filmorate.likes.write-behind.offer-timeout:PT0.05S}") Duration offerTimeout,
+                                 @Value("${filmorate.likes.write-behind.max-attempts:3}") int maxAttempts) {
+        this.filmStorage = filmStorage;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runWorker, "like-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Отложенная запись лайков включена: буфер {}, пакет {}, интервал {}", capacity, flushSize, flushInterval);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Поток не прерывается: прерывание во время записи в файловую H2 закрывает её канал
+        lock.lock();
+        try {
+            flushRequested.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+        int written = 0;
+        for (int attempt = 0; attempt < maxAttempts && pendingCount() > 0; attempt++) {
+            written += flush();
+        }
+        log.info("Буфер лайков сброшен при остановке, записано: {}, не записано: {}", written, pendingCount());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addLike(int filmId, int userId) {
+        submit(filmId, userId, true);
+    }
+
+    public void deleteLike(int filmId, int userId) {
+        submit(filmId, userId, false);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.likes.write-behind.pending", this, LikeWriteBehindBuffer::pendingCount)
+                .description("Лайков в буфере, ещё не записанных в базу")
+                .register(registry);
+        Gauge.builder("filmorate.likes.write-behind.capacity", () -> enabled ? capacity : 0)
+                .description("Ёмкость буфера лайков")
+                .register(registry);
+        FunctionCounter.builder("filmorate.likes.write-behind.overflows", overflows, AtomicLong::get)
+                .description("Лайков, записанных синхронно из-за переполненного буфера")
+                .register(registry);
+        FunctionCounter.builder("filmorate.likes.write-behind.dead-letters", deadLetters, AtomicLong::get)
+                .description("Лайков, отброшенных после max-attempts неудачных попыток записи")
+                .register(registry);
+    }
+
+    public long deadLetterCount() {
+        return deadLetters.get();
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Накладывает ещё не записанные лайки на фильм из хранилища, чтобы автор лайка сразу видел его
+    public Film withPendingLikes(Film film) {
+        List<Integer> likes;
+        lock.lock();
+        try {
+            Map<Integer, Boolean> flushing = inFlight.get(film.getId());
+            Map<Integer, Boolean> waiting = pending.get(film.getId());
+            if (flushing == null && waiting == null) {
+                return film;
+            }
+            likes = new ArrayList<>(film.getLikes());
+            apply(likes, flushing);
+            apply(likes, waiting);
+        } finally {
+            lock.unlock();
+        }
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getRate(), film.getMpa(), film.getGenres(), likes);
+    }
+
+    public int flush() {
+        flushLock.lock();
+        try {
+            Map<Integer, Map<Integer, Boolean>> batch;
+            lock.lock();
+            try {
+                if (pendingCount == 0) {
+                    return 0;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new HashMap<>();
+                pendingCount = 0;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            int written = 0;
+            Map<Integer, Map<Integer, Boolean>> retries = new HashMap<>();
+            for (Map<Integer, Map<Integer, Boolean>> chunk : chunks(batch)) {
+                written += writeChunk(chunk, retries);
+            }
+
+            lock.lock();
+            try {
+                inFlight = new HashMap<>();
+                requeue(retries);
+            } finally {
+                lock.unlock();
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Пакет пишется одной транзакцией. Если она откатилась, пары пишутся по одному: так падает
+    // только сама сбойная запись, и лишь она уходит на повтор или в dead-letters
+    private int writeChunk(Map<Integer, Map<Integer, Boolean>> chunk, Map<Integer, Map<Integer, Boolean>> retries) {
+        try {
+            filmStorage.applyLikes(chunk);
+            chunk.forEach((filmId, users) -> users.keySet().forEach(userId -> forgetFailures(filmId, userId)));
+            return count(chunk);
+        } catch (RuntimeException e) {
+            log.warn("Пакет из {} лайков не записан, запись по одному: {}", count(chunk), e.getMessage());
+        }
+
+        int written = 0;
+        for (Map.Entry<Integer, Map<Integer, Boolean>> film : chunk.entrySet()) {
+            for (Map.Entry<Integer, Boolean> like : film.getValue().entrySet()) {
+                int filmId = film.getKey();
+                int userId = like.getKey();
+                try {
+                    write(filmId, userId, like.getValue());
+                    forgetFailures(filmId, userId);
+                    written++;
+                } catch (RuntimeException e) {
+                    if (recordFailure(filmId, userId) < maxAttempts) {
+                        log.warn("Не удалось записать лайк фильму {} от пользователя {}, повтор при следующем сбросе: {}",
+                                filmId, userId, e.getMessage());
+                        retries.computeIfAbsent(filmId, id -> new HashMap<>()).put(userId, like.getValue());
+                    } else {
+                        forgetFailures(filmId, userId);
+                        deadLetters.incrementAndGet();
+                        log.error("Лайк фильму {} от пользователя {} отброшен после {} попыток: {}",
+                                filmId, userId, maxAttempts, e.getMessage());
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    // Делит снятый буфер на пакеты не больше flush-size пар: буфер мог вырасти сверх него за счёт повторов
+    private List<Map<Integer, Map<Integer, Boolean>>> chunks(Map<Integer, Map<Integer, Boolean>> batch) {
+        List<Map<Integer, Map<Integer, Boolean>>> chunks = new ArrayList<>();
+        Map<Integer, Map<Integer, Boolean>> chunk = new HashMap<>();
+        int size = 0;
+        for (Map.Entry<Integer, Map<Integer, Boolean>> film : batch.entrySet()) {
+            for (Map.Entry<Integer, Boolean> like : film.getValue().entrySet()) {
+                if (size == flushSize) {
+                    chunks.add(chunk);
+                    chunk = new HashMap<>();
+                    size = 0;
+                }
+                chunk.computeIfAbsent(film.getKey(), id -> new HashMap<>()).put(like.getKey(), like.getValue());
+                size++;
+            }
+        }
+        if (size > 0) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static int count(Map<Integer, Map<Integer, Boolean>> likes) {
+        return likes.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void submit(int filmId, int userId, boolean add) {
+        if (!running) {
+            write(filmId, userId, add);
+            return;
+        }
+        lock.lock();
+        try {
+            long nanos = offerTimeout.toNanos();
+            while (pendingCount >= capacity && !isPending(filmId, userId)) {
+                if (nanos <= 0) {
+                    break;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (pendingCount < capacity || isPending(filmId, userId)) {
+                if (pending.computeIfAbsent(filmId, id -> new HashMap<>()).put(userId, add) == null) {
+                    pendingCount++;
+                }
+                if (pendingCount >= flushSize) {
+                    flushRequested.signal();
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        // Буфер переполнен: запрос пишет сам, дождавшись текущего сброса, чтобы не обогнать его
+        overflows.incrementAndGet();
+        log.debug("Буфер лайков переполнен, лайк фильму {} записан синхронно", filmId);
+        flushLock.lock();
+        try {
+            write(filmId, userId, add);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            lock.lock();
+            try {
+                if (running && pendingCount < flushSize) {
+                    flushRequested.awaitNanos(flushInterval.toNanos());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Ошибка при сбросе буфера лайков", e);
+            }
+        }
+    }
+
+    // Возвращает неудачные записи в буфер сверх ёмкости, чтобы повтор не вытеснялся новыми лайками.
+    // Если за время сброса по паре пришло новое действие, остаётся оно, а счётчик попыток обнуляется
+    private void requeue(Map<Integer, Map<Integer, Boolean>> retries) {
+        retries.forEach((filmId, users) -> users.forEach((userId, add) -> {
+            if (isPending(filmId, userId)) {
+                forgetFailures(filmId, userId);
+            } else {
+                pending.computeIfAbsent(filmId, id -> new HashMap<>()).put(userId, add);
+                pendingCount++;
+            }
+        }));
+    }
+
+    private int recordFailure(int filmId, int userId) {
+        return failures.computeIfAbsent(filmId, id -> new HashMap<>()).merge(userId, 1, Integer::sum);
+    }
+
+    private void forgetFailures(int filmId, int userId) {
+        Map<Integer, Integer> users = failures.get(filmId);
+        if (users != null && users.remove(userId) != null && users.isEmpty()) {
+            failures.remove(filmId);
+        }
+    }
+
+    private boolean isPending(int filmId, int userId) {
+        Map<Integer, Boolean> users = pending.get(filmId);
+        return users != null && users.containsKey(userId);
+    }
+
+    private void write(int filmId, int userId, boolean add) {
+        if (add) {
+            filmStorage.addLike(filmId, userId);
+        } else {
+            filmStorage.deleteLike(filmId, userId);
+        }
+    }
+
+    private static void apply(List<Integer> likes, Map<Integer, Boolean> changes) {
+        if (changes == null) {
+            return;
+        }
+        changes.forEach((userId, add) -> {
+            if (add && !likes.contains(userId)) {
+                likes.add(userId);
+            } else if (!add) {
+                likes.remove(userId);
+            }
+        });
+    }
+}
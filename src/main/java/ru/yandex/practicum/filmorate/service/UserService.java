@@ -1,31 +1,44 @@
 package ru.yandex.practicum.filmorate.service;
 
-import jakarta.validation.ValidationException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserAlreadyExistException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
+    private static final String USER_EXISTS = "Пользователь с таким email или логином уже существует";
+    private static final String LOGIN_CONSTRAINT = "UC_USER_LOGIN";
+    private static final String EMAIL_CONSTRAINT = "UC_USER_EMAIL";
 
     private final UserStorage userStorage;
 
     public Optional<User> create(User user) {
         validate(user);
         check(user);
-        return userStorage.create(user);
+        try {
+            return userStorage.create(user);
+        } catch (DuplicateKeyException e) {
+            throw alreadyExists(e);
+        }
     }
 
     public Optional<User> update(User user) {
         validate(user);
-        return userStorage.update(user);
+        try {
+            return userStorage.update(user);
+        } catch (DuplicateKeyException e) {
+            throw alreadyExists(e);
+        }
     }
 
     public Collection<User> findAll() {
@@ -33,6 +46,16 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    public Collection<User> findPage(int afterId, int limit) {
+        log.info("Страница пользователей после id: '{}' отправлена", afterId);
+        return userStorage.findPage(afterId, limit);
+    }
+
+    public void streamAll(Consumer<User> action) {
+        log.info("Потоковая выгрузка пользователей");
+        userStorage.streamAll(action);
+    }
+
     public User getById(int id) {
         User user = userStorage.getById(id)
                 .orElseThrow(() -> new ObjectNotFoundException("Пользователь не найден"));
@@ -55,25 +78,19 @@ public class UserService {
     }
 
     public Collection<User> getFriendsListById(int userId) {
-
-        User user = getUserStored(userId);
-        Collection<User> friends = new HashSet<>();
-        for (Integer id : user.getFriends()) {
-            friends.add(userStorage.getUser(id));
-        }
-        return friends;
+        getUserStored(userId);
+        return userStorage.getFriends(userId);
     }
 
     public Collection<User> getCommonFriendsList(int supposedUserId, int supposedOtherId) {
-        User user = getUserStored(supposedUserId);
-        User otherUser = getUserStored(supposedOtherId);
-        Collection<User> commonFriends = new HashSet<>();
-        for (Integer id : user.getFriends()) {
-            if (otherUser.getFriends().contains(id)) {
-                commonFriends.add(userStorage.getUser(id));
-            }
-        }
-        return commonFriends;
+        getUserStored(supposedUserId);
+        getUserStored(supposedOtherId);
+        return userStorage.getCommonFriends(supposedUserId, supposedOtherId);
+    }
+
+    public Collection<User> getSuggestions(int userId, int limit) {
+        getUserStored(userId);
+        return userStorage.getSuggestions(userId, limit);
     }
 
     private void validate(User user) {
@@ -84,17 +101,27 @@ public class UserService {
     }
 
     private void check(User userToAdd) {
-        boolean exists = userStorage.findAll().stream()
-                .anyMatch(user -> isAlreadyExist(userToAdd, user));
-        if (exists) {
+        if (userStorage.existsByLoginOrEmail(userToAdd.getLogin(), userToAdd.getEmail())) {
             log.warn("Введенный email пользователя: '{}'", userToAdd);
-            throw new ValidationException("Пользователь с таким email или логином уже существует");
+            throw new UserAlreadyExistException(USER_EXISTS);
         }
     }
 
-    private boolean isAlreadyExist(User userToAdd, User user) {
-        return userToAdd.getLogin().equals(user.getLogin()) ||
-                userToAdd.getEmail().equals(user.getEmail());
+    // Проверка в check не защищает от параллельной записи: занятый логин или email отклоняет хранилище.
+    // Текст причины (SQL, чужие значения) остаётся в журнале, клиенту — только какое поле занято
+    private static UserAlreadyExistException alreadyExists(DuplicateKeyException e) {
+        String cause = String.valueOf(e.getMostSpecificCause().getMessage());
+        log.warn("Логин или email уже заняты: {}", cause);
+        String constraint = cause.toUpperCase(Locale.ROOT);
+        String message;
+        if (constraint.contains(LOGIN_CONSTRAINT)) {
+            message = "Пользователь с таким логином уже существует";
+        } else if (constraint.contains(EMAIL_CONSTRAINT)) {
+            message = "Пользователь с таким email уже существует";
+        } else {
+            message = USER_EXISTS;
+        }
+        return new UserAlreadyExistException(message, e);
     }
 
     private User getUserStored(int supposedId) {
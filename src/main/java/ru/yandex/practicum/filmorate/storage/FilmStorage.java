@@ -2,9 +2,12 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
@@ -18,11 +21,42 @@ public interface FilmStorage {
 
     List<Film> getFilms();
 
+    List<Film> findPage(int afterId, int limit);
+
+    List<Film> findByNaturalKey(String name, LocalDate releaseDate, int duration, int mpaId);
+
+    void streamAll(Consumer<Film> action);
+
     boolean deleteFilm(Film film);
 
+    // true, если лайк добавлен этим вызовом; повторный лайк возвращает false
     boolean addLike(int filmId, int userId);
 
+    // true, если лайк был и удалён этим вызовом
     boolean deleteLike(int filmId, int userId);
 
-    Collection<Film> getPopularFilms(Integer count);
+    // Пакет изменений лайков: по id фильма — пользователи, true означает лайк, false — его снятие.
+    // Хранилище с транзакциями пишет пакет целиком или не пишет ничего; по умолчанию пишет по одному
+    default void applyLikes(Map<Integer, Map<Integer, Boolean>> likes) {
+        likes.forEach((filmId, users) -> users.forEach((userId, add) -> {
+            if (add) {
+                addLike(filmId, userId);
+            } else {
+                deleteLike(filmId, userId);
+            }
+        }));
+    }
+
+    default Collection<Film> getPopularFilms(Integer count) {
+        return getPopularFilms(count, null, null, null);
+    }
+
+    // Фильтры жанра, рейтинга MPA и года выхода необязательны: null означает «без фильтра»
+    Collection<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year);
+
+    // Фильмы, которые лайкали пользователи с похожими лайками, по убыванию веса
+    List<Film> getRecommendations(int userId, int limit);
+
+    // Полнотекстовый поиск по названию и/или описанию, по убыванию релевантности с учётом лайков
+    List<Film> search(String query, boolean byTitle, boolean byDescription, int limit);
 }
\ No newline at end of file
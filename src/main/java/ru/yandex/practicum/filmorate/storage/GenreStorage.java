@@ -3,6 +3,8 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface GenreStorage {
@@ -11,6 +13,8 @@ public interface GenreStorage {
 
     Collection<Genre> getGenresByFilmId(int filmId);
 
+    Map<Integer, List<Genre>> getGenresByFilmIds(Collection<Integer> filmIds);
+
     Optional<Genre> getGenreById(int genreId);
 
     void addFilmGenres(int filmId, Collection<Genre> genres);
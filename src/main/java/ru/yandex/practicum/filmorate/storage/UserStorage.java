@@ -3,12 +3,15 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     Optional<User> create(User user);
 
+    // Логин и email, занятые другим пользователем, дают DuplicateKeyException
     Optional<User> update(User user);
 
     Optional<User> getById(int id);
@@ -19,9 +22,25 @@ public interface UserStorage {
 
     Collection<User> findAll();
 
+    List<User> findPage(int afterId, int limit);
+
+    boolean existsByLoginOrEmail(String login, String email);
+
+    void streamAll(Consumer<User> action);
+
+    // true, если после вызова дружба взаимная (есть встречная заявка)
     boolean addFriend(Integer firstId, Integer secondId);
 
+    // true, если заявка была и удалена этим вызовом
     boolean deleteFriend(Integer userId, Integer friendId);
 
     User getUser(final Integer id);
+
+    // Друзья и общие друзья одним запросом, без вложенных списков друзей
+    List<User> getFriends(int userId);
+
+    List<User> getCommonFriends(int userId, int otherId);
+
+    // Не друзья, отсортированные по числу общих друзей, в пределах бюджета обхода
+    List<User> getSuggestions(int userId, int limit);
 }
\ No newline at end of file
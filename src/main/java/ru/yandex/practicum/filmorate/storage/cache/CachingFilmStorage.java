@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Кеш фильмов по id поверх FilmDbStorage. Размер ограничен суммарным весом записей:
+ * фильм с тысячами лайков занимает в кеше больше места, чем фильм без них.
+ * Кеш хранит свою копию фильма и отдаёт наружу копии: вызывающий может менять фильм, не трогая кеш.
+ * Запись сбрасывается и до изменения, и после фиксации транзакции: иначе параллельное чтение
+ * между ними вернуло бы в кеш старые лайки. Создание и обновление тоже не кладут фильм в кеш сами:
+ * снимок из транзакции мог устареть из-за лайка, зафиксированного следом, его заполнит следующий getById.
+ */
+@Primary
+@Component
+@Profile("!in-memory & !sharded")
+public class CachingFilmStorage implements FilmStorage, MeterBinder {
+    private final FilmDbStorage delegate;
+    private final Cache<Integer, Film> films;
+
+    public CachingFilmStorage(FilmDbStorage delegate,
+                              @Value("${filmorate.cache.films.maximum-weight:200000}") long maximumWeight,
+                              @Value("${filmorate.cache.films.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.films = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Integer id, Film film) -> 1 + film.getGenres().size() + film.getLikes().size())
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<Film> create(Film film) {
+        Optional<Film> created = delegate.create(film);
+        created.ifPresent(f -> invalidateAfterCommit(f.getId()));
+        return created;
+    }
+
+    @Override
+    public Optional<Film> update(Film film) {
+        films.invalidate(film.getId());
+        Optional<Film> updated = delegate.update(film);
+        invalidateAfterCommit(film.getId());
+        return updated;
+    }
+
+    @Override
+    public Optional<Film> getById(int id) {
+        return Optional.ofNullable(films.get(id, key -> delegate.getById(key).orElse(null)))
+                .map(CachingFilmStorage::copy);
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return delegate.getFilms();
+    }
+
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<Film> findByNaturalKey(String name, LocalDate releaseDate, int duration, int mpaId) {
+        return delegate.findByNaturalKey(name, releaseDate, duration, mpaId);
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> action) {
+        delegate.streamAll(action);
+    }
+
+    @Override
+    public boolean deleteFilm(Film film) {
+        films.invalidate(film.getId());
+        boolean deleted = delegate.deleteFilm(film);
+        invalidateAfterCommit(film.getId());
+        return deleted;
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        films.invalidate(filmId);
+        boolean added = delegate.addLike(filmId, userId);
+        invalidateAfterCommit(filmId);
+        return added;
+    }
+
+    @Override
+    public boolean deleteLike(int filmId, int userId) {
+        films.invalidate(filmId);
+        boolean deleted = delegate.deleteLike(filmId, userId);
+        invalidateAfterCommit(filmId);
+        return deleted;
+    }
+
+    @Override
+    public void applyLikes(Map<Integer, Map<Integer, Boolean>> likes) {
+        films.invalidateAll(likes.keySet());
+        delegate.applyLikes(likes);
+        likes.keySet().forEach(this::invalidateAfterCommit);
+    }
+
+    @Override
+    public Collection<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        return delegate.getPopularFilms(count, genreId, mpaId, year);
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int limit) {
+        return delegate.getRecommendations(userId, limit);
+    }
+
+    @Override
+    public List<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        return delegate.search(query, byTitle, byDescription, limit);
+    }
+
+    public void invalidate() {
+        films.invalidateAll();
+    }
+
+    // Попадания, промахи, вытеснения и размер кеша в метриках cache.* с тегом cache=films
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, films, "films");
+    }
+
+    public CacheStats stats() {
+        return films.stats();
+    }
+
+    public long weightedSize() {
+        return films.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    private void invalidateAfterCommit(int filmId) {
+        TransactionCallbacks.afterCommit(() -> films.invalidate(filmId));
+    }
+
+    private static Film copy(Film film) {
+        Mpa mpa = film.getMpa() == null ? null
+                : new Mpa(film.getMpa().getId(), film.getMpa().getName(), film.getMpa().getDescription());
+        List<Genre> genres = film.getGenres().stream()
+                .map(genre -> new Genre(genre.getId(), genre.getName()))
+                .collect(Collectors.toList());
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getRate(), mpa, genres, new ArrayList<>(film.getLikes()));
+    }
+}
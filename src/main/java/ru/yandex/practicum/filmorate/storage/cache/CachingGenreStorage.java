@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Справочник жанров целиком держится в памяти: таблица GENRES маленькая и меняется только миграцией R__reference_data.sql.
+ * Связи фильм-жанр справочником не являются и всегда читаются из базы.
+ * Жанры изменяемы и попадают в фильмы, поэтому наружу отдаются копии, а не экземпляры из кеша.
+ */
+@Primary
+@Component
+public class CachingGenreStorage implements GenreStorage, MeterBinder {
+    private static final String ALL = "all";
+
+    private final GenreDbStorage delegate;
+    private final LoadingCache<String, Map<Integer, Genre>> genres;
+
+    public CachingGenreStorage(GenreDbStorage delegate,
+                               @Value("${filmorate.cache.reference.expire-after-write:PT1H}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.genres = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(key -> load());
+    }
+
+    @Override
+    public Collection<Genre> getAllGenres() {
+        return genres.get(ALL).values().stream().map(CachingGenreStorage::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Genre> getGenreById(int genreId) {
+        return Optional.ofNullable(genres.get(ALL).get(genreId)).map(CachingGenreStorage::copy);
+    }
+
+    @Override
+    public Collection<Genre> getGenresByFilmId(int filmId) {
+        return delegate.getGenresByFilmId(filmId);
+    }
+
+    @Override
+    public Map<Integer, List<Genre>> getGenresByFilmIds(Collection<Integer> filmIds) {
+        return delegate.getGenresByFilmIds(filmIds);
+    }
+
+    @Override
+    public void addFilmGenres(int filmId, Collection<Genre> genres) {
+        delegate.addFilmGenres(filmId, genres);
+    }
+
+    @Override
+    public void deleteFilmGenres(int filmId) {
+        delegate.deleteFilmGenres(filmId);
+    }
+
+    public void invalidate() {
+        genres.invalidateAll();
+    }
+
+    // Попадания, промахи, вытеснения и размер кеша в метриках cache.* с тегом cache=genres
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, genres, "genres");
+    }
+
+    public CacheStats stats() {
+        return genres.stats();
+    }
+
+    private Map<Integer, Genre> load() {
+        Map<Integer, Genre> byId = new LinkedHashMap<>();
+        for (Genre genre : delegate.getAllGenres()) {
+            byId.put(genre.getId(), genre);
+        }
+        return Collections.unmodifiableMap(byId);
+    }
+
+    private static Genre copy(Genre genre) {
+        return new Genre(genre.getId(), genre.getName());
+    }
+}
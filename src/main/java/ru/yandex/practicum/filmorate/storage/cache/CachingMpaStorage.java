@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.dao.MpaDbStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Справочник рейтингов MPA целиком держится в памяти: таблица RATING_MPA маленькая и меняется только миграцией R__reference_data.sql.
+ * Запись сбрасывается через expire-after-write или вызовом invalidate(), после чего справочник читается заново одним запросом.
+ * Рейтинг попадает в каждый прочитанный фильм, поэтому наружу отдаются копии, а не экземпляры из кеша.
+ */
+@Primary
+@Component
+public class CachingMpaStorage implements MpaStorage, MeterBinder {
+    private static final String ALL = "all";
+
+    private final MpaDbStorage delegate;
+    private final LoadingCache<String, Map<Integer, Mpa>> ratings;
+
+    public CachingMpaStorage(MpaDbStorage delegate,
+                             @Value("${filmorate.cache.reference.expire-after-write:PT1H}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.ratings = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(key -> load());
+    }
+
+    @Override
+    public Collection<Mpa> getAllMpa() {
+        return ratings.get(ALL).values().stream().map(CachingMpaStorage::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Mpa> getMpaById(int mpaId) {
+        return Optional.ofNullable(ratings.get(ALL).get(mpaId)).map(CachingMpaStorage::copy);
+    }
+
+    public void invalidate() {
+        ratings.invalidateAll();
+    }
+
+    // Попадания, промахи, вытеснения и размер кеша в метриках cache.* с тегом cache=mpa
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, ratings, "mpa");
+    }
+
+    public CacheStats stats() {
+        return ratings.stats();
+    }
+
+    private Map<Integer, Mpa> load() {
+        Map<Integer, Mpa> byId = new LinkedHashMap<>();
+        for (Mpa mpa : delegate.getAllMpa()) {
+            byId.put(mpa.getId(), mpa);
+        }
+        return Collections.unmodifiableMap(byId);
+    }
+
+    // Рейтинг попадает в каждый фильм, который его читает: копия не даёт правке одного фильма
+    // поменять рейтинг у остальных
+    private static Mpa copy(Mpa mpa) {
+        return new Mpa(mpa.getId(), mpa.getName(), mpa.getDescription());
+    }
+}
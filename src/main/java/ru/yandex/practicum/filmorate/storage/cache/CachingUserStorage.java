@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Кеш пользователей по id поверх UserDbStorage. Вес записи растёт вместе со списком друзей.
+ * Кеш хранит свою копию пользователя и отдаёт наружу копии. Запись сбрасывается до изменения
+ * и ещё раз после фиксации транзакции, как в CachingFilmStorage; создание и обновление тоже только сбрасывают её.
+ */
+@Primary
+@Component
+@Profile("!in-memory & !sharded")
+public class CachingUserStorage implements UserStorage, MeterBinder {
+    private final UserDbStorage delegate;
+    private final Cache<Integer, User> users;
+
+    public CachingUserStorage(UserDbStorage delegate,
+                              @Value("${filmorate.cache.users.maximum-weight:200000}") long maximumWeight,
+                              @Value("${filmorate.cache.users.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.users = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Integer id, User user) -> 1 + user.getFriends().size())
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<User> create(User user) {
+        Optional<User> created = delegate.create(user);
+        created.ifPresent(u -> invalidateAfterCommit(List.of(u.getId())));
+        return created;
+    }
+
+    @Override
+    public Optional<User> update(User user) {
+        users.invalidate(user.getId());
+        Optional<User> updated = delegate.update(user);
+        invalidateAfterCommit(List.of(user.getId()));
+        return updated;
+    }
+
+    @Override
+    public Optional<User> getById(int id) {
+        return Optional.ofNullable(users.get(id, key -> delegate.getById(key).orElse(null)))
+                .map(CachingUserStorage::copy);
+    }
+
+    @Override
+    public User getUser(Integer id) {
+        return copy(users.get(id, delegate::getUser));
+    }
+
+    @Override
+    public Optional<User> deleteById(int id) {
+        users.invalidate(id);
+        Optional<User> deleted = delegate.deleteById(id);
+        invalidateAfterCommit(List.of(id));
+        return deleted;
+    }
+
+    @Override
+    public boolean deleteUser(User user) {
+        users.invalidate(user.getId());
+        boolean deleted = delegate.deleteUser(user);
+        invalidateAfterCommit(List.of(user.getId()));
+        return deleted;
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public boolean existsByLoginOrEmail(String login, String email) {
+        return delegate.existsByLoginOrEmail(login, email);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> action) {
+        delegate.streamAll(action);
+    }
+
+    @Override
+    public List<User> getFriends(int userId) {
+        return delegate.getFriends(userId);
+    }
+
+    @Override
+    public List<User> getCommonFriends(int userId, int otherId) {
+        return delegate.getCommonFriends(userId, otherId);
+    }
+
+    @Override
+    public List<User> getSuggestions(int userId, int limit) {
+        return delegate.getSuggestions(userId, limit);
+    }
+
+    @Override
+    public boolean addFriend(Integer userId, Integer friendId) {
+        users.invalidateAll(List.of(userId, friendId));
+        boolean added = delegate.addFriend(userId, friendId);
+        invalidateAfterCommit(List.of(userId, friendId));
+        return added;
+    }
+
+    @Override
+    public boolean deleteFriend(Integer userId, Integer friendId) {
+        users.invalidateAll(List.of(userId, friendId));
+        boolean deleted = delegate.deleteFriend(userId, friendId);
+        invalidateAfterCommit(List.of(userId, friendId));
+        return deleted;
+    }
+
+    public void invalidate() {
+        users.invalidateAll();
+    }
+
+    // Попадания, промахи, вытеснения и размер кеша в метриках cache.* с тегом cache=users
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, users, "users");
+    }
+
+    public CacheStats stats() {
+        return users.stats();
+    }
+
+    public long weightedSize() {
+        return users.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    private void invalidateAfterCommit(List<Integer> userIds) {
+        TransactionCallbacks.afterCommit(() -> users.invalidateAll(userIds));
+    }
+
+    private static User copy(User user) {
+        List<Integer> friends = user.getFriends() == null ? null : new ArrayList<>(user.getFriends());
+        return new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), friends);
+    }
+}
@@ -3,40 +3,60 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.GenreService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRead;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRouting;
 
 import java.sql.*;
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component("FilmDbStorage")
+@Profile("!in-memory & !sharded")
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
     private final GenreService genreService;
+    private final MpaStorage mpaStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final FilmSearchIndex searchIndex;
+    private final ReplicaRouting replicaRouting;
     private final Logger log = LoggerFactory.getLogger(FilmDbStorage.class);
 
     @Override
+    @ReplicaRead(films = 0)
     public Optional<Film> getById(int filmId) {
         String sqlQuery = "SELECT * FROM FILMS " +
-                "INNER JOIN RATING_MPA ON FILMS.RATING_ID = RATING_MPA.RATING_ID " +
                 "WHERE FILM_ID = ?";
         Film film;
         try {
             film = jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) -> makeFilm(rs), filmId);
+            fillGenresAndLikes(List.of(film));
         } catch (EmptyResultDataAccessException exception) {
             throw new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", filmId));
         }
@@ -44,10 +64,10 @@ public class FilmDbStorage implements FilmStorage {
         return Optional.of(film);
     }
 
+    @ReplicaRead(anyWrite = true)
     public Collection<Film> findAll() {
-        String sqlQuery = "SELECT * FROM FILMS " +
-                "INNER JOIN RATING_MPA ON FILMS.RATING_ID = RATING_MPA.RATING_ID ";
-        return jdbcTemplate.query(sqlQuery, (resultSet, rowNum) -> makeFilm(resultSet));
+        String sqlQuery = "SELECT * FROM FILMS";
+        return fillGenresAndLikes(jdbcTemplate.query(sqlQuery, (resultSet, rowNum) -> makeFilm(resultSet)));
     }
 
     public Collection<Film> findPopularFilms(int count) {
@@ -73,27 +93,19 @@ public class FilmDbStorage implements FilmStorage {
         }, keyHolder);
         int id = Objects.requireNonNull(keyHolder.getKey()).intValue();
         film.setId(id);
+        replicaRouting.filmWritten(id);
 
-        if (!film.getGenres().isEmpty()) {
-            genreService.addFilmGenres(film.getId(), film.getGenres());
-        }
-        if (film.getLikes() != null) {
-            for (Integer userId : film.getLikes()) {
-                addLike(film.getId(), userId);
-            }
-        }
-        return getById(id);
+        genreService.addFilmGenres(id, film.getGenres());
+        addLikes(id, film.getLikes());
+        return getById(id).map(this::syncIndexes);
     }
 
     @Override
     public Optional<Film> update(Film film) {
-        String sqlQueryDel = "DELETE FROM FILM_GENRE WHERE FILM_ID = ?";
-        jdbcTemplate.update(sqlQueryDel, film.getId());
-
         String sqlQuery = "UPDATE FILMS " +
                 "SET FILM_NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATE = ? , RATING_ID = ? " +
                 "WHERE FILM_ID = ?";
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
@@ -101,65 +113,251 @@ public class FilmDbStorage implements FilmStorage {
                 film.getRate(),
                 film.getMpa().getId(),
                 film.getId());
+        if (updated == 0) {
+            throw new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", film.getId()));
+        }
+        replicaRouting.filmWritten(film.getId());
 
         genreService.deleteFilmGenres(film.getId());
-        if (!film.getGenres().isEmpty()) {
-            genreService.addFilmGenres(film.getId(), film.getGenres());
-        }
+        genreService.addFilmGenres(film.getId(), film.getGenres());
+        addLikes(film.getId(), film.getLikes());
+        return getById(film.getId()).map(this::syncIndexes);
+    }
 
-        if (film.getLikes() != null) {
-            for (Integer userId : film.getLikes()) {
-                addLike(film.getId(), userId);
-            }
+    // Лайки из тела запроса пишутся одним пакетом, счётчик пересчитывается одним UPDATE
+    private void addLikes(int filmId, Collection<Integer> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
         }
-        return getById(film.getId());
+        String sqlQuery = "MERGE INTO LIKES (USER_ID, FILM_ID) KEY (USER_ID, FILM_ID) VALUES (?, ?)";
+        List<Object[]> batchArgs = userIds.stream()
+                .map(userId -> new Object[]{userId, filmId})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(sqlQuery, batchArgs);
+
+        String sqlCount = "UPDATE FILMS SET LIKE_COUNT = " +
+                "(SELECT COUNT(*) FROM LIKES WHERE LIKES.FILM_ID = FILMS.FILM_ID) " +
+                "WHERE FILM_ID = ?";
+        jdbcTemplate.update(sqlCount, filmId);
+    }
+
+    private Film syncIndexes(Film film) {
+        int filmId = film.getId();
+        List<Integer> likes = List.copyOf(film.getLikes());
+        int mpaId = film.getMpa().getId();
+        int year = film.getReleaseDate().getYear();
+        List<Integer> genreIds = film.getGenres().stream().map(Genre::getId).toList();
+        String name = film.getName();
+        String description = film.getDescription();
+        TransactionCallbacks.afterCommit(() -> {
+            popularityIndex.setFilm(filmId, likes.size(), mpaId, year, genreIds);
+            likeIndex.setFilmLikes(filmId, likes);
+            searchIndex.put(filmId, name, description);
+        });
+        return film;
     }
 
     @Override
     public boolean deleteFilm(Film film) {
         String sqlQuery = "DELETE FROM FILMS WHERE FILM_ID = ?";
         jdbcTemplate.update(sqlQuery, film.getId());
+        replicaRouting.filmWritten(film.getId());
+        TransactionCallbacks.afterCommit(() -> {
+            popularityIndex.removeFilm(film.getId());
+            likeIndex.removeFilm(film.getId());
+            searchIndex.remove(film.getId());
+        });
         return true;
     }
 
     @Override
+    @ReplicaRead(anyWrite = true)
     public List<Film> getFilms() {
+        String sqlQuery = "SELECT * FROM FILMS";
+        return fillGenresAndLikes(jdbcTemplate.query(sqlQuery, (resultSet, rowNum) -> makeFilm(resultSet)));
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<Film> findPage(int afterId, int limit) {
         String sqlQuery = "SELECT * FROM FILMS " +
-                "INNER JOIN RATING_MPA ON FILMS.RATING_ID = RATING_MPA.RATING_ID ";
-        return jdbcTemplate.query(sqlQuery, (resultSet, rowNum) -> makeFilm(resultSet));
+                "WHERE FILMS.FILM_ID > ? " +
+                "ORDER BY FILMS.FILM_ID " +
+                "LIMIT ?";
+        return fillGenresAndLikes(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), afterId, limit));
+    }
+
+    @Override
+    public List<Film> findByNaturalKey(String name, LocalDate releaseDate, int duration, int mpaId) {
+        String sqlQuery = "SELECT * FROM FILMS " +
+                "WHERE FILMS.FILM_NAME = ? AND FILMS.RELEASE_DATE = ? AND FILMS.DURATION = ? AND FILMS.RATING_ID = ?";
+        return fillGenresAndLikes(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs),
+                name, releaseDate, duration, mpaId));
+    }
+
+    // Выгрузка идёт страницами по id: соединение занято только на время чтения страницы,
+    // а не пока медленный клиент скачивает ответ
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public void streamAll(Consumer<Film> action) {
+        List<Film> page;
+        int afterId = 0;
+        do {
+            page = findPage(afterId, STREAM_CHUNK_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
     }
 
+    // Один запрос: счётчик фильма увеличивается внутри значения вставки, поэтому меняется только вместе
+    // с новой строкой лайка. Повторный лайк не вставляет строку и счётчик не трогает. Строка фильма
+    // блокируется на время вставки, так что параллельные лайки одного фильма не теряют приращений.
+    // Для несуществующего фильма подзапрос вернёт NULL и вставка нарушит NOT NULL
     @Override
     public boolean addLike(int filmId, int userId) {
-        String sqlQuery = "SELECT * FROM LIKES WHERE USER_ID = ? AND FILM_ID = ?";
-        SqlRowSet existLike = jdbcTemplate.queryForRowSet(sqlQuery, userId, filmId);
-        if (!existLike.next()) {
-            String setLike = "INSERT INTO LIKES (USER_ID, FILM_ID) VALUES  (?, ?) ";
-            jdbcTemplate.update(setLike, userId, filmId);
+        String sqlQuery = "MERGE INTO LIKES L " +
+                "USING (VALUES (CAST(? AS INT), CAST(? AS INT))) S(USER_ID, FILM_ID) " +
+                "ON L.USER_ID = S.USER_ID AND L.FILM_ID = S.FILM_ID " +
+                "WHEN NOT MATCHED THEN INSERT (USER_ID, FILM_ID) VALUES (S.USER_ID, " +
+                "(SELECT FILM_ID FROM FINAL TABLE (UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT + 1 WHERE FILM_ID = ?)))";
+        boolean added;
+        try {
+            added = jdbcTemplate.update(sqlQuery, userId, filmId, filmId) > 0;
+        } catch (DuplicateKeyException e) {
+            // Тот же лайк параллельно вставил другой запрос, его приращение счётчика откатилось вместе с ним
+            added = false;
         }
-        SqlRowSet resultSet = jdbcTemplate.queryForRowSet(sqlQuery, userId, filmId);
-        log.info(String.valueOf(resultSet.next()));
-        return resultSet.next();
+        if (added) {
+            likeCountChanged(filmId, 1);
+            TransactionCallbacks.afterCommit(() -> likeIndex.addLike(filmId, userId));
+        }
+        return added;
     }
 
     @Override
     public boolean deleteLike(int filmId, int userId) {
         String deleteLike = "DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID = ?";
-        jdbcTemplate.update(deleteLike, filmId, userId);
-        return true;
+        boolean deleted = jdbcTemplate.update(deleteLike, filmId, userId) > 0;
+        if (deleted) {
+            updateLikeCount(filmId, -1);
+            TransactionCallbacks.afterCommit(() -> likeIndex.removeLike(filmId, userId));
+        }
+        return deleted;
     }
 
+    // Лайки и снятия уходят двумя пакетами JDBC, изменения счётчиков — третьим, всё в одной транзакции.
+    // Счётчик и индексы меняются только по парам, которые действительно вставлены или удалены
     @Override
+    @Transactional
+    public void applyLikes(Map<Integer, Map<Integer, Boolean>> likes) {
+        List<Object[]> added = new ArrayList<>();
+        List<Object[]> removed = new ArrayList<>();
+        likes.forEach((filmId, users) -> users.forEach((userId, add) ->
+                (add ? added : removed).add(new Object[]{userId, filmId})));
+
+        String sqlAdd = "MERGE INTO LIKES L " +
+                "USING (VALUES (CAST(? AS INT), CAST(? AS INT))) S(USER_ID, FILM_ID) " +
+                "ON L.USER_ID = S.USER_ID AND L.FILM_ID = S.FILM_ID " +
+                "WHEN NOT MATCHED THEN INSERT (USER_ID, FILM_ID) VALUES (S.USER_ID, S.FILM_ID)";
+        String sqlDelete = "DELETE FROM LIKES WHERE USER_ID = ? AND FILM_ID = ?";
+        Map<Integer, Integer> deltas = new HashMap<>();
+        int[] addedRows = added.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(sqlAdd, added);
+        for (int i = 0; i < addedRows.length; i++) {
+            if (addedRows[i] > 0) {
+                int userId = (int) added.get(i)[0];
+                int filmId = (int) added.get(i)[1];
+                deltas.merge(filmId, 1, Integer::sum);
+                TransactionCallbacks.afterCommit(() -> likeIndex.addLike(filmId, userId));
+            }
+        }
+        int[] removedRows = removed.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(sqlDelete, removed);
+        for (int i = 0; i < removedRows.length; i++) {
+            if (removedRows[i] > 0) {
+                int userId = (int) removed.get(i)[0];
+                int filmId = (int) removed.get(i)[1];
+                deltas.merge(filmId, -1, Integer::sum);
+                TransactionCallbacks.afterCommit(() -> likeIndex.removeLike(filmId, userId));
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        String sqlCount = "UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT + ? WHERE FILM_ID = ?";
+        jdbcTemplate.batchUpdate(sqlCount, deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList()));
+        deltas.forEach(this::likeCountChanged);
+    }
+
+    private void updateLikeCount(int filmId, int delta) {
+        String sqlQuery = "UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT + ? WHERE FILM_ID = ?";
+        jdbcTemplate.update(sqlQuery, delta, filmId);
+        likeCountChanged(filmId, delta);
+    }
+
+    private void likeCountChanged(int filmId, int delta) {
+        replicaRouting.filmWritten(filmId);
+        TransactionCallbacks.afterCommit(() -> popularityIndex.changeLikes(filmId, delta));
+    }
+
+    // Порядок берётся из индекса популярности, из базы читаются только сами фильмы
+    @Override
+    @ReplicaRead(anyWrite = true)
     public List<Film> getPopularFilms(Integer count) {
-        String sqlQuery = "SELECT COUNT(L.LIKE_ID) AS like_rate, " +
-                "FILMS.FILM_ID, FILMS.FILM_NAME, FILMS.DESCRIPTION, " +
-                "FILMS.RELEASE_DATE, FILMS.DURATION, FILMS.RATE, R.RATING_ID, R.MPA_NAME, R.DESCRIPTION FROM FILMS " +
-                "LEFT JOIN LIKES AS L ON L.FILM_ID = FILMS.FILM_ID " +
-                "INNER JOIN RATING_MPA AS R ON R.RATING_ID = FILMS.RATING_ID " +
-                "GROUP BY FILMS.FILM_ID " +
-                "ORDER BY like_rate DESC " +
-                "LIMIT ?";
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), count);
+        return getPopularFilms(count, null, null, null);
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        return getFilmsInOrder(popularityIndex.top(count, genreId, mpaId, year));
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<Film> getRecommendations(int userId, int limit) {
+        if (likeIndex.isEnabled()) {
+            return getFilmsInOrder(likeIndex.recommend(userId, limit));
+        }
+        // Без индекса: те же соседи по мере Жаккара и тот же вес фильма, посчитанные в базе
+        String sqlQuery = "SELECT R.FILM_ID FROM LIKES R JOIN (" +
+                "SELECT L.USER_ID, CAST(COUNT(*) AS DOUBLE) / ((SELECT COUNT(*) FROM LIKES A WHERE A.USER_ID = L.USER_ID) " +
+                "+ (SELECT COUNT(*) FROM LIKES WHERE USER_ID = ?) - COUNT(*)) AS SIMILARITY " +
+                "FROM LIKES L " +
+                "WHERE L.FILM_ID IN (SELECT FILM_ID FROM LIKES WHERE USER_ID = ?) AND L.USER_ID <> ? " +
+                "GROUP BY L.USER_ID " +
+                "ORDER BY SIMILARITY DESC, L.USER_ID LIMIT ?) N ON N.USER_ID = R.USER_ID " +
+                "WHERE R.FILM_ID NOT IN (SELECT FILM_ID FROM LIKES WHERE USER_ID = ?) " +
+                "GROUP BY R.FILM_ID " +
+                "ORDER BY SUM(N.SIMILARITY) DESC, R.FILM_ID LIMIT ?";
+        return getFilmsInOrder(jdbcTemplate.queryForList(sqlQuery, Integer.class,
+                userId, userId, userId, likeIndex.getNeighbours(), userId, limit));
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        return getFilmsInOrder(searchIndex.search(query, byTitle, byDescription, limit));
+    }
+
+    private List<Film> getFilmsInOrder(List<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT * FROM FILMS " +
+                "WHERE FILMS.FILM_ID = ANY(?)";
+        Map<Integer, Film> films = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) rs -> {
+            Film film = makeFilm(rs);
+            films.put(film.getId(), film);
+        }, (Object) filmIds.toArray(new Integer[0]));
+        return fillGenresAndLikes(filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
     }
 
     private Film makeFilm(ResultSet resultSet) throws SQLException {
@@ -171,16 +369,38 @@ public class FilmDbStorage implements FilmStorage {
                 Objects.requireNonNull(resultSet.getDate("FILMS.RELEASE_DATE")).toLocalDate(),
                 resultSet.getInt("FILMS.DURATION"),
                 resultSet.getInt("FILMS.RATE"),
-                new Mpa(resultSet.getInt("RATING_MPA.RATING_ID"),
-                        resultSet.getString("RATING_MPA.MPA_NAME"),
-                        resultSet.getString("RATING_MPA.DESCRIPTION")),
-                (List<Genre>) genreService.getFilmGenres(filmId),
-                getFilmLikes(filmId)
+                getMpa(resultSet.getInt("FILMS.RATING_ID")),
+                new ArrayList<>(),
+                new ArrayList<>()
         );
     }
 
-    private List<Integer> getFilmLikes(Integer filmId) {
-        String sqlQuery = "SELECT USER_ID FROM LIKES WHERE FILM_ID = ?";
-        return jdbcTemplate.queryForList(sqlQuery, Integer.class, filmId);
+    // Справочник рейтингов закеширован, поэтому для него не нужен ни JOIN, ни отдельный запрос
+    private Mpa getMpa(int mpaId) {
+        return mpaStorage.getMpaById(mpaId).orElseGet(() -> new Mpa(mpaId, null, null));
+    }
+
+    // Жанры и лайки подгружаются одним запросом на всю выборку, а не по запросу на каждый фильм
+    private List<Film> fillGenresAndLikes(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        List<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toList());
+        Map<Integer, List<Genre>> genres = genreService.getFilmsGenres(filmIds);
+        Map<Integer, List<Integer>> likes = getFilmsLikes(filmIds);
+        for (Film film : films) {
+            film.setGenres(genres.getOrDefault(film.getId(), new ArrayList<>()));
+            film.setLikes(likes.getOrDefault(film.getId(), new ArrayList<>()));
+        }
+        return films;
+    }
+
+    private Map<Integer, List<Integer>> getFilmsLikes(Collection<Integer> filmIds) {
+        String sqlQuery = "SELECT FILM_ID, USER_ID FROM LIKES WHERE FILM_ID = ANY(?)";
+        Map<Integer, List<Integer>> likes = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            likes.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>()).add(rs.getInt("USER_ID"));
+        }, (Object) filmIds.toArray(new Integer[0]));
+        return likes;
     }
 }
\ No newline at end of file
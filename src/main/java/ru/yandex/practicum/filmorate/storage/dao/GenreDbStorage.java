@@ -6,11 +6,11 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRead;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
 
 @Component
 @RequiredArgsConstructor
@@ -25,13 +25,19 @@ public class GenreDbStorage implements GenreStorage {
 
     @Override
     public void addFilmGenres(int filmId, Collection<Genre> genres) {
+        if (genres == null || genres.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "MERGE INTO FILM_GENRE (FILM_ID, GENRE_ID) KEY (FILM_ID, GENRE_ID) VALUES (?, ?)";
+        List<Object[]> batchArgs = new ArrayList<>();
         for (Genre genre : genres) {
-            String sqlQuery = "MERGE INTO FILM_GENRE (FILM_ID, GENRE_ID) KEY (FILM_ID, GENRE_ID) VALUES (?, ?);";
-            jdbcTemplate.update(sqlQuery, filmId, genre.getId());
+            batchArgs.add(new Object[]{filmId, genre.getId()});
         }
+        jdbcTemplate.batchUpdate(sqlQuery, batchArgs);
     }
 
     @Override
+    @ReplicaRead(films = 0)
     public Collection<Genre> getGenresByFilmId(int filmId) {
         String sqlQuery = "SELECT GENRES.GENRE_ID, GENRES.GENRE_NAME FROM GENRES " +
                 "INNER JOIN FILM_GENRE ON GENRES.GENRE_ID = FILM_GENRE.GENRE_ID " +
@@ -39,17 +45,37 @@ public class GenreDbStorage implements GenreStorage {
         return jdbcTemplate.query(sqlQuery, this::makeGenre, filmId);
     }
 
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public Map<Integer, List<Genre>> getGenresByFilmIds(Collection<Integer> filmIds) {
+        Map<Integer, List<Genre>> genres = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return genres;
+        }
+        String sqlQuery = "SELECT FILM_GENRE.FILM_ID, GENRES.GENRE_ID, GENRES.GENRE_NAME FROM FILM_GENRE " +
+                "INNER JOIN GENRES ON GENRES.GENRE_ID = FILM_GENRE.GENRE_ID " +
+                "WHERE FILM_GENRE.FILM_ID = ANY(?) " +
+                "ORDER BY FILM_GENRE.FILM_ID, GENRES.GENRE_ID";
+        jdbcTemplate.query(sqlQuery, rs -> {
+            genres.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>())
+                    .add(makeGenre(rs, rs.getRow()));
+        }, (Object) filmIds.toArray(new Integer[0]));
+        return genres;
+    }
+
     private Genre makeGenre(ResultSet resultSet, int rowNum) throws SQLException {
         return new Genre(resultSet.getInt("GENRE_ID"), resultSet.getString("GENRE_NAME"));
     }
 
     @Override
+    @ReplicaRead
     public Collection<Genre> getAllGenres() {
         String sqlQuery = "SELECT GENRE_ID, GENRE_NAME FROM GENRES ORDER BY GENRE_ID";
         return jdbcTemplate.query(sqlQuery, this::makeGenre);
     }
 
     @Override
+    @ReplicaRead
     public Optional<Genre> getGenreById(int genreId) {
         String sqlQuery = "SELECT * FROM GENRES WHERE GENRE_ID = ?";
         try {
@@ -6,6 +6,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRead;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -18,8 +19,9 @@ public class MpaDbStorage implements MpaStorage {
     private final JdbcTemplate jdbcTemplate;
 
     @Override
+    @ReplicaRead
     public Collection<Mpa> getAllMpa() {
-        String sqlQuery = "SELECT * FROM RATING_MPA";
+        String sqlQuery = "SELECT * FROM RATING_MPA ORDER BY RATING_ID";
         return jdbcTemplate.query(sqlQuery, this::makeMpa);
     }
 
@@ -30,6 +32,7 @@ public class MpaDbStorage implements MpaStorage {
     }
 
     @Override
+    @ReplicaRead
     public Optional<Mpa> getMpaById(int mpaId) {
         String sqlQuery = "SELECT * FROM RATING_MPA WHERE RATING_ID = ?";
         try {
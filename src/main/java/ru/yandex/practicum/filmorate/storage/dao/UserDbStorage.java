@@ -1,25 +1,39 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.SocialGraphIndex;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRead;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRouting;
 
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component("UserDbStorage")
+@Profile("!in-memory & !sharded")
 @RequiredArgsConstructor
+@Slf4j
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
+    private final SocialGraphIndex socialGraph;
+    private final ReplicaRouting replicaRouting;
 
     @Override
     public Optional<User> create(User user) {
@@ -37,6 +51,7 @@ public class UserDbStorage implements UserStorage {
         }, keyHolder);
 
         int id = Objects.requireNonNull(keyHolder.getKey()).intValue();
+        replicaRouting.userWritten(id);
 
         if (user.getFriends() != null && !user.getFriends().isEmpty()) {
             String friendsSqlQuery = "INSERT INTO FRIENDS (USER_ID, FRIEND_ID) VALUES (?, ?)";
@@ -56,13 +71,16 @@ public class UserDbStorage implements UserStorage {
         final String sqlQuery = "UPDATE USERS SET EMAIL = ?, LOGIN = ?, USER_NAME = ?, BIRTHDAY = ? " +
                 "WHERE USER_ID = ?";
         jdbcTemplate.update(sqlQuery, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        replicaRouting.userWritten(user.getId());
         return this.getById(user.getId());
     }
 
+    @ReplicaRead(users = 0)
     public Optional<User> getById(int id) {
         final String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = ?";
         try {
             User user = jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) -> makeUser(rs), id);
+            fillFriends(List.of(user));
             return Optional.ofNullable(user);
         } catch (EmptyResultDataAccessException e) {
             throw new ObjectNotFoundException("Пользователь с id: '" + id + "' не зарегистрирован!");
@@ -73,6 +91,7 @@ public class UserDbStorage implements UserStorage {
         return getById(id).map(user -> {
             final String sqlQuery = "DELETE FROM USERS WHERE USER_ID = ?";
             jdbcTemplate.update(sqlQuery, id);
+            replicaRouting.userWritten(id);
             return user;
         });
     }
@@ -80,54 +99,180 @@ public class UserDbStorage implements UserStorage {
     @Override
     public boolean deleteUser(User user) {
         String sqlQuery = "DELETE FROM USERS WHERE USER_ID = ?";
+        replicaRouting.userWritten(user.getId());
         return jdbcTemplate.update(sqlQuery, user.getId()) > 0;
     }
 
     @Override
+    @ReplicaRead(anyWrite = true)
     public Collection<User> findAll() {
         String sqlQuery = "SELECT * FROM USERS";
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs));
+        return fillFriends(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs)));
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<User> findPage(int afterId, int limit) {
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID > ? ORDER BY USER_ID LIMIT ?";
+        return fillFriends(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs), afterId, limit));
+    }
+
+    @Override
+    public boolean existsByLoginOrEmail(String login, String email) {
+        String sqlQuery = "SELECT EXISTS(SELECT 1 FROM USERS WHERE LOGIN = ?) " +
+                "OR EXISTS(SELECT 1 FROM USERS WHERE EMAIL = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sqlQuery, Boolean.class, login, email));
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public void streamAll(Consumer<User> action) {
+        List<User> page;
+        int afterId = 0;
+        do {
+            page = findPage(afterId, STREAM_CHUNK_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
     }
 
+    // Заявка и подтверждение — один MERGE: источник состоит из самой заявки со статусом «есть встречная»
+    // и, если встречная есть, из неё со статусом TRUE, так что дружба подтверждается сразу обеим строкам.
+    // Выборка из FINAL TABLE возвращает статусы записанных строк.
+    // Встречные заявки A->B и B->A выполняются по очереди: транзакция сначала блокирует строки обоих
+    // пользователей в порядке id. Без этого каждая сторона не видит незафиксированную заявку другой
+    // и обе остаются неподтверждёнными; взаимной блокировки нет, потому что строки всегда захватываются
+    // в одном порядке
     @Override
+    @Transactional
     public boolean addFriend(Integer userId, Integer friendId) {
-        String sqlGetReversFriend = "SELECT * FROM FRIENDSHIP " +
-                "WHERE USER_ID = ? AND FRIEND_ID = ?";
-        SqlRowSet rs = jdbcTemplate.queryForRowSet(sqlGetReversFriend, friendId, userId);
-        boolean friendAccepted = rs.next();
-        String sqlSetFriend = "INSERT INTO FRIENDSHIP (USER_ID, FRIEND_ID, STATUS) " +
-                "VALUES (?, ?, ?)";
-        jdbcTemplate.update(sqlSetFriend, userId, friendId, friendAccepted);
-        if (friendAccepted) {
-            String sqlSetStatus = "UPDATE FRIENDSHIP SET STATUS = true " +
-                    "WHERE USER_ID = ? AND FRIEND_ID = ?";
-            jdbcTemplate.update(sqlSetStatus, friendId, userId);
-        }
-        return friendAccepted;
+        String sqlLock = "SELECT USER_ID FROM USERS WHERE USER_ID IN (?, ?) ORDER BY USER_ID FOR UPDATE";
+        jdbcTemplate.queryForList(sqlLock, Integer.class, userId, friendId);
+
+        String sqlSetFriend = "SELECT STATUS FROM FINAL TABLE (MERGE INTO FRIENDSHIP F USING (" +
+                "SELECT P.USER_ID, P.FRIEND_ID, R.FRIENDSHIP_ID IS NOT NULL " +
+                "FROM (VALUES (CAST(? AS INT), CAST(? AS INT))) P(USER_ID, FRIEND_ID) " +
+                "LEFT JOIN FRIENDSHIP R ON R.USER_ID = P.FRIEND_ID AND R.FRIEND_ID = P.USER_ID " +
+                "UNION ALL SELECT USER_ID, FRIEND_ID, TRUE FROM FRIENDSHIP WHERE USER_ID = ? AND FRIEND_ID = ?" +
+                ") S(USER_ID, FRIEND_ID, STATUS) " +
+                "ON F.USER_ID = S.USER_ID AND F.FRIEND_ID = S.FRIEND_ID " +
+                "WHEN MATCHED THEN UPDATE SET STATUS = S.STATUS " +
+                "WHEN NOT MATCHED THEN INSERT (USER_ID, FRIEND_ID, STATUS) " +
+                "VALUES (S.USER_ID, S.FRIEND_ID, S.STATUS))";
+        List<Boolean> statuses = jdbcTemplate.queryForList(sqlSetFriend, Boolean.class,
+                userId, friendId, friendId, userId);
+        replicaRouting.userWritten(userId);
+        replicaRouting.userWritten(friendId);
+        // Ребро в графе идемпотентно, поэтому повторная заявка его не портит
+        TransactionCallbacks.afterCommit(() -> socialGraph.addEdge(userId, friendId));
+        return statuses.contains(Boolean.TRUE);
     }
 
     @Override
     public boolean deleteFriend(Integer userId, Integer friendId) {
         String sqlQuery = "DELETE FROM FRIENDSHIP WHERE USER_ID = ? AND FRIEND_ID = ?";
-        jdbcTemplate.update(sqlQuery, userId, friendId);
-        String sqlSetStatus = "UPDATE FRIENDSHIP SET STATUS = false " +
-                "WHERE USER_ID = ? AND FRIEND_ID = ?";
-        jdbcTemplate.update(sqlSetStatus, friendId, userId);
-        return false;
+        boolean deleted = jdbcTemplate.update(sqlQuery, userId, friendId) > 0;
+        if (deleted) {
+            replicaRouting.userWritten(userId);
+            replicaRouting.userWritten(friendId);
+            TransactionCallbacks.afterCommit(() -> socialGraph.removeEdge(userId, friendId));
+            String sqlSetStatus = "UPDATE FRIENDSHIP SET STATUS = false " +
+                    "WHERE USER_ID = ? AND FRIEND_ID = ?";
+            jdbcTemplate.update(sqlSetStatus, friendId, userId);
+        }
+        return deleted;
     }
 
     @Override
+    @ReplicaRead(users = 0)
     public User getUser(Integer id) {
         String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = ?";
 
         try {
-            return jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) -> makeUser(rs), id);
+            User user = jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) -> makeUser(rs), id);
+            fillFriends(List.of(user));
+            return user;
         } catch (EmptyResultDataAccessException e) {
             throw new ObjectNotFoundException("Пользователь с id: " +
                     id + " не зарегистрирован!");
         }
     }
 
+    @Override
+    @ReplicaRead(users = 0)
+    public List<User> getFriends(int userId) {
+        String sqlQuery = "SELECT U.* FROM FRIENDSHIP F " +
+                "JOIN USERS U ON U.USER_ID = F.FRIEND_ID " +
+                "WHERE F.USER_ID = ? " +
+                "ORDER BY U.USER_ID";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs), userId);
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<User> getCommonFriends(int userId, int otherId) {
+        if (socialGraph.isEnabled()) {
+            return getUsers(socialGraph.commonFriends(userId, otherId).toArray());
+        }
+        String sqlQuery = "SELECT U.* FROM FRIENDSHIP F1 " +
+                "JOIN FRIENDSHIP F2 ON F2.FRIEND_ID = F1.FRIEND_ID AND F2.USER_ID = ? " +
+                "JOIN USERS U ON U.USER_ID = F1.FRIEND_ID " +
+                "WHERE F1.USER_ID = ? " +
+                "ORDER BY U.USER_ID";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs), otherId, userId);
+    }
+
+    @Override
+    @ReplicaRead(anyWrite = true)
+    public List<User> getSuggestions(int userId, int limit) {
+        if (socialGraph.isEnabled()) {
+            List<Integer> ranked = socialGraph.suggestions(userId, limit).stream()
+                    .map(SocialGraphIndex.Suggestion::userId)
+                    .toList();
+            Map<Integer, User> users = getUsers(ranked.stream().mapToInt(Integer::intValue).toArray()).stream()
+                    .collect(Collectors.toMap(User::getId, user -> user));
+            return ranked.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        // Без графа в памяти: та же выборка одним запросом, первый шаг ограничен max-fanout.
+        // Таймаут JDBC задаётся в секундах, поэтому time-budget округляется вверх до целой секунды
+        String sqlQuery = "SELECT U.* FROM USERS U JOIN (" +
+                "SELECT F2.FRIEND_ID, COUNT(*) AS MUTUAL " +
+                "FROM (SELECT FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ? ORDER BY FRIEND_ID LIMIT ?) F1 " +
+                "JOIN FRIENDSHIP F2 ON F2.USER_ID = F1.FRIEND_ID " +
+                "WHERE F2.FRIEND_ID <> ? AND NOT EXISTS (SELECT 1 FROM FRIENDSHIP F3 " +
+                "WHERE F3.USER_ID = ? AND F3.FRIEND_ID = F2.FRIEND_ID) " +
+                "GROUP BY F2.FRIEND_ID " +
+                "ORDER BY MUTUAL DESC, F2.FRIEND_ID LIMIT ?) S ON S.FRIEND_ID = U.USER_ID " +
+                "ORDER BY S.MUTUAL DESC, U.USER_ID";
+        int timeoutSeconds = (int) Math.max(1, (socialGraph.getTimeBudget().toMillis() + 999) / 1000);
+        try {
+            return jdbcTemplate.query(connection -> {
+                PreparedStatement prepareStatement = connection.prepareStatement(sqlQuery);
+                prepareStatement.setQueryTimeout(timeoutSeconds);
+                prepareStatement.setInt(1, userId);
+                prepareStatement.setInt(2, socialGraph.getMaxFanout());
+                prepareStatement.setInt(3, userId);
+                prepareStatement.setInt(4, userId);
+                prepareStatement.setInt(5, limit);
+                return prepareStatement;
+            }, (rs, rowNum) -> makeUser(rs));
+        } catch (QueryTimeoutException e) {
+            log.warn("Подбор друзей для пользователя {} не уложился в {} с", userId, timeoutSeconds);
+            return new ArrayList<>();
+        }
+    }
+
+    private List<User> getUsers(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = ANY(?) ORDER BY USER_ID";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs),
+                (Object) Arrays.stream(ids).boxed().toArray(Integer[]::new));
+    }
+
     private User makeUser(ResultSet resultSet) throws SQLException {
         int userId = resultSet.getInt("USER_ID");
         return new User(
@@ -136,11 +281,21 @@ public class UserDbStorage implements UserStorage {
                 resultSet.getString("LOGIN"),
                 resultSet.getString("USER_NAME"),
                 Objects.requireNonNull(resultSet.getDate("BIRTHDAY")).toLocalDate(),
-                getUserFriends(userId));
+                new ArrayList<>());
     }
 
-    private List<Integer> getUserFriends(int userId) {
-        String sqlQuery = "SELECT FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ?";
-        return jdbcTemplate.queryForList(sqlQuery, Integer.class, userId);
+    private List<User> fillFriends(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sqlQuery = "SELECT USER_ID, FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ANY(?)";
+        Map<Integer, List<Integer>> friends = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            friends.computeIfAbsent(rs.getInt("USER_ID"), id -> new ArrayList<>()).add(rs.getInt("FRIEND_ID"));
+        }, (Object) users.stream().map(User::getId).toArray(Integer[]::new));
+        for (User user : users) {
+            user.setFriends(friends.getOrDefault(user.getId(), new ArrayList<>()));
+        }
+        return users;
     }
 }
\ No newline at end of file
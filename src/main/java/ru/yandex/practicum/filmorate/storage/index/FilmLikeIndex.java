@@ -0,0 +1,288 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Лайки в памяти в двух направлениях: фильмы каждого пользователя и пользователи каждого фильма,
+ * оба в виде битовых множеств Roaring. Множества обновляются на каждом лайке вместе с LIKES и с нуля
+ * строятся при первом чтении (см. LazyLoad); сходство пользователей не хранится и на каждый запрос считается заново
+ * по всем, кто лайкнул хотя бы один общий фильм.
+ * Рекомендации строятся коллаборативной фильтрацией: ближайшие пользователи по мере Жаккара
+ * |A ∩ B| / |A ∪ B| над множествами лайков, затем их фильмы, которых у пользователя ещё нет,
+ * с весом, равным сумме сходства. Если кандидатов больше LEAF_SIZE, поиск соседей делится на задачи fork-join
+ * в собственном пуле индекса размера filmorate.recommendations.parallelism, а не в общем пуле JVM.
+ * Счётчики общих лайков для пар пользователей не ведутся: при 100 000 пользователей по 20 лайков из 10 000 фильмов
+ * у каждого около 4 000 соседей, то есть порядка 4·10^8 пар. Поэтому запрос стоит объединения множеств
+ * лайкнувших фильмы пользователя и одного andCardinality на кандидата; замеряется RecommendationBenchmark.
+ * Выключается свойством filmorate.recommendations.enabled: индекс не строится и не обновляется,
+ * FilmDbStorage считает рекомендации тем же способом одним SQL-запросом. Хранилища in-memory и sharded
+ * без индекса не работают.
+ * Множества не изменяются после публикации, запись подменяет копию; два направления обновляются
+ * не атомарно, и на время одной записи могут кратко расходиться.
+ */
+@Component
+@Slf4j
+public class FilmLikeIndex {
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    // Кандидатов в одной листовой задаче fork-join
+    private static final int LEAF_SIZE = 2_048;
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    private static final Comparator<Scored> BEST_FIRST = Comparator.comparingDouble(Scored::score).reversed()
+            .thenComparingInt(Scored::id);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int neighbours;
+    private final ForkJoinPool pool;
+    private final Map<Integer, RoaringBitmap> filmsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, RoaringBitmap> usersByFilm = new ConcurrentHashMap<>();
+    private final LazyLoad lazyLoad = new LazyLoad(this::load);
+    // Базы, из которых загружается индекс; null — основная база
+    private volatile List<JdbcTemplate> sources;
+
+    public FilmLikeIndex(JdbcTemplate jdbcTemplate,
+                         @Value("${filmorate.recommendations.enabled:true}") boolean enabled,
+                         @Value("${filmorate.recommendations.neighbours:50}") int neighbours,
+                         @Value("${filmorate.recommendations.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.neighbours = neighbours;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getNeighbours() {
+        return neighbours;
+    }
+
+    public void rebuild() {
+        lazyLoad.reload();
+    }
+
+    // Индекс наполняет хранилище без базы, загрузки из LIKES не будет
+    public void skipDatabaseLoad() {
+        lazyLoad.skip();
+    }
+
+    // Таблицы разложены по нескольким базам (шарды): при первом чтении индекс загрузится из каждой
+    public void loadFrom(List<JdbcTemplate> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    private void load() {
+        if (!enabled) {
+            return;
+        }
+        Map<Integer, RoaringBitmap> films = new HashMap<>();
+        Map<Integer, RoaringBitmap> users = new HashMap<>();
+        String sqlQuery = "SELECT USER_ID, FILM_ID FROM LIKES";
+        for (JdbcTemplate source : sources == null ? List.of(jdbcTemplate) : sources) {
+            source.query(connection -> {
+                PreparedStatement prepareStatement = connection.prepareStatement(sqlQuery);
+                prepareStatement.setFetchSize(LOAD_FETCH_SIZE);
+                return prepareStatement;
+            }, (RowCallbackHandler) rs -> {
+                int userId = rs.getInt("USER_ID");
+                int filmId = rs.getInt("FILM_ID");
+                films.computeIfAbsent(userId, id -> new RoaringBitmap()).add(filmId);
+                users.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(userId);
+            });
+        }
+        films.values().forEach(RoaringBitmap::runOptimize);
+        users.values().forEach(RoaringBitmap::runOptimize);
+
+        filmsByUser.clear();
+        filmsByUser.putAll(films);
+        usersByFilm.clear();
+        usersByFilm.putAll(users);
+        log.info("Индекс лайков построен: пользователей {}, фильмов {}", filmsByUser.size(), usersByFilm.size());
+    }
+
+    public void addLike(int filmId, int userId) {
+        if (!enabled) {
+            return;
+        }
+        lazyLoad.change(() -> link(filmId, userId));
+    }
+
+    public void removeLike(int filmId, int userId) {
+        if (!enabled) {
+            return;
+        }
+        lazyLoad.change(() -> unlink(filmId, userId));
+    }
+
+    // Приводит лайки фильма к переданному набору, меняя только отличающиеся пары
+    public void setFilmLikes(int filmId, Collection<Integer> userIds) {
+        if (!enabled) {
+            return;
+        }
+        RoaringBitmap actual = new RoaringBitmap();
+        userIds.forEach(actual::add);
+        lazyLoad.change(() -> {
+            RoaringBitmap known = usersByFilm.getOrDefault(filmId, EMPTY);
+            RoaringBitmap.andNot(known, actual).forEach((int userId) -> unlink(filmId, userId));
+            RoaringBitmap.andNot(actual, known).forEach((int userId) -> link(filmId, userId));
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        if (!enabled) {
+            return;
+        }
+        lazyLoad.change(() -> {
+            RoaringBitmap users = usersByFilm.remove(filmId);
+            if (users != null) {
+                users.forEach((int userId) ->
+                        filmsByUser.computeIfPresent(userId, (id, films) -> without(films, filmId)));
+            }
+        });
+    }
+
+    // Возвращается опубликованное множество, изменять его нельзя
+    public RoaringBitmap likedFilms(int userId) {
+        lazyLoad.ensureLoaded();
+        return filmsByUser.getOrDefault(userId, EMPTY);
+    }
+
+    public RoaringBitmap likedBy(int filmId) {
+        lazyLoad.ensureLoaded();
+        return usersByFilm.getOrDefault(filmId, EMPTY);
+    }
+
+    public double jaccard(int userId, int otherId) {
+        return jaccard(likedFilms(userId), likedFilms(otherId));
+    }
+
+    /**
+     * До limit id фильмов, которые пользователь ещё не лайкнул, по убыванию суммарного сходства
+     * лайкнувших их соседей, при равенстве по возрастанию id.
+     */
+    public List<Integer> recommend(int userId, int limit) {
+        RoaringBitmap liked = likedFilms(userId);
+        if (liked.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Сходство ненулевое только у тех, кто лайкнул хотя бы один общий фильм
+        List<RoaringBitmap> likers = new ArrayList<>(liked.getCardinality());
+        liked.forEach((int filmId) -> likers.add(likedBy(filmId)));
+        RoaringBitmap candidates = FastAggregation.or(likers.iterator());
+        candidates.remove(userId);
+
+        int[] candidateIds = candidates.toArray();
+        NearestUsers task = new NearestUsers(liked, candidateIds, 0, candidateIds.length, neighbours);
+        PriorityQueue<Scored> nearest = candidateIds.length <= LEAF_SIZE ? task.compute() : pool.invoke(task);
+
+        Map<Integer, double[]> scores = new HashMap<>();
+        for (Scored neighbour : nearest) {
+            RoaringBitmap.andNot(likedFilms(neighbour.id()), liked).forEach((int filmId) ->
+                    scores.computeIfAbsent(filmId, id -> new double[1])[0] += neighbour.score());
+        }
+        PriorityQueue<Scored> top = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        scores.forEach((filmId, score) -> offer(top, new Scored(filmId, score[0]), limit));
+        List<Scored> ranked = new ArrayList<>(top);
+        ranked.sort(BEST_FIRST);
+        return ranked.stream().map(Scored::id).toList();
+    }
+
+    private void link(int filmId, int userId) {
+        filmsByUser.compute(userId, (id, films) -> with(films, filmId));
+        usersByFilm.compute(filmId, (id, users) -> with(users, userId));
+    }
+
+    private void unlink(int filmId, int userId) {
+        filmsByUser.computeIfPresent(userId, (id, films) -> without(films, filmId));
+        usersByFilm.computeIfPresent(filmId, (id, users) -> without(users, userId));
+    }
+
+    private static RoaringBitmap with(RoaringBitmap bitmap, int value) {
+        RoaringBitmap updated = bitmap == null ? new RoaringBitmap() : bitmap.clone();
+        updated.add(value);
+        return updated;
+    }
+
+    private static RoaringBitmap without(RoaringBitmap bitmap, int value) {
+        RoaringBitmap updated = bitmap.clone();
+        updated.remove(value);
+        return updated.isEmpty() ? null : updated;
+    }
+
+    private static double jaccard(RoaringBitmap first, RoaringBitmap second) {
+        int common = RoaringBitmap.andCardinality(first, second);
+        if (common == 0) {
+            return 0;
+        }
+        return (double) common / (first.getCardinality() + second.getCardinality() - common);
+    }
+
+    private static void offer(PriorityQueue<Scored> top, Scored scored, int limit) {
+        top.offer(scored);
+        if (top.size() > limit) {
+            top.poll();
+        }
+    }
+
+    private record Scored(int id, double score) {
+    }
+
+    /**
+     * Лучшие k соседей на отрезке кандидатов: отрезок делится пополам до LEAF_SIZE,
+     * результаты половин сливаются в одну кучу размера k.
+     */
+    private class NearestUsers extends RecursiveTask<PriorityQueue<Scored>> {
+        private final RoaringBitmap liked;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final int k;
+
+        NearestUsers(RoaringBitmap liked, int[] candidates, int from, int to, int k) {
+            this.liked = liked;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
+
+        @Override
+        protected PriorityQueue<Scored> compute() {
+            if (to - from <= LEAF_SIZE) {
+                PriorityQueue<Scored> top = new PriorityQueue<>(k + 1, BEST_FIRST.reversed());
+                for (int i = from; i < to; i++) {
+                    double similarity = jaccard(liked, likedFilms(candidates[i]));
+                    if (similarity > 0) {
+                        offer(top, new Scored(candidates[i], similarity), k);
+                    }
+                }
+                return top;
+            }
+            int middle = (from + to) >>> 1;
+            NearestUsers left = new NearestUsers(liked, candidates, from, middle, k);
+            left.fork();
+            PriorityQueue<Scored> top = new NearestUsers(liked, candidates, middle, to, k).compute();
+            left.join().forEach(scored -> offer(top, scored, k));
+            return top;
+        }
+    }
+}
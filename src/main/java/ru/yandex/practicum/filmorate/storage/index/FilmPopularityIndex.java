@@ -0,0 +1,256 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти и обновляется вместе с LIKES.
+ * Ключ упорядочен по (лайки по убыванию, id фильма по возрастанию), поэтому первые N элементов
+ * множества и есть ответ на /films/popular?count=N.
+ * Кроме общего рейтинга ведутся такие же рейтинги по каждому жанру, рейтингу MPA и году выхода:
+ * запрос с фильтром идёт по самому узкому из подходящих срезов — с наименьшим числом фильмов —
+ * и отбрасывает фильмы, не подходящие под остальные условия, вместо полного GROUP BY по LIKES.
+ * Рейтинг загружается при первом чтении (см. LazyLoad). Изменение счётчика во время загрузки нельзя
+ * повторить как приращение — снимок FILMS мог его уже учесть, — поэтому после загрузки такие фильмы
+ * перечитываются из базы.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmPopularityIndex {
+    private static final Comparator<Rank> ORDER = Comparator.comparingInt(Rank::likes).reversed()
+            .thenComparingInt(Rank::filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, Entry> films = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Facet, FacetRanking> facets = new ConcurrentHashMap<>();
+    private final LazyLoad lazyLoad = new LazyLoad(this::load);
+    // Базы, из которых загружается индекс; null — основная база
+    private volatile List<JdbcTemplate> sources;
+
+    public void rebuild() {
+        lazyLoad.reload();
+    }
+
+    // Индекс наполняет хранилище без базы, загрузки из FILMS не будет
+    public void skipDatabaseLoad() {
+        lazyLoad.skip();
+    }
+
+    // Таблицы разложены по нескольким базам (шарды): при первом чтении индекс загрузится из каждой
+    public void loadFrom(List<JdbcTemplate> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    // Только читает FILMS.LIKE_COUNT: счётчик пересчитан миграцией V2 и дальше меняется вместе с LIKES
+    private void load() {
+        films.clear();
+        ranking.clear();
+        facets.clear();
+        // Жанры фильма лежат в той же базе, что и сам фильм
+        for (JdbcTemplate source : sources == null ? List.of(jdbcTemplate) : sources) {
+            Map<Integer, Set<Integer>> genresByFilm = new HashMap<>();
+            source.query("SELECT FILM_ID, GENRE_ID FROM FILM_GENRE", rs -> {
+                genresByFilm.computeIfAbsent(rs.getInt("FILM_ID"), id -> new HashSet<>()).add(rs.getInt("GENRE_ID"));
+            });
+
+            String sqlQuery = "SELECT FILM_ID, LIKE_COUNT, RATING_ID, RELEASE_DATE FROM FILMS";
+            source.query(sqlQuery, rs -> {
+                int filmId = rs.getInt("FILM_ID");
+                put(filmId, entry(rs, genresByFilm.getOrDefault(filmId, Set.of())));
+            });
+        }
+        log.info("Индекс популярности построен, фильмов: {}, срезов: {}", films.size(), facets.size());
+    }
+
+    private void reread(int filmId) {
+        Set<Integer> genreIds = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT GENRE_ID FROM FILM_GENRE WHERE FILM_ID = ?", Integer.class, filmId));
+        List<Entry> entries = jdbcTemplate.query(
+                "SELECT LIKE_COUNT, RATING_ID, RELEASE_DATE FROM FILMS WHERE FILM_ID = ?",
+                (rs, rowNum) -> entry(rs, genreIds), filmId);
+        if (entries.isEmpty()) {
+            remove(filmId);
+        } else {
+            put(filmId, entries.get(0));
+        }
+    }
+
+    private void remove(int filmId) {
+        films.computeIfPresent(filmId, (id, entry) -> {
+            unlink(id, entry);
+            return null;
+        });
+    }
+
+    private static Entry entry(ResultSet rs, Set<Integer> genreIds) throws SQLException {
+        return new Entry(rs.getInt("LIKE_COUNT"), rs.getInt("RATING_ID"),
+                rs.getDate("RELEASE_DATE").toLocalDate().getYear(), Set.copyOf(genreIds));
+    }
+
+    private void put(int filmId, Entry entry) {
+        films.compute(filmId, (id, old) -> {
+            if (old != null) {
+                unlink(id, old);
+            }
+            link(id, entry);
+            return entry;
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        lazyLoad.change(() -> remove(filmId));
+    }
+
+    public void changeLikes(int filmId, int delta) {
+        lazyLoad.change(() -> films.computeIfPresent(filmId, (id, entry) -> {
+            unlink(id, entry);
+            Entry updated = new Entry(Math.max(0, entry.likes() + delta), entry.mpaId(), entry.year(), entry.genreIds());
+            link(id, updated);
+            return updated;
+        }), () -> reread(filmId));
+    }
+
+    // Полностью заменяет сведения о фильме: лайки и атрибуты, по которым ведутся срезы
+    public void setFilm(int filmId, int likes, int mpaId, int year, Collection<Integer> genreIds) {
+        Entry entry = new Entry(likes, mpaId, year, Set.copyOf(genreIds));
+        lazyLoad.change(() -> put(filmId, entry));
+    }
+
+    public int getLikes(int filmId) {
+        lazyLoad.ensureLoaded();
+        Entry entry = films.get(filmId);
+        return entry == null ? 0 : entry.likes();
+    }
+
+    public List<Integer> top(int count) {
+        return top(count, null, null, null);
+    }
+
+    // Любой из фильтров может быть null, тогда он не применяется
+    public List<Integer> top(int count, Integer genreId, Integer mpaId, Integer year) {
+        lazyLoad.ensureLoaded();
+        List<Facet> filters = new ArrayList<>(3);
+        if (genreId != null) {
+            filters.add(new Facet(FacetKind.GENRE, genreId));
+        }
+        if (mpaId != null) {
+            filters.add(new Facet(FacetKind.MPA, mpaId));
+        }
+        if (year != null) {
+            filters.add(new Facet(FacetKind.YEAR, year));
+        }
+        Set<Rank> source = ranking;
+        int narrowest = Integer.MAX_VALUE;
+        for (Facet filter : filters) {
+            FacetRanking facetRanking = facets.get(filter);
+            if (facetRanking == null) {
+                // Под этот фильтр не подходит ни один фильм
+                return List.of();
+            }
+            if (facetRanking.size().get() < narrowest) {
+                narrowest = facetRanking.size().get();
+                source = facetRanking.ranks();
+            }
+        }
+
+        // Обход множества слабо согласован: пока лайки фильма меняются, он может встретиться
+        // и со старым, и с новым местом, поэтому повторы отбрасываются
+        Set<Integer> filmIds = new LinkedHashSet<>();
+        Iterator<Rank> iterator = source.iterator();
+        while (filmIds.size() < count && iterator.hasNext()) {
+            int filmId = iterator.next().filmId();
+            Entry entry = films.get(filmId);
+            if (entry != null && entry.matches(genreId, mpaId, year)) {
+                filmIds.add(filmId);
+            }
+        }
+        return new ArrayList<>(filmIds);
+    }
+
+    // Вызывается только внутри compute по id фильма, поэтому срезы фильма меняются атомарно с записью
+    private void link(int filmId, Entry entry) {
+        Rank rank = new Rank(entry.likes(), filmId);
+        ranking.add(rank);
+        for (Facet facet : entry.facets()) {
+            facets.computeIfAbsent(facet, f -> new FacetRanking()).add(rank);
+        }
+    }
+
+    private void unlink(int filmId, Entry entry) {
+        Rank rank = new Rank(entry.likes(), filmId);
+        ranking.remove(rank);
+        for (Facet facet : entry.facets()) {
+            FacetRanking facetRanking = facets.get(facet);
+            if (facetRanking != null) {
+                facetRanking.remove(rank);
+            }
+        }
+    }
+
+    private record Rank(int likes, int filmId) {
+    }
+
+    // Размер считается отдельно: size() у ConcurrentSkipListSet обходит всё множество
+    private record FacetRanking(ConcurrentSkipListSet<Rank> ranks, AtomicInteger size) {
+        FacetRanking() {
+            this(new ConcurrentSkipListSet<>(ORDER), new AtomicInteger());
+        }
+
+        void add(Rank rank) {
+            if (ranks.add(rank)) {
+                size.incrementAndGet();
+            }
+        }
+
+        void remove(Rank rank) {
+            if (ranks.remove(rank)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private enum FacetKind {
+        GENRE, MPA, YEAR
+    }
+
+    private record Facet(FacetKind kind, int value) {
+    }
+
+    private record Entry(int likes, int mpaId, int year, Set<Integer> genreIds) {
+        boolean matches(Integer genreId, Integer mpaId, Integer year) {
+            return (genreId == null || genreIds.contains(genreId))
+                    && (mpaId == null || this.mpaId == mpaId)
+                    && (year == null || this.year == year);
+        }
+
+        List<Facet> facets() {
+            List<Facet> result = new ArrayList<>(genreIds.size() + 2);
+            result.add(new Facet(FacetKind.MPA, mpaId));
+            result.add(new Facet(FacetKind.YEAR, year));
+            for (int genreId : genreIds) {
+                result.add(new Facet(FacetKind.GENRE, genreId));
+            }
+            return result;
+        }
+    }
+}
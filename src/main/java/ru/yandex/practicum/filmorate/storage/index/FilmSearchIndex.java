@@ -0,0 +1,282 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Обратный индекс по названию и описанию фильмов: для каждого слова множества фильмов,
+ * где оно встречается в названии и в описании. Слова приводятся к нижнему регистру, «ё» к «е»,
+ * разделителем служит всё, что не буква и не цифра, поэтому кириллица разбирается так же, как латиница.
+ * Каждое слово запроса должно найтись в выбранных полях целиком или по основе: с конца слова запроса
+ * отбрасываются до двух гласных, «й» и «ь», и ищутся слова с таким началом. Это грубо, но покрывает
+ * частые русские окончания («снегурочка» найдёт «снегурочки», «любовь» — «любовный»).
+ * Релевантность: сумма по словам запроса idf слова, умноженного на вес поля; совпадение по началу слова
+ * весит вдвое меньше. К ней прибавляется log(1 + лайки), так что при близкой релевантности выше
+ * популярные фильмы. Начало слова раскрывается не более чем в MAX_PREFIX_EXPANSIONS слов с наибольшим числом
+ * фильмов; фильмы, где встречаются только более редкие слова с тем же началом, в выдачу не попадут. Индекс обновляется вместе с FILMS, запрос не читает таблицу; сам индекс загружается
+ * при первом поиске (см. LazyLoad).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmSearchIndex {
+    private static final double TITLE_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double PREFIX_FACTOR = 0.5;
+    private static final double LIKE_WEIGHT = 0.5;
+    private static final int MIN_PREFIX_LENGTH = 3;
+    private static final String ENDINGS = "аеиоуыэюяйь";
+    private static final int MAX_ENDING_LENGTH = 2;
+    // Ограничение на число слов, в которые раскрывается одно начало слова
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final Comparator<Hit> BEST_FIRST = Comparator.comparingDouble(Hit::score).reversed()
+            .thenComparingInt(Hit::filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularityIndex popularityIndex;
+    private final ConcurrentNavigableMap<String, Postings> postings = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+    private final LazyLoad lazyLoad = new LazyLoad(this::load);
+    // Базы, из которых загружается индекс; null — основная база
+    private volatile List<JdbcTemplate> sources;
+
+    public void rebuild() {
+        lazyLoad.reload();
+    }
+
+    // Индекс наполняет хранилище без базы, загрузки из FILMS не будет
+    public void skipDatabaseLoad() {
+        lazyLoad.skip();
+    }
+
+    // Таблицы разложены по нескольким базам (шарды): при первом поиске индекс загрузится из каждой
+    public void loadFrom(List<JdbcTemplate> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    private void load() {
+        postings.clear();
+        documents.clear();
+        String sqlQuery = "SELECT FILM_ID, FILM_NAME, DESCRIPTION FROM FILMS";
+        for (JdbcTemplate source : sources == null ? List.of(jdbcTemplate) : sources) {
+            source.query(sqlQuery, rs -> {
+                index(rs.getInt("FILM_ID"), rs.getString("FILM_NAME"), rs.getString("DESCRIPTION"));
+            });
+        }
+        log.info("Поисковый индекс построен: фильмов {}, слов {}", documents.size(), postings.size());
+    }
+
+    public void put(int filmId, String title, String description) {
+        lazyLoad.change(() -> index(filmId, title, description));
+    }
+
+    public void remove(int filmId) {
+        lazyLoad.change(() -> unindex(filmId));
+    }
+
+    // Замена документа и его слов идёт внутри compute по id фильма: параллельные изменения одного фильма
+    // не перемешиваются, и слова прежней версии не остаются без документа
+    private void index(int filmId, String title, String description) {
+        Document document = new Document(Set.copyOf(tokenize(title)), Set.copyOf(tokenize(description)));
+        documents.compute(filmId, (id, old) -> {
+            if (old != null) {
+                removePostings(id, old);
+            }
+            addPostings(id, document);
+            return document;
+        });
+    }
+
+    private void unindex(int filmId) {
+        documents.computeIfPresent(filmId, (id, old) -> {
+            removePostings(id, old);
+            return null;
+        });
+    }
+
+    private void addPostings(int filmId, Document document) {
+        document.title().forEach(term -> postings.compute(term, (t, p) -> Postings.orEmpty(p).withTitle(filmId, true)));
+        document.description().forEach(term ->
+                postings.compute(term, (t, p) -> Postings.orEmpty(p).withDescription(filmId, true)));
+    }
+
+    private void removePostings(int filmId, Document document) {
+        document.title().forEach(term -> postings.computeIfPresent(term, (t, p) -> p.withTitle(filmId, false).orNull()));
+        document.description().forEach(term ->
+                postings.computeIfPresent(term, (t, p) -> p.withDescription(filmId, false).orNull()));
+    }
+
+    /**
+     * До limit id фильмов, где в выбранных полях нашлись все слова запроса, по убыванию оценки.
+     */
+    public List<Integer> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        lazyLoad.ensureLoaded();
+        List<String> terms = tokenize(query).stream().distinct().toList();
+        if (terms.isEmpty() || !(byTitle || byDescription)) {
+            return new ArrayList<>();
+        }
+        double total = documents.size();
+        List<List<Expansion>> expansions = new ArrayList<>(terms.size());
+        RoaringBitmap candidates = null;
+        for (String term : terms) {
+            List<Expansion> expanded = expand(term, total);
+            RoaringBitmap matched = FastAggregation.or(expanded.stream()
+                    .flatMap(e -> e.postings().fields(byTitle, byDescription).stream())
+                    .iterator());
+            candidates = candidates == null ? matched : RoaringBitmap.and(candidates, matched);
+            if (candidates.isEmpty()) {
+                return new ArrayList<>();
+            }
+            expansions.add(expanded);
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        candidates.forEach((int filmId) -> {
+            double relevance = 0;
+            for (List<Expansion> expanded : expansions) {
+                double best = 0;
+                for (Expansion expansion : expanded) {
+                    Postings p = expansion.postings();
+                    double fieldWeight = (byTitle && p.title().contains(filmId) ? TITLE_WEIGHT : 0)
+                            + (byDescription && p.description().contains(filmId) ? DESCRIPTION_WEIGHT : 0);
+                    best = Math.max(best, expansion.weight() * fieldWeight);
+                }
+                relevance += best;
+            }
+            double score = relevance + LIKE_WEIGHT * Math.log1p(popularityIndex.getLikes(filmId));
+            top.offer(new Hit(filmId, score));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(BEST_FIRST);
+        return hits.stream().map(Hit::filmId).toList();
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        StringBuilder token = new StringBuilder();
+        normalized.codePoints().forEach(codePoint -> {
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(codePoint);
+            } else {
+                flush(token, tokens);
+            }
+        });
+        flush(token, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder token, List<String> tokens) {
+        if (token.length() > 1) {
+            tokens.add(token.toString());
+        }
+        token.setLength(0);
+    }
+
+    /**
+     * Слово запроса и слова индекса, начинающиеся с его основы, с весом idf × точность совпадения.
+     * Из слов по началу остаются MAX_PREFIX_EXPANSIONS самых частых.
+     */
+    private List<Expansion> expand(String term, double total) {
+        List<Expansion> expanded = new ArrayList<>();
+        Postings exact = postings.get(term);
+        if (exact != null) {
+            expanded.add(Expansion.of(exact, total, 1));
+        }
+        String stem = stem(term);
+        if (stem.length() >= MIN_PREFIX_LENGTH) {
+            postings.subMap(stem, true, stem + Character.MAX_VALUE, true).entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(term))
+                    .map(entry -> Expansion.of(entry.getValue(), total, PREFIX_FACTOR))
+                    .sorted(Comparator.comparingInt(Expansion::documentFrequency).reversed())
+                    .limit(MAX_PREFIX_EXPANSIONS)
+                    .forEach(expanded::add);
+        }
+        return expanded;
+    }
+
+    static String stem(String term) {
+        int end = term.length();
+        while (term.length() - end < MAX_ENDING_LENGTH && end > MIN_PREFIX_LENGTH
+                && ENDINGS.indexOf(term.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return term.substring(0, end);
+    }
+
+    private record Document(Set<String> title, Set<String> description) {
+    }
+
+    private record Hit(int filmId, double score) {
+    }
+
+    private record Expansion(Postings postings, int documentFrequency, double weight) {
+        static Expansion of(Postings postings, double total, double exactness) {
+            int documentFrequency = postings.documentFrequency();
+            return new Expansion(postings, documentFrequency, Math.log(1 + total / documentFrequency) * exactness);
+        }
+    }
+
+    /**
+     * Фильмы, где слово встречается в названии и в описании. Не изменяется после публикации.
+     */
+    private record Postings(RoaringBitmap title, RoaringBitmap description) {
+        private static final Postings EMPTY = new Postings(new RoaringBitmap(), new RoaringBitmap());
+
+        static Postings orEmpty(Postings postings) {
+            return postings == null ? EMPTY : postings;
+        }
+
+        Postings withTitle(int filmId, boolean present) {
+            return new Postings(toggle(title, filmId, present), description);
+        }
+
+        Postings withDescription(int filmId, boolean present) {
+            return new Postings(title, toggle(description, filmId, present));
+        }
+
+        Postings orNull() {
+            return title.isEmpty() && description.isEmpty() ? null : this;
+        }
+
+        int documentFrequency() {
+            return Math.max(1, RoaringBitmap.orCardinality(title, description));
+        }
+
+        List<RoaringBitmap> fields(boolean byTitle, boolean byDescription) {
+            List<RoaringBitmap> fields = new ArrayList<>(2);
+            if (byTitle) {
+                fields.add(title);
+            }
+            if (byDescription) {
+                fields.add(description);
+            }
+            return fields;
+        }
+
+        private static RoaringBitmap toggle(RoaringBitmap bitmap, int filmId, boolean present) {
+            RoaringBitmap updated = bitmap.clone();
+            if (present) {
+                updated.add(filmId);
+            } else {
+                updated.remove(filmId);
+            }
+            return updated;
+        }
+    }
+}
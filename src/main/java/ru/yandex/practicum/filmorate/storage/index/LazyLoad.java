@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRouting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Загрузка индекса из базы при первом чтении вместо построения при старте: время запуска не зависит
+ * от объёма таблиц, а цену загрузки платит первый запрос к индексу.
+ * Изменения до начала загрузки отбрасываются — загрузка прочитает их из базы, изменения во время загрузки
+ * записываются и повторяются над загруженными данными до того, как индекс станет доступен читателям.
+ * Загрузка и повтор изменений всегда читают основную базу, даже если загрузку вызвало чтение, направленное
+ * на реплику: изменения, отброшенные до загрузки, реплика могла ещё не получить.
+ * Хранилище in-memory само наполняет индекс и отменяет загрузку через skip(); хранилище sharded
+ * подменяет базы, из которых индекс загружается.
+ */
+final class LazyLoad {
+    private final Runnable loader;
+    private final Object replayLock = new Object();
+    private volatile boolean loaded;
+    // Изменения во время загрузки, null вне её; защищено replayLock
+    private List<Runnable> replay;
+
+    LazyLoad(Runnable loader) {
+        this.loader = loader;
+    }
+
+    // Вызывается перед каждым чтением индекса
+    void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    ReplicaRouting.onPrimary(this::load);
+                }
+            }
+        }
+    }
+
+    // Загружает индекс заново, читатели ждут окончания загрузки
+    synchronized void reload() {
+        loaded = false;
+        ReplicaRouting.onPrimary(this::load);
+    }
+
+    synchronized void skip() {
+        loaded = true;
+    }
+
+    void change(Runnable change) {
+        change(change, change);
+    }
+
+    // duringLoad повторяется после загрузки вместо change, если change нельзя безопасно применить дважды
+    void change(Runnable change, Runnable duringLoad) {
+        if (!loaded) {
+            synchronized (replayLock) {
+                if (replay != null) {
+                    replay.add(duringLoad);
+                    return;
+                }
+                if (!loaded) {
+                    return;
+                }
+            }
+        }
+        change.run();
+    }
+
+    private void load() {
+        synchronized (replayLock) {
+            replay = new ArrayList<>();
+        }
+        try {
+            loader.run();
+        } catch (RuntimeException e) {
+            synchronized (replayLock) {
+                replay = null;
+            }
+            throw e;
+        }
+        synchronized (replayLock) {
+            replay.forEach(Runnable::run);
+            replay = null;
+            loaded = true;
+        }
+    }
+}
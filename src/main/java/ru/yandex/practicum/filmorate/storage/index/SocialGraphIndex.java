@@ -0,0 +1,342 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.replica.ReplicaRouting;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя множество id друзей (исходящие заявки FRIENDSHIP)
+ * в виде сжатого битового множества Roaring. Общие друзья, друзья друзей и число общих друзей
+ * считаются пересечением и объединением множеств без обращения к базе.
+ * Множества не изменяются после публикации: запись копирует множество пользователя и подменяет его в карте.
+ * Перестроение собирает новую карту рядом со старой и подменяет ссылку на неё целиком: читатели до конца
+ * загрузки видят прежний граф, а связи, изменённые во время загрузки, повторяются на новой карте перед подменой.
+ * Первый раз граф загружается при первом чтении, как индексы фильмов (см. LazyLoad): время запуска не растёт
+ * вместе с FRIENDSHIP. LazyLoad здесь не используется, потому что перестроение не должно останавливать читателей.
+ * Включается свойством filmorate.graph.enabled, при выключенном режиме граф пуст и не обновляется.
+ */
+@Component
+@Slf4j
+public class SocialGraphIndex {
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    // Оценка накладных расходов ConcurrentHashMap на пользователя: узел, ключ Integer, ячейка таблицы
+    private static final int ENTRY_OVERHEAD_BYTES = 56;
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+    // Как часто отбор лучших кандидатов сверяется с time-budget
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
+    // Меньший первый шаг дешевле раскрыть в потоке запроса, чем передавать в пул
+    private static final int PARALLEL_THRESHOLD = 256;
+    // Друзей первого шага в одной листовой задаче fork-join
+    private static final int LEAF_SIZE = 64;
+
+    private static final Comparator<Suggestion> BEST_FIRST = Comparator.comparingInt(Suggestion::mutualFriends)
+            .reversed()
+            .thenComparingInt(Suggestion::userId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxFanout;
+    private final Duration timeBudget;
+    private final ForkJoinPool pool;
+    private final Object replayLock = new Object();
+    private volatile Map<Integer, RoaringBitmap> friendsByUser = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+    // Изменения связей во время перестроения, null вне его; защищено replayLock
+    private List<EdgeChange> replay;
+
+    public SocialGraphIndex(JdbcTemplate jdbcTemplate,
+                            @Value("${filmorate.graph.enabled:false}") boolean enabled,
+                            @Value("${filmorate.graph.suggestions.max-fanout:1000}") int maxFanout,
+                            @Value("${filmorate.graph.suggestions.time-budget:PT0.05S}") Duration timeBudget,
+                            @Value("${filmorate.graph.suggestions.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxFanout = maxFanout;
+        this.timeBudget = timeBudget;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxFanout() {
+        return maxFanout;
+    }
+
+    public Duration getTimeBudget() {
+        return timeBudget;
+    }
+
+    // Вызывается перед каждым чтением графа. Связи, изменённые до загрузки, попадают в пустую карту,
+    // которую загрузка заменит: они уже есть в базе
+    private void ensureLoaded() {
+        if (!initialized && enabled) {
+            synchronized (this) {
+                if (!initialized) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        // Как и LazyLoad, граф читается из основной базы: реплика могла ещё не получить последние связи
+        reload(() -> {
+            Map<Integer, RoaringBitmap> loaded = new HashMap<>();
+            String sqlQuery = "SELECT USER_ID, FRIEND_ID FROM FRIENDSHIP";
+            ReplicaRouting.onPrimary(() -> jdbcTemplate.query(connection -> {
+                PreparedStatement prepareStatement = connection.prepareStatement(sqlQuery);
+                prepareStatement.setFetchSize(LOAD_FETCH_SIZE);
+                return prepareStatement;
+            }, (RowCallbackHandler) rs -> {
+                loaded.computeIfAbsent(rs.getInt("USER_ID"), id -> new RoaringBitmap()).add(rs.getInt("FRIEND_ID"));
+            }));
+            return loaded;
+        });
+        Footprint footprint = footprint();
+        log.info("Граф дружбы построен: пользователей {}, связей {}, {} байт", footprint.users(), footprint.edges(),
+                footprint.bytes());
+    }
+
+    // Подменяет граф целиком, множества переходят во владение индекса
+    void replaceAll(Map<Integer, RoaringBitmap> loaded) {
+        reload(() -> loaded);
+    }
+
+    // Изменения связей начинают записываться до загрузки: связь, зафиксированная в базе после снимка
+    // или удалённая после него, попадёт в новую карту при повторе
+    synchronized void reload(Supplier<Map<Integer, RoaringBitmap>> loader) {
+        synchronized (replayLock) {
+            replay = new ArrayList<>();
+        }
+        Map<Integer, RoaringBitmap> next;
+        try {
+            Map<Integer, RoaringBitmap> loaded = loader.get();
+            loaded.values().forEach(RoaringBitmap::runOptimize);
+            next = new ConcurrentHashMap<>(loaded);
+        } catch (RuntimeException e) {
+            synchronized (replayLock) {
+                replay = null;
+            }
+            throw e;
+        }
+        synchronized (replayLock) {
+            replay.forEach(change -> change.applyTo(next));
+            replay = null;
+            friendsByUser = next;
+        }
+        initialized = true;
+    }
+
+    public void addEdge(int userId, int friendId) {
+        change(new EdgeChange(userId, friendId, true));
+    }
+
+    public void removeEdge(int userId, int friendId) {
+        change(new EdgeChange(userId, friendId, false));
+    }
+
+    // Карта и запись в журнал повтора берутся под одной блокировкой с подменой: изменение попадает
+    // либо в журнал перед подменой, либо прямо в новую карту
+    private void change(EdgeChange change) {
+        if (!enabled) {
+            return;
+        }
+        Map<Integer, RoaringBitmap> target;
+        synchronized (replayLock) {
+            target = friendsByUser;
+            if (replay != null) {
+                replay.add(change);
+            }
+        }
+        change.applyTo(target);
+    }
+
+    // Возвращается опубликованное множество, изменять его нельзя
+    public RoaringBitmap friends(int userId) {
+        ensureLoaded();
+        return friends(friendsByUser, userId);
+    }
+
+    private static RoaringBitmap friends(Map<Integer, RoaringBitmap> graph, int userId) {
+        return graph.getOrDefault(userId, EMPTY);
+    }
+
+    public RoaringBitmap commonFriends(int userId, int otherId) {
+        ensureLoaded();
+        Map<Integer, RoaringBitmap> graph = friendsByUser;
+        return RoaringBitmap.and(friends(graph, userId), friends(graph, otherId));
+    }
+
+    public int mutualFriendCount(int userId, int otherId) {
+        ensureLoaded();
+        Map<Integer, RoaringBitmap> graph = friendsByUser;
+        return RoaringBitmap.andCardinality(friends(graph, userId), friends(graph, otherId));
+    }
+
+    /**
+     * Друзья друзей без самого пользователя и его прямых друзей.
+     */
+    public RoaringBitmap friendsOfFriends(int userId) {
+        ensureLoaded();
+        Map<Integer, RoaringBitmap> graph = friendsByUser;
+        RoaringBitmap friends = friends(graph, userId);
+        List<RoaringBitmap> secondHop = new ArrayList<>(friends.getCardinality());
+        friends.forEach((int friendId) -> secondHop.add(friends(graph, friendId)));
+        RoaringBitmap result = FastAggregation.or(secondHop.iterator());
+        result.andNot(friends);
+        result.remove(userId);
+        return result;
+    }
+
+    /**
+     * Кандидаты в друзья: пользователи во втором шаге обхода, которых нет среди друзей,
+     * по убыванию числа общих друзей. На каждом шаге берётся не больше max-fanout соседей.
+     * Первый шаг от PARALLEL_THRESHOLD друзей раскрывается задачами fork-join в собственном пуле индекса
+     * размера filmorate.graph.suggestions.parallelism, меньший — в потоке запроса. time-budget проверяется
+     * и при раскрытии друзей, и при отборе лучших: после него оставшиеся не рассматриваются
+     * и ответ строится по уже собранным. Лучшие limit выбираются кучей размера limit без сортировки всех кандидатов.
+     */
+    public List<Suggestion> suggestions(int userId, int limit) {
+        ensureLoaded();
+        Map<Integer, RoaringBitmap> graph = friendsByUser;
+        RoaringBitmap friends = friends(graph, userId);
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+
+        int[] firstHop = friends.stream().limit(maxFanout).toArray();
+        ExpandFriends task = new ExpandFriends(graph, userId, friends, firstHop, 0, firstHop.length, deadline);
+        Map<Integer, Integer> mutual = firstHop.length < PARALLEL_THRESHOLD ? task.count() : pool.invoke(task);
+
+        PriorityQueue<Suggestion> top = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        int offered = 0;
+        for (Map.Entry<Integer, Integer> candidate : mutual.entrySet()) {
+            if (++offered % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+            top.offer(new Suggestion(candidate.getKey(), candidate.getValue()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Suggestion> result = new ArrayList<>(top);
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    public Footprint footprint() {
+        ensureLoaded();
+        Map<Integer, RoaringBitmap> graph = friendsByUser;
+        long edges = 0;
+        long bytes = 0;
+        for (RoaringBitmap friends : graph.values()) {
+            edges += friends.getLongCardinality();
+            bytes += friends.getLongSizeInBytes() + ENTRY_OVERHEAD_BYTES;
+        }
+        return new Footprint(graph.size(), edges, bytes);
+    }
+
+    /**
+     * Число общих друзей для кандидатов со второго шага на отрезке первого шага: отрезок делится пополам
+     * до LEAF_SIZE, счётчики половин складываются.
+     */
+    private class ExpandFriends extends RecursiveTask<Map<Integer, Integer>> {
+        private final Map<Integer, RoaringBitmap> graph;
+        private final int userId;
+        private final RoaringBitmap friends;
+        private final int[] firstHop;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        ExpandFriends(Map<Integer, RoaringBitmap> graph, int userId, RoaringBitmap friends, int[] firstHop,
+                      int from, int to, long deadline) {
+            this.graph = graph;
+            this.userId = userId;
+            this.friends = friends;
+            this.firstHop = firstHop;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Map<Integer, Integer> compute() {
+            if (to - from <= LEAF_SIZE) {
+                return count();
+            }
+            int middle = (from + to) >>> 1;
+            ExpandFriends left = new ExpandFriends(graph, userId, friends, firstHop, from, middle, deadline);
+            left.fork();
+            Map<Integer, Integer> mutual = new ExpandFriends(graph, userId, friends, firstHop, middle, to, deadline)
+                    .compute();
+            left.join().forEach((candidate, count) -> mutual.merge(candidate, count, Integer::sum));
+            return mutual;
+        }
+
+        // Весь отрезок в текущем потоке, без деления на задачи
+        Map<Integer, Integer> count() {
+            Map<Integer, Integer> mutual = new HashMap<>();
+            for (int i = from; i < to && System.nanoTime() < deadline; i++) {
+                PeekableIntIterator secondHop = friends(graph, firstHop[i]).getIntIterator();
+                for (int taken = 0; taken < maxFanout && secondHop.hasNext(); taken++) {
+                    int candidate = secondHop.next();
+                    if (candidate != userId && !friends.contains(candidate)) {
+                        mutual.merge(candidate, 1, Integer::sum);
+                    }
+                }
+            }
+            return mutual;
+        }
+    }
+
+    private record EdgeChange(int userId, int friendId, boolean add) {
+        void applyTo(Map<Integer, RoaringBitmap> graph) {
+            if (add) {
+                graph.compute(userId, (id, friends) -> {
+                    RoaringBitmap updated = friends == null ? new RoaringBitmap() : friends.clone();
+                    updated.add(friendId);
+                    return updated;
+                });
+            } else {
+                graph.computeIfPresent(userId, (id, friends) -> {
+                    RoaringBitmap updated = friends.clone();
+                    updated.remove(friendId);
+                    return updated.isEmpty() ? null : updated;
+                });
+            }
+        }
+    }
+
+    public record Suggestion(int userId, int mutualFriends) {
+    }
+
+    public record Footprint(int users, long edges, long bytes) {
+        public long bytesPerMillionEdges() {
+            return edges == 0 ? 0 : bytes * 1_000_000 / edges;
+        }
+    }
+}
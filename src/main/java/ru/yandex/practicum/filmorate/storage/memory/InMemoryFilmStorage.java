@@ -0,0 +1,364 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.StorageJournal.Change;
+import ru.yandex.practicum.filmorate.storage.memory.StorageJournal.Kind;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Фильмы целиком в памяти, без обращений к базе на чтение и запись. Включается профилем in-memory
+ * вместо FilmDbStorage и его кеша. Фильмы лежат в упорядоченной по id карте, лайки каждого фильма —
+ * битовое множество Roaring под блокировкой своей полосы. Справочники жанров и рейтингов берутся
+ * из закешированных хранилищ. Популярность, рекомендации и поиск — те же индексы, что и у FilmDbStorage,
+ * они обновляются сразу при изменении. Ссылки на рейтинг, жанры и пользователей проверяются, как внешние
+ * ключи FILMS, FILM_GENRE и LIKES: неизвестный id отклоняется DataIntegrityViolationException. Лайки
+ * пишутся под блокировками полос их пользователей (InMemoryUserStorage.withExisting), которые берутся
+ * раньше полосы фильма.
+ * Отдаваемые фильмы — новые объекты, их можно менять, не затрагивая хранилище.
+ * Изменения не участвуют в транзакциях Spring: откат транзакции сервиса их не отменяет.
+ */
+@Slf4j
+@Component
+@Profile("in-memory")
+public class InMemoryFilmStorage implements FilmStorage {
+    private static final int LOCK_STRIPES = 64;
+
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final InMemoryUserStorage userStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final FilmSearchIndex searchIndex;
+    private final StorageJournal journal;
+
+    private final NavigableMap<Integer, Row> films = new ConcurrentSkipListMap<>();
+    private final Map<Integer, RoaringBitmap> likes = new ConcurrentHashMap<>();
+    private final Map<NaturalKey, Set<Integer>> byNaturalKey = new ConcurrentHashMap<>();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public InMemoryFilmStorage(MpaStorage mpaStorage,
+                               GenreStorage genreStorage,
+                               InMemoryUserStorage userStorage,
+                               FilmPopularityIndex popularityIndex,
+                               FilmLikeIndex likeIndex,
+                               FilmSearchIndex searchIndex,
+                               ObjectMapper objectMapper,
+                               @Value("${filmorate.storage.memory.journal-dir:}") String journalDir,
+                               @Value("${filmorate.storage.memory.snapshot-every:10000}") int snapshotEvery) {
+        this.mpaStorage = mpaStorage;
+        this.genreStorage = genreStorage;
+        this.userStorage = userStorage;
+        this.popularityIndex = popularityIndex;
+        this.likeIndex = likeIndex;
+        this.searchIndex = searchIndex;
+        this.journal = StorageJournal.open(journalDir, "films", objectMapper, snapshotEvery, this::state);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!likeIndex.isEnabled()) {
+            throw new IllegalStateException("Хранилище in-memory строит рекомендации только по индексу лайков, " +
+                    "filmorate.recommendations.enabled=false не поддерживается");
+        }
+        popularityIndex.skipDatabaseLoad();
+        likeIndex.skipDatabaseLoad();
+        searchIndex.skipDatabaseLoad();
+        journal.replay(this::apply);
+        films.values().forEach(this::syncIndexes);
+        log.info("Фильмы в памяти: {}, журнал {}", films.size(), journal.isEnabled() ? "включён" : "выключен");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    @Override
+    public Optional<Film> create(Film film) {
+        checkReferences(film);
+        int id = sequence.incrementAndGet();
+        film.setId(id);
+        return Optional.of(journal.write(() -> userStorage.withExisting(likedBy(film), () -> locks.write(id, () -> {
+            Film created = put(film);
+            journal.append(Change.putFilm(created));
+            return created;
+        }))));
+    }
+
+    @Override
+    public Optional<Film> update(Film film) {
+        int id = film.getId();
+        checkReferences(film);
+        return Optional.of(journal.write(() -> userStorage.withExisting(likedBy(film), () -> locks.write(id, () -> {
+            if (!films.containsKey(id)) {
+                throw new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", id));
+            }
+            Film updated = put(film);
+            journal.append(Change.putFilm(updated));
+            return updated;
+        }))));
+    }
+
+    @Override
+    public Optional<Film> getById(int id) {
+        Row row = films.get(id);
+        if (row == null) {
+            throw new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", id));
+        }
+        return Optional.of(toFilm(row));
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        return getFilms();
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return toFilms(films.values());
+    }
+
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        return toFilms(films.tailMap(afterId, false).values().stream().limit(limit).toList());
+    }
+
+    @Override
+    public List<Film> findByNaturalKey(String name, LocalDate releaseDate, int duration, int mpaId) {
+        Set<Integer> ids = byNaturalKey.getOrDefault(new NaturalKey(name, releaseDate, duration, mpaId), Set.of());
+        return toFilms(ids.stream().map(films::get).filter(Objects::nonNull).toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> action) {
+        films.values().forEach(row -> action.accept(toFilm(row)));
+    }
+
+    @Override
+    public boolean deleteFilm(Film film) {
+        int id = film.getId();
+        return journal.write(() -> locks.write(id, () -> {
+            if (remove(id)) {
+                journal.append(Change.of(Kind.FILM_DELETE, id));
+                popularityIndex.removeFilm(id);
+                likeIndex.removeFilm(id);
+                searchIndex.remove(id);
+            }
+            return true;
+        }));
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        return journal.write(() -> userStorage.withExisting(List.of(userId), () -> locks.write(filmId, () -> {
+            RoaringBitmap filmLikes = likes.get(filmId);
+            if (filmLikes == null) {
+                throw new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", filmId));
+            }
+            if (!filmLikes.checkedAdd(userId)) {
+                return false;
+            }
+            journal.append(Change.of(Kind.LIKE_ADD, filmId, userId));
+            popularityIndex.changeLikes(filmId, 1);
+            likeIndex.addLike(filmId, userId);
+            return true;
+        })));
+    }
+
+    @Override
+    public boolean deleteLike(int filmId, int userId) {
+        return journal.write(() -> locks.write(filmId, () -> {
+            RoaringBitmap filmLikes = likes.get(filmId);
+            if (filmLikes == null || !filmLikes.checkedRemove(userId)) {
+                return false;
+            }
+            journal.append(Change.of(Kind.LIKE_DELETE, filmId, userId));
+            popularityIndex.changeLikes(filmId, -1);
+            likeIndex.removeLike(filmId, userId);
+            return true;
+        }));
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count) {
+        return getPopularFilms(count, null, null, null);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        return getFilmsInOrder(popularityIndex.top(count, genreId, mpaId, year));
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int limit) {
+        return getFilmsInOrder(likeIndex.recommend(userId, limit));
+    }
+
+    @Override
+    public List<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        return getFilmsInOrder(searchIndex.search(query, byTitle, byDescription, limit));
+    }
+
+    private List<Film> getFilmsInOrder(List<Integer> filmIds) {
+        return toFilms(filmIds.stream().map(films::get).filter(Objects::nonNull).toList());
+    }
+
+    // Вызывается под блокировкой полосы фильма. Лайки из тела добавляются к уже поставленным, как в FilmDbStorage
+    private Film put(Film film) {
+        Row row = store(film, true);
+        syncIndexes(row);
+        return toFilm(row);
+    }
+
+    // mergeLikes=false заменяет лайки целиком: так применяется запись журнала, в которой они полные
+    private Row store(Film film, boolean mergeLikes) {
+        Row row = new Row(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getRate(), film.getMpa().getId(), genreIds(film.getGenres()));
+        RoaringBitmap filmLikes = mergeLikes
+                ? likes.computeIfAbsent(row.id(), id -> new RoaringBitmap())
+                : new RoaringBitmap();
+        if (film.getLikes() != null) {
+            film.getLikes().forEach(filmLikes::add);
+        }
+        likes.put(row.id(), filmLikes);
+        Row previous = films.put(row.id(), row);
+        if (previous != null) {
+            unlinkNaturalKey(previous);
+        }
+        byNaturalKey.computeIfAbsent(row.naturalKey(), key -> new ConcurrentSkipListSet<>()).add(row.id());
+        return row;
+    }
+
+    private boolean remove(int id) {
+        Row row = films.remove(id);
+        if (row == null) {
+            return false;
+        }
+        likes.remove(id);
+        unlinkNaturalKey(row);
+        return true;
+    }
+
+    private void checkReferences(Film film) {
+        int mpaId = film.getMpa().getId();
+        if (mpaStorage.getMpaById(mpaId).isEmpty()) {
+            throw new DataIntegrityViolationException(String.format("Возрастного рейтинга с id=%d нет", mpaId));
+        }
+        for (int genreId : genreIds(film.getGenres())) {
+            if (genreStorage.getGenreById(genreId).isEmpty()) {
+                throw new DataIntegrityViolationException(String.format("Жанра с id=%d нет", genreId));
+            }
+        }
+    }
+
+    private static Collection<Integer> likedBy(Film film) {
+        return film.getLikes() == null ? List.of() : film.getLikes();
+    }
+
+    private void unlinkNaturalKey(Row row) {
+        byNaturalKey.computeIfPresent(row.naturalKey(), (key, ids) -> {
+            ids.remove(row.id());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private void syncIndexes(Row row) {
+        List<Integer> filmLikes = likesOf(row.id());
+        popularityIndex.setFilm(row.id(), filmLikes.size(), row.mpaId(), row.releaseDate().getYear(), row.genreIds());
+        likeIndex.setFilmLikes(row.id(), filmLikes);
+        searchIndex.put(row.id(), row.name(), row.description());
+    }
+
+    // Повтор журнала при старте, до приёма запросов: блокировки не нужны
+    private void apply(Change change) {
+        switch (change.kind()) {
+            case FILM_PUT -> {
+                store(change.film(), false);
+                sequence.accumulateAndGet(change.film().getId(), Math::max);
+            }
+            case FILM_DELETE -> remove(change.id());
+            case LIKE_ADD -> Optional.ofNullable(likes.get(change.id()))
+                    .ifPresent(filmLikes -> filmLikes.add(change.otherId()));
+            case LIKE_DELETE -> Optional.ofNullable(likes.get(change.id()))
+                    .ifPresent(filmLikes -> filmLikes.remove(change.otherId()));
+            default -> throw new IllegalStateException("Чужая запись в журнале фильмов: " + change.kind());
+        }
+    }
+
+    // Снимок: каждый фильм одной записью вместе с лайками
+    private Stream<Change> state() {
+        return films.values().stream().map(row -> Change.putFilm(toFilm(row)));
+    }
+
+    private List<Film> toFilms(Collection<Row> rows) {
+        return rows.stream().map(this::toFilm).collect(Collectors.toList());
+    }
+
+    private Film toFilm(Row row) {
+        List<Genre> genres = row.genreIds().stream()
+                .map(genreId -> genreStorage.getGenreById(genreId).orElseGet(() -> new Genre(genreId, null)))
+                .collect(Collectors.toList());
+        return new Film(row.id(), row.name(), row.description(), row.releaseDate(), row.duration(), row.rate(),
+                mpaStorage.getMpaById(row.mpaId()).orElseGet(() -> new Mpa(row.mpaId(), null, null)),
+                genres,
+                likesOf(row.id()));
+    }
+
+    private List<Integer> likesOf(int filmId) {
+        return locks.read(filmId, () -> {
+            RoaringBitmap filmLikes = likes.get(filmId);
+            List<Integer> userIds = new ArrayList<>(filmLikes == null ? 0 : filmLikes.getCardinality());
+            if (filmLikes != null) {
+                filmLikes.forEach((int userId) -> userIds.add(userId));
+            }
+            return userIds;
+        });
+    }
+
+    // Жанры фильма без повторов и по возрастанию id, как их отдаёт FILM_GENRE
+    private static List<Integer> genreIds(Collection<Genre> genres) {
+        if (genres == null) {
+            return List.of();
+        }
+        return genres.stream().map(Genre::getId).distinct().sorted().toList();
+    }
+
+    private record Row(int id, String name, String description, LocalDate releaseDate, int duration, int rate,
+                       int mpaId, List<Integer> genreIds) {
+        NaturalKey naturalKey() {
+            return new NaturalKey(name, releaseDate, duration, mpaId);
+        }
+    }
+
+    private record NaturalKey(String name, LocalDate releaseDate, int duration, int mpaId) {
+    }
+}
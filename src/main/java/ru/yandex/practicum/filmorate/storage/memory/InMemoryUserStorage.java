@@ -0,0 +1,403 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.memory.StorageJournal.Change;
+import ru.yandex.practicum.filmorate.storage.memory.StorageJournal.Kind;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пользователи и заявки в друзья целиком в памяти. Включается профилем in-memory вместо UserDbStorage и его кеша.
+ * Исходящие и входящие заявки пользователя — битовые множества Roaring под блокировкой его полосы;
+ * дружба взаимна, когда есть заявки в обе стороны, как в FRIENDSHIP. Уникальность логина и почты
+ * и запрет удалять пользователя со связями в друзьях или с лайками повторяют ограничения таблиц и сообщаются
+ * теми же исключениями Spring. Лайки пользователя берутся из индекса лайков: InMemoryFilmStorage ведёт его
+ * под блокировками полос пользователей из withExisting, поэтому удаление не разминётся с новым лайком.
+ * Отдаваемые пользователи — новые объекты, их можно менять, не затрагивая хранилище.
+ * Изменения не участвуют в транзакциях Spring: откат транзакции сервиса их не отменяет.
+ */
+@Slf4j
+@Component
+@Profile("in-memory")
+public class InMemoryUserStorage implements UserStorage {
+    private static final int LOCK_STRIPES = 64;
+    private static final Comparator<Map.Entry<Integer, Integer>> BEST_FIRST =
+            Map.Entry.<Integer, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final FilmLikeIndex likeIndex;
+    private final int maxFanout;
+    private final StorageJournal journal;
+
+    private final NavigableMap<Integer, Row> users = new ConcurrentSkipListMap<>();
+    private final Map<Integer, RoaringBitmap> friends = new ConcurrentHashMap<>();
+    // Входящие заявки: кто отправил заявку пользователю. Меняются под блокировками обеих сторон
+    private final Map<Integer, RoaringBitmap> incoming = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byLogin = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byEmail = new ConcurrentHashMap<>();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public InMemoryUserStorage(FilmLikeIndex likeIndex,
+                               ObjectMapper objectMapper,
+                               @Value("${filmorate.graph.suggestions.max-fanout:1000}") int maxFanout,
+                               @Value("${filmorate.storage.memory.journal-dir:}") String journalDir,
+                               @Value("${filmorate.storage.memory.snapshot-every:10000}") int snapshotEvery) {
+        this.likeIndex = likeIndex;
+        this.maxFanout = maxFanout;
+        this.journal = StorageJournal.open(journalDir, "users", objectMapper, snapshotEvery, this::state);
+    }
+
+    @PostConstruct
+    public void load() {
+        // Лайки в индексе ведёт InMemoryFilmStorage, из базы он не загружается
+        likeIndex.skipDatabaseLoad();
+        journal.replay(this::apply);
+        log.info("Пользователи в памяти: {}, журнал {}", users.size(), journal.isEnabled() ? "включён" : "выключен");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    @Override
+    public Optional<User> create(User user) {
+        List<Integer> requested = user.getFriends() == null ? List.of() : List.copyOf(user.getFriends());
+        for (int friendId : requested) {
+            if (!users.containsKey(friendId)) {
+                throw notFound(friendId);
+            }
+        }
+        int id = sequence.incrementAndGet();
+        return Optional.of(journal.write(() -> {
+            Row row = new Row(id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+            locks.write(id, () -> {
+                claimKeys(row, null);
+                friends.put(id, new RoaringBitmap());
+                incoming.put(id, new RoaringBitmap());
+                users.put(id, row);
+                journal.append(Change.putUser(toUser(row)));
+                return row;
+            });
+            // Друг, удалённый после проверки, пропускается: в базе такую заявку не дал бы вставить внешний ключ
+            requested.forEach(friendId -> locks.write(id, friendId,
+                    () -> users.containsKey(friendId) && link(id, friendId)));
+            return toUser(row);
+        }));
+    }
+
+    @Override
+    public Optional<User> update(User user) {
+        int id = user.getId();
+        return Optional.of(journal.write(() -> locks.write(id, () -> {
+            Row existing = users.get(id);
+            if (existing == null) {
+                throw notFound(id);
+            }
+            Row row = new Row(id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+            claimKeys(row, existing);
+            users.put(id, row);
+            User updated = toUser(row);
+            journal.append(Change.putUser(updated));
+            return updated;
+        })));
+    }
+
+    @Override
+    public Optional<User> getById(int id) {
+        Row row = users.get(id);
+        if (row == null) {
+            throw notFound(id);
+        }
+        return Optional.of(toUser(row));
+    }
+
+    @Override
+    public User getUser(Integer id) {
+        Row row = users.get(id);
+        if (row == null) {
+            throw new ObjectNotFoundException("Пользователь с id: " + id + " не зарегистрирован!");
+        }
+        return toUser(row);
+    }
+
+    @Override
+    public Optional<User> deleteById(int id) {
+        return getById(id).map(user -> {
+            deleteUser(user);
+            return user;
+        });
+    }
+
+    @Override
+    public boolean deleteUser(User user) {
+        int id = user.getId();
+        return journal.write(() -> locks.write(id, () -> {
+            if (!users.containsKey(id)) {
+                return false;
+            }
+            // Как внешние ключи FRIENDSHIP: пользователя со связями в друзьях удалить нельзя
+            if (!friends.get(id).isEmpty() || !incoming.get(id).isEmpty()) {
+                throw new DataIntegrityViolationException("Пользователь с id: " + id + " состоит в друзьях");
+            }
+            // Как fk_Like_UserID: пользователя с лайками удалить нельзя
+            if (!likeIndex.likedFilms(id).isEmpty()) {
+                throw new DataIntegrityViolationException("Пользователь с id: " + id + " ставил лайки");
+            }
+            remove(id);
+            journal.append(Change.of(Kind.USER_DELETE, id));
+            return true;
+        }));
+    }
+
+    /**
+     * Выполняет действие, пока ни одного из пользователей нельзя удалить. Отсутствующий пользователь
+     * отклоняется так же, как строку LIKES отклонил бы внешний ключ fk_Like_UserID.
+     */
+    <T> T withExisting(Collection<Integer> userIds, Supplier<T> action) {
+        return locks.read(userIds, () -> {
+            for (int userId : userIds) {
+                if (!users.containsKey(userId)) {
+                    throw new DataIntegrityViolationException("Пользователя с id: " + userId + " нет в базе данных");
+                }
+            }
+            return action.get();
+        });
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        return toUsers(users.values());
+    }
+
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        return toUsers(users.tailMap(afterId, false).values().stream().limit(limit).toList());
+    }
+
+    @Override
+    public boolean existsByLoginOrEmail(String login, String email) {
+        return byLogin.containsKey(login) || byEmail.containsKey(email);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> action) {
+        users.values().forEach(row -> action.accept(toUser(row)));
+    }
+
+    @Override
+    public boolean addFriend(Integer userId, Integer friendId) {
+        return journal.write(() -> locks.write(userId, friendId, () -> {
+            if (!users.containsKey(userId)) {
+                throw notFound(userId);
+            }
+            if (!users.containsKey(friendId)) {
+                throw notFound(friendId);
+            }
+            link(userId, friendId);
+            return friends.get(friendId).contains(userId);
+        }));
+    }
+
+    @Override
+    public boolean deleteFriend(Integer userId, Integer friendId) {
+        return journal.write(() -> locks.write(userId, friendId, () -> {
+            RoaringBitmap requests = friends.get(userId);
+            if (requests == null || !requests.checkedRemove(friendId)) {
+                return false;
+            }
+            incoming.get(friendId).remove(userId);
+            journal.append(Change.of(Kind.FRIEND_DELETE, userId, friendId));
+            return true;
+        }));
+    }
+
+    @Override
+    public List<User> getFriends(int userId) {
+        return getUsers(requestsOf(userId));
+    }
+
+    @Override
+    public List<User> getCommonFriends(int userId, int otherId) {
+        return getUsers(RoaringBitmap.and(requestsOf(userId), requestsOf(otherId)));
+    }
+
+    // Тот же порядок и бюджет, что у запроса UserDbStorage: первый шаг — max-fanout друзей с меньшими id
+    @Override
+    public List<User> getSuggestions(int userId, int limit) {
+        RoaringBitmap own = requestsOf(userId);
+        Map<Integer, Integer> mutual = new HashMap<>();
+        int visited = 0;
+        for (int friendId : own) {
+            if (visited++ == maxFanout) {
+                break;
+            }
+            requestsOf(friendId).forEach((int candidate) -> {
+                if (candidate != userId && !own.contains(candidate)) {
+                    mutual.merge(candidate, 1, Integer::sum);
+                }
+            });
+        }
+        return mutual.entrySet().stream()
+                .sorted(BEST_FIRST)
+                .limit(limit)
+                .map(entry -> users.get(entry.getKey()))
+                .filter(Objects::nonNull)
+                .map(this::toUserWithoutFriends)
+                .collect(Collectors.toList());
+    }
+
+    // Вызывается под блокировками обоих пользователей
+    private boolean link(int userId, int friendId) {
+        if (!friends.get(userId).checkedAdd(friendId)) {
+            return false;
+        }
+        incoming.get(friendId).add(userId);
+        journal.append(Change.of(Kind.FRIEND_ADD, userId, friendId));
+        return true;
+    }
+
+    // Логин и почта занимаются до публикации пользователя; при конфликте занятое этим вызовом освобождается
+    private void claimKeys(Row row, Row existing) {
+        String oldLogin = existing == null ? null : existing.login();
+        String oldEmail = existing == null ? null : existing.email();
+        boolean newLogin = !row.login().equals(oldLogin);
+        if (newLogin && byLogin.putIfAbsent(row.login(), row.id()) != null) {
+            throw new DuplicateKeyException("Логин " + row.login() + " уже занят: uc_User_Login");
+        }
+        if (!row.email().equals(oldEmail) && byEmail.putIfAbsent(row.email(), row.id()) != null) {
+            if (newLogin) {
+                byLogin.remove(row.login(), row.id());
+            }
+            throw new DuplicateKeyException("Почта " + row.email() + " уже занята: uc_User_Email");
+        }
+        if (existing != null) {
+            releaseKeys(existing, row);
+        }
+    }
+
+    private void releaseKeys(Row previous, Row current) {
+        if (current == null || !previous.login().equals(current.login())) {
+            byLogin.remove(previous.login(), previous.id());
+        }
+        if (current == null || !previous.email().equals(current.email())) {
+            byEmail.remove(previous.email(), previous.id());
+        }
+    }
+
+    // Удаляется только пользователь без заявок в обе стороны
+    private void remove(int id) {
+        Row row = users.remove(id);
+        if (row != null) {
+            friends.remove(id);
+            incoming.remove(id);
+            releaseKeys(row, null);
+        }
+    }
+
+    // Повтор журнала при старте, до приёма запросов: блокировки и проверки не нужны
+    private void apply(Change change) {
+        switch (change.kind()) {
+            case USER_PUT -> {
+                User user = change.user();
+                Row row = new Row(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+                Row previous = users.put(row.id(), row);
+                if (previous != null) {
+                    releaseKeys(previous, row);
+                }
+                byLogin.put(row.login(), row.id());
+                byEmail.put(row.email(), row.id());
+                RoaringBitmap requests = new RoaringBitmap();
+                user.getFriends().forEach(requests::add);
+                RoaringBitmap replaced = friends.put(row.id(), requests);
+                if (replaced != null) {
+                    replaced.forEach((int friendId) -> incomingOf(friendId).remove(row.id()));
+                }
+                requests.forEach((int friendId) -> incomingOf(friendId).add(row.id()));
+                incomingOf(row.id());
+                sequence.accumulateAndGet(row.id(), Math::max);
+            }
+            case USER_DELETE -> remove(change.id());
+            case FRIEND_ADD -> {
+                friends.get(change.id()).add(change.otherId());
+                incomingOf(change.otherId()).add(change.id());
+            }
+            case FRIEND_DELETE -> {
+                friends.get(change.id()).remove(change.otherId());
+                incomingOf(change.otherId()).remove(change.id());
+            }
+            default -> throw new IllegalStateException("Чужая запись в журнале пользователей: " + change.kind());
+        }
+    }
+
+    // В снимке пользователь может встретиться раньше тех, кто отправил ему заявку
+    private RoaringBitmap incomingOf(int userId) {
+        return incoming.computeIfAbsent(userId, id -> new RoaringBitmap());
+    }
+
+    // Снимок: каждый пользователь одной записью вместе с заявками в друзья
+    private Stream<Change> state() {
+        return users.values().stream().map(row -> Change.putUser(toUser(row)));
+    }
+
+    private RoaringBitmap requestsOf(int userId) {
+        return locks.read(userId, () -> {
+            RoaringBitmap requests = friends.get(userId);
+            return requests == null ? new RoaringBitmap() : requests.clone();
+        });
+    }
+
+    private List<User> getUsers(RoaringBitmap ids) {
+        List<User> result = new ArrayList<>(ids.getCardinality());
+        ids.forEach((int id) -> {
+            Row row = users.get(id);
+            if (row != null) {
+                result.add(toUserWithoutFriends(row));
+            }
+        });
+        return result;
+    }
+
+    private List<User> toUsers(Collection<Row> rows) {
+        return rows.stream().map(this::toUser).collect(Collectors.toList());
+    }
+
+    private User toUser(Row row) {
+        User user = toUserWithoutFriends(row);
+        requestsOf(row.id()).forEach((int friendId) -> user.getFriends().add(friendId));
+        return user;
+    }
+
+    private User toUserWithoutFriends(Row row) {
+        return new User(row.id(), row.email(), row.login(), row.name(), row.birthday(), new ArrayList<>());
+    }
+
+    private static ObjectNotFoundException notFound(int id) {
+        return new ObjectNotFoundException("Пользователь с id: '" + id + "' не зарегистрирован!");
+    }
+
+    private record Row(int id, String email, String login, String name, LocalDate birthday) {
+    }
+}
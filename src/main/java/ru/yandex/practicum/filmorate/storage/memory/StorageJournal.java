@@ -0,0 +1,244 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Сохранение хранилища в памяти на диск: снимок состояния и журнал изменений, который только дописывается.
+ * При старте читается снимок, затем журнал поверх него. Когда в журнале набирается snapshotEvery записей,
+ * состояние целиком пишется в новый снимок, а журнал начинается заново.
+ * Изменения идут под общей блокировкой на чтение, снимок — под блокировкой на запись, поэтому в снимок
+ * не попадает половина операции. Каждая запись задаёт итоговое состояние ключа (фильм целиком, наличие лайка),
+ * так что повтор журнала поверх снимка, который уже его учёл, ничего не меняет: падение между записью снимка
+ * и обнулением журнала безопасно.
+ * Строка сбрасывается в ОС до возврата из операции: запись переживает падение процесса, но не отключение питания.
+ * Без каталога журнал выключен и операции выполняются как есть.
+ */
+@Slf4j
+final class StorageJournal implements Closeable {
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final ObjectMapper objectMapper;
+    private final int snapshotEvery;
+    private final Supplier<Stream<Change>> state;
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+    private final AtomicInteger appended = new AtomicInteger();
+    private Writer writer;
+
+    private StorageJournal(Path snapshotFile, Path logFile, ObjectMapper objectMapper, int snapshotEvery,
+                           Supplier<Stream<Change>> state) {
+        this.snapshotFile = snapshotFile;
+        this.logFile = logFile;
+        this.objectMapper = objectMapper;
+        this.snapshotEvery = snapshotEvery;
+        this.state = state;
+    }
+
+    /**
+     * @param state все записи, из которых состоит снимок текущего состояния
+     */
+    static StorageJournal open(String directory, String name, ObjectMapper objectMapper, int snapshotEvery,
+                               Supplier<Stream<Change>> state) {
+        if (directory == null || directory.isBlank()) {
+            return new StorageJournal(null, null, objectMapper, snapshotEvery, state);
+        }
+        Path dir = Path.of(directory);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new StorageJournal(dir.resolve(name + ".snapshot"), dir.resolve(name + ".log"),
+                objectMapper, snapshotEvery, state);
+    }
+
+    boolean isEnabled() {
+        return snapshotFile != null;
+    }
+
+    /**
+     * Прогоняет снимок и журнал через apply, после чего пишет свежий снимок и открывает пустой журнал.
+     * Недописанная последняя строка журнала (процесс упал во время записи) отбрасывается.
+     */
+    void replay(Consumer<Change> apply) {
+        if (!isEnabled()) {
+            return;
+        }
+        int fromSnapshot = read(snapshotFile, apply, false);
+        int fromLog = read(logFile, apply, true);
+        log.info("Восстановлено из {}: записей снимка {}, записей журнала {}", snapshotFile.getFileName(),
+                fromSnapshot, fromLog);
+        compact(true);
+    }
+
+    /**
+     * Выполняет изменение так, чтобы снимок не застал его наполовину. Записи в журнал делаются
+     * внутри mutation через {@link #append(Change)}.
+     */
+    <T> T write(Supplier<T> mutation) {
+        if (!isEnabled()) {
+            return mutation.get();
+        }
+        T result;
+        Lock lock = gate.readLock();
+        lock.lock();
+        try {
+            result = mutation.get();
+        } finally {
+            lock.unlock();
+        }
+        if (appended.get() >= snapshotEvery) {
+            compact(false);
+        }
+        return result;
+    }
+
+    void append(Change change) {
+        if (!isEnabled()) {
+            return;
+        }
+        String line = toJson(change);
+        synchronized (this) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        appended.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void compact(boolean force) {
+        Lock lock = gate.writeLock();
+        lock.lock();
+        try {
+            if (!force && appended.get() < snapshotEvery) {
+                // Снимок уже сделал другой поток
+                return;
+            }
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            int written;
+            try (BufferedWriter out = Files.newBufferedWriter(tmp);
+                 Stream<Change> changes = state.get()) {
+                written = writeAll(out, changes);
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                close();
+                writer = Files.newBufferedWriter(logFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            }
+            appended.set(0);
+            log.debug("Снимок {} записан, записей: {}", snapshotFile.getFileName(), written);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int writeAll(BufferedWriter out, Stream<Change> changes) throws IOException {
+        int written = 0;
+        for (Change change : (Iterable<Change>) changes::iterator) {
+            out.write(toJson(change));
+            out.newLine();
+            written++;
+        }
+        return written;
+    }
+
+    private int read(Path file, Consumer<Change> apply, boolean tolerateTail) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Change change;
+                try {
+                    change = objectMapper.readValue(line, Change.class);
+                } catch (JsonProcessingException e) {
+                    if (!tolerateTail) {
+                        throw new IllegalStateException("Повреждён снимок " + file + ", строка " + (count + 1), e);
+                    }
+                    log.warn("Журнал {} обрывается на строке {}, остаток отброшен", file, count + 1);
+                    break;
+                }
+                apply.accept(change);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    private String toJson(Change change) {
+        try {
+            return objectMapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    enum Kind {
+        FILM_PUT, FILM_DELETE, LIKE_ADD, LIKE_DELETE,
+        USER_PUT, USER_DELETE, FRIEND_ADD, FRIEND_DELETE
+    }
+
+    /**
+     * Одна запись журнала. Для *_PUT заполнен объект целиком (вместе с лайками или заявками в друзья),
+     * для остальных — id и, для связей, otherId.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Change(Kind kind, Film film, User user, Integer id, Integer otherId) {
+        static Change putFilm(Film film) {
+            return new Change(Kind.FILM_PUT, film, null, null, null);
+        }
+
+        static Change putUser(User user) {
+            return new Change(Kind.USER_PUT, null, user, null, null);
+        }
+
+        static Change of(Kind kind, int id) {
+            return new Change(kind, null, null, id, null);
+        }
+
+        static Change of(Kind kind, int id, int otherId) {
+            return new Change(kind, null, null, id, otherId);
+        }
+    }
+}
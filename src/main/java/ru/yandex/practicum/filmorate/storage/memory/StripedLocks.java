@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Фиксированный набор блокировок, между которыми распределяются id. Операции над разными
+ * фильмами или пользователями почти всегда попадают в разные полосы и не ждут друг друга,
+ * а памяти уходит столько же, сколько на одну блокировку на полосу, а не на объект.
+ */
+final class StripedLocks {
+    private final ReentrantReadWriteLock[] locks;
+    private final int mask;
+
+    StripedLocks(int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Число полос должно быть степенью двойки: " + stripes);
+        }
+        locks = new ReentrantReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        mask = stripes - 1;
+    }
+
+    <T> T read(int id, Supplier<T> action) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    <T> T write(int id, Supplier<T> action) {
+        Lock lock = stripe(id).writeLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Полосы двух id захватываются по возрастанию номера, чтобы встречные операции не ждали друг друга по кругу
+    <T> T write(int firstId, int secondId, Supplier<T> action) {
+        int first = index(firstId);
+        int second = index(secondId);
+        if (first == second) {
+            return write(firstId, action);
+        }
+        Lock outer = locks[Math.min(first, second)].writeLock();
+        Lock inner = locks[Math.max(first, second)].writeLock();
+        outer.lock();
+        try {
+            inner.lock();
+            try {
+                return action.get();
+            } finally {
+                inner.unlock();
+            }
+        } finally {
+            outer.unlock();
+        }
+    }
+
+    // Полосы всех id на чтение, тоже по возрастанию номера
+    <T> T read(Collection<Integer> ids, Supplier<T> action) {
+        int[] stripes = ids.stream().mapToInt(this::index).distinct().sorted().toArray();
+        for (int stripe : stripes) {
+            locks[stripe].readLock().lock();
+        }
+        try {
+            return action.get();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                locks[stripes[i]].readLock().unlock();
+            }
+        }
+    }
+
+    private ReentrantReadWriteLock stripe(int id) {
+        return locks[index(id)];
+    }
+
+    // id выдаются подряд, поэтому младшие биты и так распределяют их по полосам равномерно
+    private int index(int id) {
+        return id & mask;
+    }
+}
@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Триггер H2 для {@link H2ReplicaSync}: пишет образ изменённой строки в REPLICATION_LOG в той же транзакции.
+ * Вставка даёт новый образ, удаление — старый с пометкой DELETED, изменение — оба.
+ * Пока синхронизация в этом процессе не запущена, триггер ничего не пишет: оставшиеся в файле базы
+ * триггеры не копят журнал, который некому забрать.
+ */
+public class ChangeLogTrigger implements Trigger {
+    static volatile boolean active;
+
+    private String tableName;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+                     int type) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (!active) {
+            return;
+        }
+        String sqlQuery = "INSERT INTO " + H2ReplicaSync.LOG_TABLE + " (TABLE_NAME, DELETED, ROW_DATA) VALUES (?, ?, ?)";
+        try (PreparedStatement prepareStatement = conn.prepareStatement(sqlQuery)) {
+            if (oldRow != null) {
+                log(prepareStatement, true, oldRow);
+            }
+            if (newRow != null) {
+                log(prepareStatement, false, newRow);
+            }
+            prepareStatement.executeBatch();
+        }
+    }
+
+    private void log(PreparedStatement prepareStatement, boolean deleted, Object[] row) throws SQLException {
+        prepareStatement.setString(1, tableName);
+        prepareStatement.setBoolean(2, deleted);
+        prepareStatement.setBytes(3, RowImage.encode(row));
+        prepareStatement.addBatch();
+    }
+}
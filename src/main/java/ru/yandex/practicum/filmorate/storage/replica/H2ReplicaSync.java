@@ -0,0 +1,272 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реплика на второй базе H2 для разработки и тестов на одной машине: своей репликации у H2 нет.
+ * Изменения строк в основной базе ловят триггеры {@link ChangeLogTrigger} и пишут образы строк ({@link RowImage})
+ * в REPLICATION_LOG в той же транзакции, поэтому откаченные изменения в журнал не попадают.
+ * Фоновый поток раз в interval переносит журнал на реплику (удаление и MERGE по первичному ключу)
+ * и удаляет перенесённое; между переносами реплика отстаёт, как настоящая.
+ * Журнал читается по порядку записи, а не фиксации: транзакция с меньшим номером может появиться
+ * в журнале позже. Изменения одной строки при этом не переставляются — вторая запись ждёт блокировку строки
+ * до фиксации первой, — а образы строк можно применять повторно, так что реплика сходится.
+ * При старте реплика получает схему теми же миграциями Flyway и полную копию таблиц, журнал прошлых
+ * запусков отбрасывается. Внешние ключи на реплике не проверяются: она повторяет уже проверенные изменения,
+ * а копия таблиц идёт не в порядке ссылок.
+ */
+@Slf4j
+public class H2ReplicaSync implements MeterBinder, Closeable {
+    static final String LOG_TABLE = "REPLICATION_LOG";
+    private static final int BATCH_SIZE = 1_000;
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+    private final Duration interval;
+    private final Map<String, Table> tables = new HashMap<>();
+    private final LongAdder applied = new LongAdder();
+    private Connection primaryConnection;
+    private Connection replicaConnection;
+    private volatile boolean running;
+    private Thread worker;
+
+    public H2ReplicaSync(HikariDataSource primary, HikariDataSource replica, Duration interval) {
+        this.primary = primary;
+        this.replica = replica;
+        this.interval = interval;
+    }
+
+    /**
+     * Ставит триггеры, создаёт схему реплики, копирует в неё таблицы и запускает фоновый перенос.
+     */
+    public void start(Flyway flyway) throws SQLException {
+        Flyway.configure()
+                .configuration(flyway.getConfiguration())
+                .dataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword())
+                .load()
+                .migrate();
+        primaryConnection = DriverManager.getConnection(primary.getJdbcUrl(), primary.getUsername(),
+                primary.getPassword());
+        replicaConnection = DriverManager.getConnection(replica.getJdbcUrl(), replica.getUsername(),
+                replica.getPassword());
+        try (Statement statement = replicaConnection.createStatement()) {
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        }
+        replicaConnection.setAutoCommit(false);
+
+        try (Statement statement = primaryConnection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + LOG_TABLE + " (" +
+                    "SEQ BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "TABLE_NAME VARCHAR(128) NOT NULL, " +
+                    "DELETED BOOLEAN NOT NULL, " +
+                    "ROW_DATA VARBINARY NOT NULL)");
+            for (String name : tableNames()) {
+                tables.put(name, describe(name));
+                statement.execute("CREATE TRIGGER IF NOT EXISTS \"REPLICATE_" + name + "\" " +
+                        "AFTER INSERT, UPDATE, DELETE ON \"" + name + "\" FOR EACH ROW " +
+                        "CALL '" + ChangeLogTrigger.class.getName() + "'");
+            }
+            statement.execute("DELETE FROM " + LOG_TABLE);
+        }
+        // С этого момента всё, что меняется во время копирования, попадёт и в журнал
+        ChangeLogTrigger.active = true;
+        for (Table table : tables.values()) {
+            copy(table);
+        }
+        log.info("Реплика {} синхронизирована, таблиц: {}", replica.getJdbcUrl(), tables.size());
+
+        running = true;
+        worker = new Thread(this::runWorker, "replica-sync");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Переносит на реплику всё, что есть в журнале на момент вызова.
+     *
+     * @return число перенесённых изменений
+     */
+    public synchronized int sync() throws SQLException {
+        int total = 0;
+        int batch;
+        do {
+            batch = applyBatch();
+            total += batch;
+        } while (batch == BATCH_SIZE);
+        return total;
+    }
+
+    @Override
+    public void close() {
+        ChangeLogTrigger.active = false;
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+        synchronized (this) {
+            try (Statement statement = primaryConnection.createStatement()) {
+                for (String name : tables.keySet()) {
+                    statement.execute("DROP TRIGGER IF EXISTS \"REPLICATE_" + name + "\"");
+                }
+                statement.execute("DROP TABLE IF EXISTS " + LOG_TABLE);
+            } catch (SQLException e) {
+                log.warn("Триггеры репликации не удалось удалить: {}", e.getMessage());
+            }
+            closeQuietly(primaryConnection);
+            closeQuietly(replicaConnection);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("filmorate.datasource.replica.sync.applied", applied, LongAdder::sum)
+                .description("Изменений строк, перенесённых на локальную реплику")
+                .register(registry);
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                Thread.sleep(interval.toMillis());
+                sync();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SQLException e) {
+                log.warn("Перенос журнала на реплику не удался, повтор через {}: {}", interval, e.getMessage());
+            }
+        }
+    }
+
+    private int applyBatch() throws SQLException {
+        List<Long> sequences = new ArrayList<>();
+        try (PreparedStatement read = primaryConnection.prepareStatement("SELECT SEQ, TABLE_NAME, DELETED, ROW_DATA " +
+                "FROM " + LOG_TABLE + " ORDER BY SEQ LIMIT ?")) {
+            read.setInt(1, BATCH_SIZE);
+            try (ResultSet rs = read.executeQuery()) {
+                while (rs.next()) {
+                    sequences.add(rs.getLong("SEQ"));
+                    Table table = tables.get(rs.getString("TABLE_NAME"));
+                    Object[] row = RowImage.decode(rs.getBytes("ROW_DATA"));
+                    if (rs.getBoolean("DELETED")) {
+                        table.delete(replicaConnection, row);
+                    } else {
+                        table.merge(replicaConnection, row);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            replicaConnection.rollback();
+            throw e;
+        }
+        if (sequences.isEmpty()) {
+            return 0;
+        }
+        replicaConnection.commit();
+        // Если процесс упадёт здесь, те же образы перенесутся ещё раз, это безопасно
+        try (PreparedStatement delete = primaryConnection.prepareStatement("DELETE FROM " + LOG_TABLE +
+                " WHERE SEQ = ANY(?)")) {
+            delete.setObject(1, sequences.toArray(new Long[0]));
+            delete.executeUpdate();
+        }
+        applied.add(sequences.size());
+        return sequences.size();
+    }
+
+    private List<String> tableNames() throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (ResultSet rs = primaryConnection.getMetaData().getTables(null, "PUBLIC", null, new String[]{"BASE TABLE"})) {
+            while (rs.next()) {
+                String name = rs.getString("TABLE_NAME");
+                if (!name.equals(LOG_TABLE) && !name.startsWith("flyway_")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private Table describe(String name) throws SQLException {
+        DatabaseMetaData metaData = primaryConnection.getMetaData();
+        List<String> columns = new ArrayList<>();
+        try (ResultSet rs = metaData.getColumns(null, "PUBLIC", name, null)) {
+            while (rs.next()) {
+                columns.add(rs.getString("COLUMN_NAME"));
+            }
+        }
+        try (ResultSet rs = metaData.getPrimaryKeys(null, "PUBLIC", name)) {
+            if (!rs.next()) {
+                throw new SQLException("У таблицы " + name + " нет первичного ключа, реплицировать её нельзя");
+            }
+            return new Table(name, columns, columns.indexOf(rs.getString("COLUMN_NAME")));
+        }
+    }
+
+    private void copy(Table table) throws SQLException {
+        try (Statement statement = replicaConnection.createStatement()) {
+            statement.execute("DELETE FROM \"" + table.name() + "\"");
+        }
+        try (Statement select = primaryConnection.createStatement();
+             ResultSet rs = select.executeQuery("SELECT * FROM \"" + table.name() + "\"")) {
+            while (rs.next()) {
+                Object[] row = new Object[table.columns().size()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                table.merge(replicaConnection, row);
+            }
+        }
+        replicaConnection.commit();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            log.warn("Соединение синхронизации реплики не закрылось: {}", e.getMessage());
+        }
+    }
+
+    private record Table(String name, List<String> columns, int keyIndex) {
+        void merge(Connection connection, Object[] row) throws SQLException {
+            String sqlQuery = "MERGE INTO \"" + name + "\" (\"" + String.join("\", \"", columns) + "\") " +
+                    "KEY (\"" + columns.get(keyIndex) + "\") VALUES (" + "?, ".repeat(columns.size() - 1) + "?)";
+            try (PreparedStatement prepareStatement = connection.prepareStatement(sqlQuery)) {
+                for (int i = 0; i < row.length; i++) {
+                    prepareStatement.setObject(i + 1, row[i]);
+                }
+                prepareStatement.executeUpdate();
+            }
+        }
+
+        void delete(Connection connection, Object[] row) throws SQLException {
+            String sqlQuery = "DELETE FROM \"" + name + "\" WHERE \"" + columns.get(keyIndex) + "\" = ?";
+            try (PreparedStatement prepareStatement = connection.prepareStatement(sqlQuery)) {
+                prepareStatement.setObject(1, row[keyIndex]);
+                prepareStatement.executeUpdate();
+            }
+        }
+    }
+}
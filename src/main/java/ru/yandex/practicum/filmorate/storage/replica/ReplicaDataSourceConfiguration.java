@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.flywaydb.core.Flyway;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Разделение чтения и записи: DataSource приложения выдаёт соединения основной базы или реплики
+ * по решению {@link ReplicaRouting}. Основной пул настраивается как обычно (spring.datasource.*),
+ * пул реплики — filmorate.datasource.replica.* и filmorate.datasource.replica.hikari.*;
+ * логин и пароль реплики по умолчанию те же. Всё, что не помечено {@link ReplicaRead}, включая миграции,
+ * транзакции и проверки уникальности, идёт в основную базу.
+ * filmorate.datasource.replica.local-sync.enabled=true держит реплику на H2 в актуальном состоянии
+ * через {@link H2ReplicaSync}; с настоящей репликой СУБД он не нужен.
+ */
+@Configuration
+@ConditionalOnExpression("!'${filmorate.datasource.replica.url:}'.isBlank()")
+public class ReplicaDataSourceConfiguration {
+
+    @Bean
+    public ReplicaPools replicaPools(DataSourceProperties properties, Environment environment,
+                                     @Value("${filmorate.datasource.replica.url}") String replicaUrl) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("filmorate-replica");
+        replica.setDriverClassName(primary.getDriverClassName());
+        replica.setJdbcUrl(replicaUrl);
+        replica.setUsername(binder.bind("filmorate.datasource.replica.username", String.class)
+                .orElse(primary.getUsername()));
+        replica.setPassword(binder.bind("filmorate.datasource.replica.password", String.class)
+                .orElse(primary.getPassword()));
+        replica.setReadOnly(true);
+        binder.bind("filmorate.datasource.replica.hikari", Bindable.ofInstance(replica));
+        return new ReplicaPools(primary, replica);
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicaPools pools, ReplicaRouting routing) {
+        RoutingDataSource dataSource = new RoutingDataSource(routing);
+        dataSource.setTargetDataSources(Map.of(
+                ReplicaRouting.Target.PRIMARY, pools.primary(),
+                ReplicaRouting.Target.REPLICA, pools.replica()));
+        dataSource.setDefaultTargetDataSource(pools.primary());
+        return dataSource;
+    }
+
+    // Статический: обработчик бинов создаётся раньше остальных, маршрутизация берётся при первом вызове
+    @Bean
+    public static ReplicaReadPostProcessor replicaReadPostProcessor(ObjectProvider<ReplicaRouting> routing) {
+        return new ReplicaReadPostProcessor(routing);
+    }
+
+    @Bean(destroyMethod = "close")
+    @DependsOnDatabaseInitialization
+    @ConditionalOnProperty("filmorate.datasource.replica.local-sync.enabled")
+    public H2ReplicaSync h2ReplicaSync(ReplicaPools pools, Flyway flyway,
+                                       @Value("${filmorate.datasource.replica.local-sync.interval:PT0.1S}")
+                                       Duration interval) throws SQLException {
+        H2ReplicaSync sync = new H2ReplicaSync(pools.primary(), pools.replica(), interval);
+        sync.start(flyway);
+        return sync;
+    }
+
+    private static final class RoutingDataSource extends AbstractRoutingDataSource {
+        private final ReplicaRouting routing;
+
+        RoutingDataSource(ReplicaRouting routing) {
+            this.routing = routing;
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return routing.current();
+        }
+    }
+
+    /**
+     * Оборачивает бины с методами {@link ReplicaRead}. Прокси создаётся подклассом, чтобы внедрение
+     * по конкретному классу (FilmDbStorage в кеширующее хранилище) продолжало работать.
+     */
+    static final class ReplicaReadPostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+        ReplicaReadPostProcessor(ObjectProvider<ReplicaRouting> routing) {
+            Map<Method, Optional<ReplicaRead>> annotations = new ConcurrentHashMap<>();
+            MethodInterceptor interceptor = invocation -> {
+                Optional<ReplicaRead> read = annotations.computeIfAbsent(invocation.getMethod(), method ->
+                        Optional.ofNullable(AnnotatedElementUtils.findMergedAnnotation(
+                                AopUtils.getMostSpecificMethod(method, invocation.getThis().getClass()),
+                                ReplicaRead.class)));
+                if (read.isEmpty()) {
+                    return invocation.proceed();
+                }
+                return routing.getObject().read(read.get(), invocation);
+            };
+            this.advisor = new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(ReplicaRead.class),
+                    interceptor);
+            setBeforeExistingAdvisors(true);
+            setProxyTargetClass(true);
+        }
+    }
+}
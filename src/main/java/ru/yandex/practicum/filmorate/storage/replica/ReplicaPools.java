@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.Closeable;
+
+/**
+ * Пулы соединений основной базы и реплики. Сами пулы не бины: DataSource приложения один — маршрутизатор
+ * над ними, иначе SQL-запросы считались бы дважды, а тестовая база не подменяла бы его.
+ * Метрики hikaricp.* обоих пулов различаются тегом pool.
+ */
+public record ReplicaPools(HikariDataSource primary, HikariDataSource replica) implements MeterBinder, Closeable {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (HikariDataSource pool : new HikariDataSource[]{primary, replica}) {
+            if (pool.getMetricsTrackerFactory() == null && pool.getMetricRegistry() == null) {
+                pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        replica.close();
+        primary.close();
+    }
+}
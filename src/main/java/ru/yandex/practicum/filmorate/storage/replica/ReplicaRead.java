@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Метод хранилища только читает, и, если настроена реплика, вне транзакции его запросы идут на неё.
+ * films и users — номера аргументов с id фильмов и пользователей: если эти записи, их лайки или друзья
+ * менялись за последние filmorate.datasource.replica.max-lag, чтение идёт в основную базу.
+ * anyWrite — для чтений списков и по индексам в памяти: порядок и состав выдачи берутся из индексов основной
+ * базы, а строки — из отстающей реплики, поэтому такие чтения идут в основную базу после любой записи
+ * фильма или пользователя в пределах max-lag.
+ * Вложенные вызовы читают оттуда же, откуда внешний.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+    int[] films() default {};
+
+    int[] users() default {};
+
+    boolean anyWrite() default false;
+}
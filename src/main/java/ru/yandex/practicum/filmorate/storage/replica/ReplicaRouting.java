@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.storage.TransactionCallbacks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Решает, откуда читает текущий поток: из основной базы или с реплики. Решение принимается на входе
+ * во внешний метод с {@link ReplicaRead} и действует до выхода из него; DataSource приложения
+ * выбирает по нему пул при выдаче соединения. Внутри транзакции чтение всегда идёт в основную базу:
+ * соединение транзакции уже получено.
+ * Защита от устаревших данных: после записи фильма или пользователя (включая лайки и друзей) его id
+ * помнится max-lag, и чтения с этим id в аргументах идут в основную базу, пока реплика не догнала запись.
+ * Чтения с {@link ReplicaRead#anyWrite()} в это же окно идут в основную базу после записи с любым id.
+ * Загрузка индексов в памяти идёт через {@link #onPrimary(Runnable)}: индекс строится один раз и дальше только
+ * получает изменения, поэтому снимок с отстающей реплики потерял бы записи до следующего перестроения.
+ * Без filmorate.datasource.replica.url всё это выключено, а отметки записей ничего не стоят.
+ */
+@Component
+public class ReplicaRouting implements MeterBinder {
+    public enum Target { PRIMARY, REPLICA }
+
+    private static final ThreadLocal<Target> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final Cache<Integer, Boolean> writtenFilms;
+    private final Cache<Integer, Boolean> writtenUsers;
+    private final long maxLagNanos;
+    private volatile long lastWriteNanos;
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder guardedReads = new LongAdder();
+
+    public ReplicaRouting(@Value("${filmorate.datasource.replica.url:}") String replicaUrl,
+                          @Value("${filmorate.datasource.replica.max-lag:PT1S}") Duration maxLag) {
+        this.enabled = !replicaUrl.isBlank();
+        this.writtenFilms = Caffeine.newBuilder().expireAfterWrite(maxLag).build();
+        this.writtenUsers = Caffeine.newBuilder().expireAfterWrite(maxLag).build();
+        this.maxLagNanos = maxLag.toNanos();
+        this.lastWriteNanos = System.nanoTime() - maxLagNanos;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Target current() {
+        return CURRENT.get() == Target.REPLICA ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    // Все чтения внутри action, в том числе вложенные вызовы с ReplicaRead, идут в основную базу
+    public static void onPrimary(Runnable action) {
+        Target previous = CURRENT.get();
+        CURRENT.set(Target.PRIMARY);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public void filmWritten(int filmId) {
+        if (enabled) {
+            mark(writtenFilms, filmId);
+        }
+    }
+
+    public void userWritten(int userId) {
+        if (enabled) {
+            mark(writtenUsers, userId);
+        }
+    }
+
+    // Окно отсчитывается от фиксации: до неё читатели и так не видят запись ни в одной из баз
+    private void mark(Cache<Integer, Boolean> written, int id) {
+        written.put(id, Boolean.TRUE);
+        lastWriteNanos = System.nanoTime();
+        TransactionCallbacks.afterCommit(() -> {
+            written.put(id, Boolean.TRUE);
+            lastWriteNanos = System.nanoTime();
+        });
+    }
+
+    Object read(ReplicaRead read, MethodInvocation invocation) throws Throwable {
+        if (!enabled || CURRENT.get() != null) {
+            return invocation.proceed();
+        }
+        Target target = Target.REPLICA;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            target = Target.PRIMARY;
+        } else if (read.anyWrite() && System.nanoTime() - lastWriteNanos < maxLagNanos
+                || recentlyWritten(writtenFilms, read.films(), invocation.getArguments())
+                || recentlyWritten(writtenUsers, read.users(), invocation.getArguments())) {
+            target = Target.PRIMARY;
+            guardedReads.increment();
+        } else {
+            replicaReads.increment();
+        }
+        CURRENT.set(target);
+        try {
+            return invocation.proceed();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    private static boolean recentlyWritten(Cache<Integer, Boolean> written, int[] positions, Object[] args) {
+        for (int position : positions) {
+            if (args[position] instanceof Number id && written.getIfPresent(id.intValue()) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        FunctionCounter.builder("filmorate.datasource.replica.reads", replicaReads, LongAdder::sum)
+                .description("Чтений вне транзакции: на реплику или в основную базу из-за недавней записи")
+                .tag("target", "replica")
+                .register(registry);
+        FunctionCounter.builder("filmorate.datasource.replica.reads", guardedReads, LongAdder::sum)
+                .description("Чтений вне транзакции: на реплику или в основную базу из-за недавней записи")
+                .tag("target", "primary")
+                .register(registry);
+    }
+}
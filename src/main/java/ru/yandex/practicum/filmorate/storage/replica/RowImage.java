@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Образ строки в REPLICATION_LOG: число значений, затем каждое значение — байт типа и само значение.
+ * Поддержаны типы колонок схемы (целые, строки, логические, даты и метки времени); строка с колонкой
+ * другого типа не пишется в журнал, и транзакция откатывается — так новый тип не потеряется на реплике молча.
+ * Сериализация Java здесь не нужна: журнал читает только этот же код, а чтение произвольных классов
+ * из базы — лишний риск.
+ */
+final class RowImage {
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte STRING = 4;
+    private static final byte DATE = 5;
+    private static final byte TIMESTAMP = 6;
+
+    private RowImage() {
+    }
+
+    static byte[] encode(Object[] row) throws SQLException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * row.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(row.length);
+            for (Object value : row) {
+                write(out, value);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Строку не удалось записать в журнал репликации", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object[] decode(byte[] data) throws SQLException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            Object[] row = new Object[in.readUnsignedShort()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = read(in);
+            }
+            return row;
+        } catch (IOException e) {
+            throw new SQLException("Запись журнала репликации не читается", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException, SQLException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long longValue) {
+            out.writeByte(LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Boolean booleanValue) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else if (value instanceof String string) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        } else if (value instanceof LocalDate || value instanceof java.sql.Date) {
+            LocalDate date = value instanceof java.sql.Date sqlDate ? sqlDate.toLocalDate() : (LocalDate) value;
+            out.writeByte(DATE);
+            out.writeLong(date.toEpochDay());
+        } else if (value instanceof LocalDateTime || value instanceof java.sql.Timestamp) {
+            LocalDateTime time = value instanceof java.sql.Timestamp timestamp
+                    ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+            out.writeByte(TIMESTAMP);
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        } else {
+            throw new SQLException("Тип " + value.getClass().getName() + " не поддержан журналом репликации");
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case NULL -> null;
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case BOOLEAN -> in.readBoolean();
+            case STRING -> {
+                byte[] utf8 = new byte[in.readInt()];
+                in.readFully(utf8);
+                yield new String(utf8, StandardCharsets.UTF_8);
+            }
+            case DATE -> LocalDate.ofEpochDay(in.readLong());
+            case TIMESTAMP -> LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            default -> throw new IOException("Неизвестный тип значения " + type);
+        };
+    }
+}
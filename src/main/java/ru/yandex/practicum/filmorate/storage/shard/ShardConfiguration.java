@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Шарды профиля sharded: filmorate.storage.shards.count баз по адресу filmorate.storage.shards.url,
+ * в котором {shard} заменяется номером шарда. Логин и пароль по умолчанию те же, что у основной базы,
+ * пулы настраиваются через filmorate.storage.shards.hikari.* и называются filmorate-shard-N.
+ * Схема шардов — те же миграции Flyway, что у основной базы, включая справочники: на них ссылаются
+ * внешние ключи фильмов и жанров, — и поверх них миграции только для шардов из db/shard-migration.
+ * Профиль рассчитан на один экземпляр приложения: id новых записей и проверка уникальности логина
+ * и почты держатся в памяти процесса (Sharded*Storage), второй экземпляр над теми же шардами выдаст
+ * повторяющиеся id и пропустит дубликаты.
+ */
+@Slf4j
+@Configuration
+@Profile("sharded")
+public class ShardConfiguration {
+    private static final String SHARD_MIGRATIONS = "classpath:db/shard-migration";
+    private static final String SHARD_HISTORY_TABLE = "flyway_shard_schema_history";
+
+    @Bean(destroyMethod = "close")
+    public Shards shards(DataSourceProperties properties, Environment environment, Flyway flyway,
+                         SqlStatementCounter statementCounter,
+                         @Value("${filmorate.storage.shards.count}") int count,
+                         @Value("${filmorate.storage.shards.url}") String url) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Шардов должно быть не меньше одного: " + count);
+        }
+        Binder binder = Binder.get(environment);
+        String username = binder.bind("filmorate.storage.shards.username", String.class)
+                .orElse(properties.determineUsername());
+        String password = binder.bind("filmorate.storage.shards.password", String.class)
+                .orElse(properties.determinePassword());
+        List<HikariDataSource> pools = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("filmorate-shard-" + shard);
+            pool.setDriverClassName(properties.determineDriverClassName());
+            pool.setJdbcUrl(url.replace("{shard}", String.valueOf(shard)));
+            pool.setUsername(username);
+            pool.setPassword(password);
+            binder.bind("filmorate.storage.shards.hikari", Bindable.ofInstance(pool));
+            migrate(flyway, pool);
+            pools.add(pool);
+        }
+        log.info("Шардов: {}, {}", count, url);
+        return new Shards(pools, statementCounter);
+    }
+
+    private static void migrate(Flyway flyway, HikariDataSource pool) {
+        Flyway.configure()
+                .configuration(flyway.getConfiguration())
+                .dataSource(pool)
+                .load()
+                .migrate();
+        // Свои версии и своя таблица истории: общие миграции нумеруются независимо от шардовых
+        Flyway.configure()
+                .configuration(flyway.getConfiguration())
+                .dataSource(pool)
+                .locations(SHARD_MIGRATIONS)
+                .table(SHARD_HISTORY_TABLE)
+                .load()
+                .migrate();
+    }
+}
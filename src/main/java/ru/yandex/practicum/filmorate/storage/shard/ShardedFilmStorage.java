@@ -0,0 +1,394 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Фильмы, разложенные по шардам по id фильма: строка FILMS, её жанры и лайки лежат в одном шарде,
+ * поэтому запись фильма и лайка — транзакция одного шарда. Включается профилем sharded вместо FilmDbStorage
+ * и его кеша. Выборки всех фильмов, страницы и популярные фильмы собираются со всех шардов и сливаются
+ * в общем порядке; популярные — по N лучших из каждого шарда, из которых затем берутся N лучших.
+ * Рекомендации и поиск идут по индексам в памяти, как у FilmDbStorage; индексы загружаются из всех шардов
+ * при первом чтении (см. LazyLoad), поэтому время запуска не зависит от числа фильмов.
+ * Пользователь лайка проверяется в его шарде перед записью, как его проверял бы внешний ключ.
+ * id выдаёт этот процесс, поэтому профиль рассчитан на один экземпляр: писать в одни шарды из нескольких
+ * процессов нельзя.
+ * Запись фиксируется в своём шарде сразу: откат транзакции сервиса её не отменяет.
+ */
+@Slf4j
+@Component
+@Profile("sharded")
+@RequiredArgsConstructor
+public class ShardedFilmStorage implements FilmStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    // Тот же порядок, что у индекса популярности: больше лайков, затем меньший id
+    private static final Comparator<Ranked> MOST_LIKED = Comparator.comparingInt(Ranked::likes).reversed()
+            .thenComparingInt(Ranked::filmId);
+
+    private final Shards shards;
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final FilmSearchIndex searchIndex;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @PostConstruct
+    public void load() {
+        if (!likeIndex.isEnabled()) {
+            throw new IllegalStateException("Хранилище sharded строит рекомендации только по индексу лайков, " +
+                    "filmorate.recommendations.enabled=false не поддерживается");
+        }
+        popularityIndex.loadFrom(shards.all());
+        likeIndex.loadFrom(shards.all());
+        searchIndex.loadFrom(shards.all());
+        shards.checkPlacement("FILMS", "FILM_ID");
+        sequence.set(shards.maxId("FILMS", "FILM_ID"));
+        int films = shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FILMS",
+                Integer.class)).stream().mapToInt(Integer::intValue).sum();
+        log.info("Фильмов в шардах: {}, шардов: {}", films, shards.count());
+    }
+
+    @Override
+    public Optional<Film> create(Film film) {
+        requireUsers(film.getLikes());
+        int id = sequence.incrementAndGet();
+        film.setId(id);
+        Film created = shards.inTransaction(id, jdbcTemplate -> {
+            String sqlQuery = "INSERT INTO FILMS " +
+                    "(FILM_ID, FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATE, RATING_ID) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            jdbcTemplate.update(sqlQuery, id, film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), film.getRate(), film.getMpa().getId());
+            addGenres(jdbcTemplate, id, film.getGenres());
+            addLikes(jdbcTemplate, id, film.getLikes());
+            return read(jdbcTemplate, id);
+        });
+        return Optional.of(syncIndexes(created));
+    }
+
+    @Override
+    public Optional<Film> update(Film film) {
+        int id = film.getId();
+        requireUsers(film.getLikes());
+        Film updated = shards.inTransaction(id, jdbcTemplate -> {
+            String sqlQuery = "UPDATE FILMS " +
+                    "SET FILM_NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, RATE = ?, RATING_ID = ? " +
+                    "WHERE FILM_ID = ?";
+            int rows = jdbcTemplate.update(sqlQuery, film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), film.getRate(), film.getMpa().getId(), id);
+            if (rows == 0) {
+                throw notFound(id);
+            }
+            jdbcTemplate.update("DELETE FROM FILM_GENRE WHERE FILM_ID = ?", id);
+            addGenres(jdbcTemplate, id, film.getGenres());
+            addLikes(jdbcTemplate, id, film.getLikes());
+            return read(jdbcTemplate, id);
+        });
+        return Optional.of(syncIndexes(updated));
+    }
+
+    @Override
+    public Optional<Film> getById(int id) {
+        return Optional.of(read(shards.of(id), id));
+    }
+
+    @Override
+    public Collection<Film> findAll() {
+        return getFilms();
+    }
+
+    @Override
+    public List<Film> getFilms() {
+        return byId(shards.queryAll(jdbcTemplate -> fillGenresAndLikes(jdbcTemplate,
+                jdbcTemplate.query("SELECT * FROM FILMS", (rs, rowNum) -> makeFilm(rs)))));
+    }
+
+    // Каждый шард отдаёт до limit строк, жанры и лайки подгружаются только для вошедших в страницу
+    @Override
+    public List<Film> findPage(int afterId, int limit) {
+        List<Film> merged = byId(shards.queryAll(jdbcTemplate -> findShardPage(jdbcTemplate, afterId, limit)));
+        return fillGenresAndLikes(new ArrayList<>(merged.subList(0, Math.min(limit, merged.size()))));
+    }
+
+    @Override
+    public List<Film> findByNaturalKey(String name, LocalDate releaseDate, int duration, int mpaId) {
+        String sqlQuery = "SELECT * FROM FILMS " +
+                "WHERE FILM_NAME = ? AND RELEASE_DATE = ? AND DURATION = ? AND RATING_ID = ?";
+        return byId(shards.queryAll(jdbcTemplate -> fillGenresAndLikes(jdbcTemplate,
+                jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), name, releaseDate, duration, mpaId))));
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> action) {
+        shards.mergeById(STREAM_CHUNK_SIZE,
+                (jdbcTemplate, afterId) -> fillGenresAndLikes(jdbcTemplate,
+                        findShardPage(jdbcTemplate, afterId, STREAM_CHUNK_SIZE)),
+                Film::getId,
+                action);
+    }
+
+    @Override
+    public boolean deleteFilm(Film film) {
+        int id = film.getId();
+        // Жанры и лайки удаляются каскадом в том же шарде
+        shards.of(id).update("DELETE FROM FILMS WHERE FILM_ID = ?", id);
+        popularityIndex.removeFilm(id);
+        likeIndex.removeFilm(id);
+        searchIndex.remove(id);
+        return true;
+    }
+
+    @Override
+    public boolean addLike(int filmId, int userId) {
+        requireUsers(List.of(userId));
+        boolean added;
+        try {
+            added = shards.inTransaction(filmId, jdbcTemplate -> {
+                String sqlQuery = "MERGE INTO LIKES L " +
+                        "USING (VALUES (CAST(? AS INT), CAST(? AS INT))) S(USER_ID, FILM_ID) " +
+                        "ON L.USER_ID = S.USER_ID AND L.FILM_ID = S.FILM_ID " +
+                        "WHEN NOT MATCHED THEN INSERT (USER_ID, FILM_ID) VALUES (S.USER_ID, S.FILM_ID)";
+                boolean inserted = jdbcTemplate.update(sqlQuery, userId, filmId) > 0;
+                if (inserted) {
+                    jdbcTemplate.update("UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT + 1 WHERE FILM_ID = ?", filmId);
+                }
+                return inserted;
+            });
+        } catch (DuplicateKeyException e) {
+            // Тот же лайк параллельно вставил другой запрос
+            added = false;
+        }
+        if (added) {
+            popularityIndex.changeLikes(filmId, 1);
+            likeIndex.addLike(filmId, userId);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean deleteLike(int filmId, int userId) {
+        boolean deleted = shards.inTransaction(filmId, jdbcTemplate -> {
+            boolean removed = jdbcTemplate.update("DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID = ?",
+                    filmId, userId) > 0;
+            if (removed) {
+                jdbcTemplate.update("UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT - 1 WHERE FILM_ID = ?", filmId);
+            }
+            return removed;
+        });
+        if (deleted) {
+            popularityIndex.changeLikes(filmId, -1);
+            likeIndex.removeLike(filmId, userId);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(Integer count) {
+        return getPopularFilms(count, null, null, null);
+    }
+
+    // Каждый шард отдаёт count своих лучших по LIKE_COUNT, из их объединения берутся count лучших
+    @Override
+    public List<Film> getPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (genreId != null) {
+            conditions.add("EXISTS (SELECT 1 FROM FILM_GENRE " +
+                    "WHERE FILM_GENRE.FILM_ID = FILMS.FILM_ID AND FILM_GENRE.GENRE_ID = ?)");
+            args.add(genreId);
+        }
+        if (mpaId != null) {
+            conditions.add("RATING_ID = ?");
+            args.add(mpaId);
+        }
+        if (year != null) {
+            conditions.add("RELEASE_DATE >= ? AND RELEASE_DATE < ?");
+            args.add(LocalDate.of(year, 1, 1));
+            args.add(LocalDate.of(year + 1, 1, 1));
+        }
+        args.add(count);
+        String sqlQuery = "SELECT FILM_ID, LIKE_COUNT FROM FILMS " +
+                (conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ") +
+                "ORDER BY LIKE_COUNT DESC, FILM_ID " +
+                "LIMIT ?";
+        List<Integer> filmIds = shards.queryAll(jdbcTemplate -> jdbcTemplate.query(sqlQuery,
+                        (rs, rowNum) -> new Ranked(rs.getInt("FILM_ID"), rs.getInt("LIKE_COUNT")), args.toArray()))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(MOST_LIKED)
+                .limit(count)
+                .map(Ranked::filmId)
+                .toList();
+        return getFilmsInOrder(filmIds);
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int limit) {
+        return getFilmsInOrder(likeIndex.recommend(userId, limit));
+    }
+
+    @Override
+    public List<Film> search(String query, boolean byTitle, boolean byDescription, int limit) {
+        return getFilmsInOrder(searchIndex.search(query, byTitle, byDescription, limit));
+    }
+
+    private Film read(JdbcTemplate jdbcTemplate, int id) {
+        try {
+            Film film = jdbcTemplate.queryForObject("SELECT * FROM FILMS WHERE FILM_ID = ?",
+                    (rs, rowNum) -> makeFilm(rs), id);
+            fillGenresAndLikes(jdbcTemplate, List.of(film));
+            return film;
+        } catch (EmptyResultDataAccessException e) {
+            throw notFound(id);
+        }
+    }
+
+    private List<Film> findShardPage(JdbcTemplate jdbcTemplate, int afterId, int limit) {
+        String sqlQuery = "SELECT * FROM FILMS " +
+                "WHERE FILM_ID > ? " +
+                "ORDER BY FILM_ID " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeFilm(rs), afterId, limit);
+    }
+
+    private List<Film> getFilmsInOrder(List<Integer> filmIds) {
+        Map<Integer, Film> films = new HashMap<>();
+        shards.queryByIds(filmIds, (jdbcTemplate, ids) -> fillGenresAndLikes(jdbcTemplate,
+                        jdbcTemplate.query("SELECT * FROM FILMS WHERE FILM_ID = ANY(?)", (rs, rowNum) -> makeFilm(rs),
+                                (Object) ids.toArray(new Integer[0]))))
+                .forEach(shardFilms -> shardFilms.forEach(film -> films.put(film.getId(), film)));
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private void addGenres(JdbcTemplate jdbcTemplate, int filmId, Collection<Genre> genres) {
+        if (genres == null || genres.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "MERGE INTO FILM_GENRE (FILM_ID, GENRE_ID) KEY (FILM_ID, GENRE_ID) VALUES (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQuery, genres.stream()
+                .map(genre -> new Object[]{filmId, genre.getId()})
+                .collect(Collectors.toList()));
+    }
+
+    // Лайки из тела запроса добавляются к уже поставленным, счётчик пересчитывается одним UPDATE
+    private void addLikes(JdbcTemplate jdbcTemplate, int filmId, Collection<Integer> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "MERGE INTO LIKES (USER_ID, FILM_ID) KEY (USER_ID, FILM_ID) VALUES (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQuery, userIds.stream()
+                .map(userId -> new Object[]{userId, filmId})
+                .collect(Collectors.toList()));
+        String sqlCount = "UPDATE FILMS SET LIKE_COUNT = " +
+                "(SELECT COUNT(*) FROM LIKES WHERE LIKES.FILM_ID = FILMS.FILM_ID) " +
+                "WHERE FILM_ID = ?";
+        jdbcTemplate.update(sqlCount, filmId);
+    }
+
+    // Вместо fk_Like_UserID: пользователь лежит в своём шарде, а не в шарде фильма
+    private void requireUsers(Collection<Integer> userIds) {
+        if (userIds != null) {
+            shards.requireExisting("USERS", "USER_ID", new HashSet<>(userIds));
+        }
+    }
+
+    // Запись уже зафиксирована в шарде, поэтому индексы обновляются сразу, а не после транзакции приложения
+    private Film syncIndexes(Film film) {
+        List<Integer> genreIds = film.getGenres().stream().map(Genre::getId).toList();
+        popularityIndex.setFilm(film.getId(), film.getLikes().size(), film.getMpa().getId(),
+                film.getReleaseDate().getYear(), genreIds);
+        likeIndex.setFilmLikes(film.getId(), film.getLikes());
+        searchIndex.put(film.getId(), film.getName(), film.getDescription());
+        return film;
+    }
+
+    private Film makeFilm(ResultSet resultSet) throws SQLException {
+        int mpaId = resultSet.getInt("RATING_ID");
+        return new Film(
+                resultSet.getInt("FILM_ID"),
+                resultSet.getString("FILM_NAME"),
+                resultSet.getString("DESCRIPTION"),
+                Objects.requireNonNull(resultSet.getDate("RELEASE_DATE")).toLocalDate(),
+                resultSet.getInt("DURATION"),
+                resultSet.getInt("RATE"),
+                mpaStorage.getMpaById(mpaId).orElseGet(() -> new Mpa(mpaId, null, null)),
+                new ArrayList<>(),
+                new ArrayList<>());
+    }
+
+    // Фильмы из разных шардов: жанры и лайки читаются в шарде каждого фильма, шарды — параллельно
+    private List<Film> fillGenresAndLikes(List<Film> films) {
+        Map<Integer, Film> byId = films.stream().collect(Collectors.toMap(Film::getId, film -> film));
+        shards.queryByIds(byId.keySet(), (jdbcTemplate, ids) ->
+                fillGenresAndLikes(jdbcTemplate, ids.stream().map(byId::get).toList()));
+        return films;
+    }
+
+    // Все фильмы из одного шарда: жанры и лайки одним запросом каждые
+    private List<Film> fillGenresAndLikes(JdbcTemplate jdbcTemplate, List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Object filmIds = films.stream().map(Film::getId).toArray(Integer[]::new);
+        Map<Integer, List<Genre>> genres = new HashMap<>();
+        String sqlGenres = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRE WHERE FILM_ID = ANY(?) ORDER BY FILM_ID, GENRE_ID";
+        jdbcTemplate.query(sqlGenres, (RowCallbackHandler) rs -> {
+            int genreId = rs.getInt("GENRE_ID");
+            genres.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>())
+                    .add(genreStorage.getGenreById(genreId).orElseGet(() -> new Genre(genreId, null)));
+        }, filmIds);
+        Map<Integer, List<Integer>> likes = new HashMap<>();
+        String sqlLikes = "SELECT FILM_ID, USER_ID FROM LIKES WHERE FILM_ID = ANY(?)";
+        jdbcTemplate.query(sqlLikes, (RowCallbackHandler) rs -> {
+            likes.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>()).add(rs.getInt("USER_ID"));
+        }, filmIds);
+        for (Film film : films) {
+            film.setGenres(genres.getOrDefault(film.getId(), new ArrayList<>()));
+            film.setLikes(likes.getOrDefault(film.getId(), new ArrayList<>()));
+        }
+        return films;
+    }
+
+    private static List<Film> byId(List<List<Film>> shardFilms) {
+        return shardFilms.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingInt(Film::getId))
+                .collect(Collectors.toList());
+    }
+
+    private static ObjectNotFoundException notFound(int id) {
+        return new ObjectNotFoundException(String.format("Фильма с id=%d нет в базе данных", id));
+    }
+
+    private record Ranked(int filmId, int likes) {
+    }
+}
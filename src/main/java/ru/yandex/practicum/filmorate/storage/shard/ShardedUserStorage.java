@@ -0,0 +1,300 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Пользователи, разложенные по шардам по id пользователя: строка USERS и исходящие заявки в друзья лежат
+ * в одном шарде. Включается профилем sharded вместо UserDbStorage и его кеша.
+ * Ограничения, которые в одной базе держат таблицы, между шардами держит хранилище: логин и почта
+ * проверяются во всех шардах под блокировкой этого процесса, адресат заявки в друзья должен существовать,
+ * а пользователя, которого добавили в друзья или который ставил лайки, удалить нельзя — сообщается теми же
+ * исключениями Spring, что и от базы.
+ * Заявка пишется в шард отправителя; взаимную дружбу отмечают обе записи, они меняются в двух шардах
+ * без общей транзакции. Друзья, общие друзья и рекомендации собираются из шардов тех, чьи заявки нужны.
+ * id и блокировку уникальности держит этот процесс, поэтому профиль рассчитан на один экземпляр:
+ * писать в одни шарды из нескольких процессов нельзя.
+ */
+@Slf4j
+@Component
+@Profile("sharded")
+public class ShardedUserStorage implements UserStorage {
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final Comparator<Map.Entry<Integer, Integer>> BEST_FIRST =
+            Map.Entry.<Integer, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final Shards shards;
+    private final int maxFanout;
+    private final AtomicInteger sequence = new AtomicInteger();
+    // Проверка логина и почты во всех шардах и запись пользователя не должны перемежаться с чужими
+    private final Lock uniqueKeys = new ReentrantLock();
+
+    public ShardedUserStorage(Shards shards,
+                              @Value("${filmorate.graph.suggestions.max-fanout:1000}") int maxFanout) {
+        this.shards = shards;
+        this.maxFanout = maxFanout;
+    }
+
+    @PostConstruct
+    public void load() {
+        shards.checkPlacement("USERS", "USER_ID");
+        sequence.set(shards.maxId("USERS", "USER_ID"));
+        int users = shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS",
+                Integer.class)).stream().mapToInt(Integer::intValue).sum();
+        log.info("Пользователей в шардах: {}, шардов: {}", users, shards.count());
+    }
+
+    @Override
+    public Optional<User> create(User user) {
+        List<Integer> requested = user.getFriends() == null ? List.of() : List.copyOf(user.getFriends());
+        requested.forEach(this::getUser);
+        int id;
+        uniqueKeys.lock();
+        try {
+            if (existsByLoginOrEmail(user.getLogin(), user.getEmail())) {
+                throw new DuplicateKeyException("Логин " + user.getLogin() + " или почта " + user.getEmail() +
+                        " уже заняты");
+            }
+            id = sequence.incrementAndGet();
+            String sqlQuery = "INSERT INTO USERS (USER_ID, EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+            shards.of(id).update(sqlQuery, id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        } finally {
+            uniqueKeys.unlock();
+        }
+        requested.forEach(friendId -> addFriend(id, friendId));
+        return getById(id);
+    }
+
+    @Override
+    public Optional<User> update(User user) {
+        int id = user.getId();
+        uniqueKeys.lock();
+        try {
+            String sqlExists = "SELECT EXISTS(SELECT 1 FROM USERS WHERE (LOGIN = ? OR EMAIL = ?) AND USER_ID <> ?)";
+            if (shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject(sqlExists, Boolean.class,
+                    user.getLogin(), user.getEmail(), id)).contains(Boolean.TRUE)) {
+                throw new DuplicateKeyException("Логин " + user.getLogin() + " или почта " + user.getEmail() +
+                        " уже заняты");
+            }
+            String sqlQuery = "UPDATE USERS SET EMAIL = ?, LOGIN = ?, USER_NAME = ?, BIRTHDAY = ? " +
+                    "WHERE USER_ID = ?";
+            shards.of(id).update(sqlQuery, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), id);
+        } finally {
+            uniqueKeys.unlock();
+        }
+        return getById(id);
+    }
+
+    @Override
+    public Optional<User> getById(int id) {
+        JdbcTemplate jdbcTemplate = shards.of(id);
+        try {
+            User user = jdbcTemplate.queryForObject("SELECT * FROM USERS WHERE USER_ID = ?",
+                    (rs, rowNum) -> makeUser(rs), id);
+            fillFriends(jdbcTemplate, List.of(user));
+            return Optional.of(user);
+        } catch (EmptyResultDataAccessException e) {
+            throw new ObjectNotFoundException("Пользователь с id: '" + id + "' не зарегистрирован!");
+        }
+    }
+
+    @Override
+    public Optional<User> deleteById(int id) {
+        return getById(id).map(user -> {
+            deleteUser(user);
+            return user;
+        });
+    }
+
+    // Исходящие заявки не дают удалить пользователя внешним ключом в его шарде, входящие и лайки проверяются здесь
+    @Override
+    public boolean deleteUser(User user) {
+        int id = user.getId();
+        String sqlReferenced = "SELECT EXISTS(SELECT 1 FROM FRIENDSHIP WHERE FRIEND_ID = ?) " +
+                "OR EXISTS(SELECT 1 FROM LIKES WHERE USER_ID = ?)";
+        if (shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject(sqlReferenced, Boolean.class, id, id))
+                .contains(Boolean.TRUE)) {
+            throw new DataIntegrityViolationException("На пользователя с id: " + id +
+                    " ссылаются заявки в друзья или лайки");
+        }
+        return shards.of(id).update("DELETE FROM USERS WHERE USER_ID = ?", id) > 0;
+    }
+
+    @Override
+    public Collection<User> findAll() {
+        return byId(shards.queryAll(jdbcTemplate -> fillFriends(jdbcTemplate,
+                jdbcTemplate.query("SELECT * FROM USERS", (rs, rowNum) -> makeUser(rs)))));
+    }
+
+    @Override
+    public List<User> findPage(int afterId, int limit) {
+        List<User> merged = byId(shards.queryAll(jdbcTemplate -> findShardPage(jdbcTemplate, afterId, limit)));
+        List<User> page = new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+        Map<Integer, User> users = page.stream().collect(Collectors.toMap(User::getId, user -> user));
+        shards.queryByIds(users.keySet(), (jdbcTemplate, ids) ->
+                fillFriends(jdbcTemplate, ids.stream().map(users::get).toList()));
+        return page;
+    }
+
+    @Override
+    public boolean existsByLoginOrEmail(String login, String email) {
+        String sqlQuery = "SELECT EXISTS(SELECT 1 FROM USERS WHERE LOGIN = ?) " +
+                "OR EXISTS(SELECT 1 FROM USERS WHERE EMAIL = ?)";
+        return shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject(sqlQuery, Boolean.class, login, email))
+                .contains(Boolean.TRUE);
+    }
+
+    @Override
+    public void streamAll(Consumer<User> action) {
+        shards.mergeById(STREAM_CHUNK_SIZE,
+                (jdbcTemplate, afterId) -> fillFriends(jdbcTemplate,
+                        findShardPage(jdbcTemplate, afterId, STREAM_CHUNK_SIZE)),
+                User::getId,
+                action);
+    }
+
+    // Каждая сторона сначала пишет свою заявку, потом ищет встречную: из двух встречных вызовов
+    // хотя бы второй увидит обе заявки и отметит дружбу взаимной
+    @Override
+    public boolean addFriend(Integer userId, Integer friendId) {
+        // Отправителя проверит fk_Friendship_UserID в его шарде, адресат лежит в своём
+        shards.requireExisting("USERS", "USER_ID", List.of(friendId));
+        String sqlSetFriend = "MERGE INTO FRIENDSHIP F " +
+                "USING (VALUES (CAST(? AS INT), CAST(? AS INT))) S(USER_ID, FRIEND_ID) " +
+                "ON F.USER_ID = S.USER_ID AND F.FRIEND_ID = S.FRIEND_ID " +
+                "WHEN NOT MATCHED THEN INSERT (USER_ID, FRIEND_ID, STATUS) VALUES (S.USER_ID, S.FRIEND_ID, FALSE)";
+        try {
+            shards.of(userId).update(sqlSetFriend, userId, friendId);
+        } catch (DuplicateKeyException e) {
+            // Ту же заявку параллельно вставил другой запрос
+        }
+        String sqlIncoming = "SELECT EXISTS(SELECT 1 FROM FRIENDSHIP WHERE USER_ID = ? AND FRIEND_ID = ?)";
+        if (!Boolean.TRUE.equals(shards.of(friendId).queryForObject(sqlIncoming, Boolean.class, friendId, userId))) {
+            return false;
+        }
+        String sqlSetStatus = "UPDATE FRIENDSHIP SET STATUS = TRUE WHERE USER_ID = ? AND FRIEND_ID = ?";
+        shards.of(friendId).update(sqlSetStatus, friendId, userId);
+        shards.of(userId).update(sqlSetStatus, userId, friendId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteFriend(Integer userId, Integer friendId) {
+        String sqlQuery = "DELETE FROM FRIENDSHIP WHERE USER_ID = ? AND FRIEND_ID = ?";
+        boolean deleted = shards.of(userId).update(sqlQuery, userId, friendId) > 0;
+        if (deleted) {
+            String sqlSetStatus = "UPDATE FRIENDSHIP SET STATUS = FALSE WHERE USER_ID = ? AND FRIEND_ID = ?";
+            shards.of(friendId).update(sqlSetStatus, friendId, userId);
+        }
+        return deleted;
+    }
+
+    @Override
+    public User getUser(Integer id) {
+        return getById(id).orElseThrow();
+    }
+
+    @Override
+    public List<User> getFriends(int userId) {
+        return getUsers(friendIds(userId));
+    }
+
+    @Override
+    public List<User> getCommonFriends(int userId, int otherId) {
+        List<Integer> common = new ArrayList<>(friendIds(userId));
+        common.retainAll(new HashSet<>(friendIds(otherId)));
+        return getUsers(common);
+    }
+
+    // Тот же порядок и бюджет, что у запроса UserDbStorage: первый шаг — max-fanout друзей с меньшими id
+    @Override
+    public List<User> getSuggestions(int userId, int limit) {
+        List<Integer> own = friendIds(userId);
+        Set<Integer> excluded = new HashSet<>(own);
+        excluded.add(userId);
+        Map<Integer, Integer> mutual = new HashMap<>();
+        String sqlQuery = "SELECT FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ANY(?)";
+        shards.queryByIds(own.subList(0, Math.min(maxFanout, own.size())), (jdbcTemplate, ids) ->
+                        jdbcTemplate.queryForList(sqlQuery, Integer.class, (Object) ids.toArray(new Integer[0])))
+                .forEach(candidates -> candidates.stream()
+                        .filter(candidate -> !excluded.contains(candidate))
+                        .forEach(candidate -> mutual.merge(candidate, 1, Integer::sum)));
+        List<Integer> ranked = mutual.entrySet().stream()
+                .sorted(BEST_FIRST)
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+        Map<Integer, User> users = getUsers(ranked).stream().collect(Collectors.toMap(User::getId, user -> user));
+        return ranked.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private List<Integer> friendIds(int userId) {
+        String sqlQuery = "SELECT FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ? ORDER BY FRIEND_ID";
+        return shards.of(userId).queryForList(sqlQuery, Integer.class, userId);
+    }
+
+    // Без списков друзей, как выборки друзей у UserDbStorage
+    private List<User> getUsers(Collection<Integer> ids) {
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID = ANY(?)";
+        return byId(shards.queryByIds(ids, (jdbcTemplate, shardIds) -> jdbcTemplate.query(sqlQuery,
+                (rs, rowNum) -> makeUser(rs), (Object) shardIds.toArray(new Integer[0]))));
+    }
+
+    private List<User> findShardPage(JdbcTemplate jdbcTemplate, int afterId, int limit) {
+        String sqlQuery = "SELECT * FROM USERS WHERE USER_ID > ? ORDER BY USER_ID LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> makeUser(rs), afterId, limit);
+    }
+
+    private User makeUser(ResultSet resultSet) throws SQLException {
+        return new User(
+                resultSet.getInt("USER_ID"),
+                resultSet.getString("EMAIL"),
+                resultSet.getString("LOGIN"),
+                resultSet.getString("USER_NAME"),
+                Objects.requireNonNull(resultSet.getDate("BIRTHDAY")).toLocalDate(),
+                new ArrayList<>());
+    }
+
+    // Все пользователи из одного шарда: их исходящие заявки лежат там же
+    private List<User> fillFriends(JdbcTemplate jdbcTemplate, List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sqlQuery = "SELECT USER_ID, FRIEND_ID FROM FRIENDSHIP WHERE USER_ID = ANY(?)";
+        Map<Integer, List<Integer>> friends = new HashMap<>();
+        jdbcTemplate.query(sqlQuery, rs -> {
+            friends.computeIfAbsent(rs.getInt("USER_ID"), id -> new ArrayList<>()).add(rs.getInt("FRIEND_ID"));
+        }, (Object) users.stream().map(User::getId).toArray(Integer[]::new));
+        for (User user : users) {
+            user.setFriends(friends.getOrDefault(user.getId(), new ArrayList<>()));
+        }
+        return users;
+    }
+
+    private static List<User> byId(List<List<User>> shardUsers) {
+        return shardUsers.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingInt(User::getId))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,276 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Базы, между которыми разложены фильмы и пользователи. Строка с id живёт в шарде id mod count,
+ * вместе с ней — всё, что к ней привязано (лайки и жанры фильма, исходящие заявки пользователя).
+ * Запросы ко всем шардам или к нескольким из них выполняются параллельно, в виртуальных потоках;
+ * SQL-запросы из этих потоков засчитываются потоку, который их разослал (SqlStatementCounter.propagate).
+ * Число шардов задаёт раскладку: после его изменения данные нужно переложить, иначе старт прервётся
+ * проверкой {@link #checkPlacement}.
+ */
+public class Shards implements MeterBinder, Closeable {
+    private final List<HikariDataSource> pools;
+    private final List<JdbcTemplate> templates = new ArrayList<>();
+    private final List<TransactionTemplate> transactions = new ArrayList<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder fanOuts = new LongAdder();
+    private final SqlStatementCounter statementCounter;
+
+    // Транзакции и запросы идут через пулы, обёрнутые statementCounter для подсчёта запросов
+    public Shards(List<HikariDataSource> pools, SqlStatementCounter statementCounter) {
+        this.pools = List.copyOf(pools);
+        this.statementCounter = statementCounter;
+        for (HikariDataSource pool : pools) {
+            DataSource dataSource = statementCounter.wrap(pool);
+            templates.add(new JdbcTemplate(dataSource));
+            transactions.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+    }
+
+    public int count() {
+        return templates.size();
+    }
+
+    public int indexOf(int id) {
+        return Math.floorMod(id, templates.size());
+    }
+
+    public JdbcTemplate of(int id) {
+        return templates.get(indexOf(id));
+    }
+
+    public JdbcTemplate at(int shard) {
+        return templates.get(shard);
+    }
+
+    public List<JdbcTemplate> all() {
+        return List.copyOf(templates);
+    }
+
+    // Запись в одном шарде атомарна; транзакция приложения на него не распространяется
+    public <T> T inTransaction(int id, Function<JdbcTemplate, T> action) {
+        JdbcTemplate jdbcTemplate = of(id);
+        return transactions.get(indexOf(id)).execute(status -> action.apply(jdbcTemplate));
+    }
+
+    /**
+     * Выполняет запрос во всех шардах.
+     *
+     * @return результаты по порядку номеров шардов
+     */
+    public <T> List<T> queryAll(Function<JdbcTemplate, T> query) {
+        List<Callable<T>> tasks = new ArrayList<>(templates.size());
+        for (JdbcTemplate jdbcTemplate : templates) {
+            tasks.add(() -> query.apply(jdbcTemplate));
+        }
+        return gather(tasks);
+    }
+
+    /**
+     * Раскладывает id по шардам и выполняет запрос только в тех, где они есть, передавая каждому его id.
+     */
+    public <T> List<T> queryByIds(Collection<Integer> ids, BiFunction<JdbcTemplate, List<Integer>, T> query) {
+        Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (int id : ids) {
+            byShard.computeIfAbsent(indexOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        List<Callable<T>> tasks = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, shardIds) -> tasks.add(() -> query.apply(templates.get(shard), shardIds)));
+        return gather(tasks);
+    }
+
+    /**
+     * Отдаёт строки всех шардов по возрастанию id. Каждый шард читается порциями по pageSize:
+     * page получает шард и id, после которого продолжить, следующая порция шарда читается,
+     * когда отдана предыдущая.
+     */
+    public <T> void mergeById(int pageSize, BiFunction<JdbcTemplate, Integer, List<T>> page, ToIntFunction<T> idOf,
+                              Consumer<T> action) {
+        PriorityQueue<Cursor<T>> cursors = new PriorityQueue<>(Comparator.comparingInt(Cursor::nextId));
+        for (JdbcTemplate jdbcTemplate : templates) {
+            Cursor<T> cursor = new Cursor<>(jdbcTemplate, pageSize, page, idOf);
+            if (cursor.fill()) {
+                cursors.add(cursor);
+            }
+        }
+        while (!cursors.isEmpty()) {
+            Cursor<T> cursor = cursors.poll();
+            action.accept(cursor.rows.poll());
+            if (cursor.fill()) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что каждая строка таблицы лежит в своём шарде.
+     *
+     * @throws IllegalStateException если раскладка не совпадает с текущим числом шардов
+     */
+    public void checkPlacement(String table, String idColumn) {
+        String sqlQuery = "SELECT COUNT(*) FROM " + table + " WHERE MOD(" + idColumn + ", ?) <> ?";
+        for (int shard = 0; shard < templates.size(); shard++) {
+            Integer misplaced = templates.get(shard).queryForObject(sqlQuery, Integer.class, templates.size(), shard);
+            if (misplaced != null && misplaced > 0) {
+                throw new IllegalStateException(String.format("В шарде %d таблицы %s чужих строк: %d. " +
+                        "Число шардов изменилось, данные нужно переложить", shard, table, misplaced));
+            }
+        }
+    }
+
+    /**
+     * Проверяет, что строки с этими id есть в своих шардах: внешний ключ на строку другого шарда база не проверит.
+     * Удаление, которое идёт одновременно с проверкой, она не останавливает.
+     *
+     * @throws DataIntegrityViolationException если какой-то строки нет, как при нарушении внешнего ключа
+     */
+    public void requireExisting(String table, String idColumn, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "SELECT " + idColumn + " FROM " + table + " WHERE " + idColumn + " = ANY(?)";
+        Set<Integer> found = new HashSet<>();
+        queryByIds(ids, (jdbcTemplate, shardIds) -> jdbcTemplate.queryForList(sqlQuery, Integer.class,
+                (Object) shardIds.toArray(new Integer[0]))).forEach(found::addAll);
+        for (int id : ids) {
+            if (!found.contains(id)) {
+                throw new DataIntegrityViolationException("В " + table + " нет строки с " + idColumn + " = " + id);
+            }
+        }
+    }
+
+    public int maxId(String table, String idColumn) {
+        String sqlQuery = "SELECT COALESCE(MAX(" + idColumn + "), 0) FROM " + table;
+        return queryAll(jdbcTemplate -> jdbcTemplate.queryForObject(sqlQuery, Integer.class)).stream()
+                .mapToInt(Integer::intValue)
+                .max()
+                .orElse(0);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (HikariDataSource pool : pools) {
+            if (pool.getMetricsTrackerFactory() == null && pool.getMetricRegistry() == null) {
+                pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            }
+        }
+        FunctionCounter.builder("filmorate.storage.shards.fan-outs", fanOuts, LongAdder::sum)
+                .description("Запросов, разосланных сразу в несколько шардов")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+        pools.forEach(HikariDataSource::close);
+    }
+
+    private <T> List<T> gather(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            results.add(call(tasks.get(0)));
+            return results;
+        }
+        fanOuts.increment();
+        List<Future<T>> futures = tasks.stream()
+                .map(task -> executor.submit(statementCounter.propagate(task)))
+                .toList();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запрос к шардам прерван", e);
+        } catch (ExecutionException e) {
+            // Ответ уже не собрать: остальные шарды не должны держать соединения пула
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private static final class Cursor<T> {
+        private final JdbcTemplate jdbcTemplate;
+        private final int pageSize;
+        private final BiFunction<JdbcTemplate, Integer, List<T>> page;
+        private final ToIntFunction<T> idOf;
+        private final Deque<T> rows = new ArrayDeque<>();
+        private int afterId;
+        private boolean exhausted;
+
+        Cursor(JdbcTemplate jdbcTemplate, int pageSize, BiFunction<JdbcTemplate, Integer, List<T>> page,
+               ToIntFunction<T> idOf) {
+            this.jdbcTemplate = jdbcTemplate;
+            this.pageSize = pageSize;
+            this.page = page;
+            this.idOf = idOf;
+        }
+
+        // true, если у шарда есть ещё строки
+        boolean fill() {
+            if (rows.isEmpty() && !exhausted) {
+                List<T> next = page.apply(jdbcTemplate, afterId);
+                exhausted = next.size() < pageSize;
+                if (!next.isEmpty()) {
+                    afterId = idOf.applyAsInt(next.get(next.size() - 1));
+                    rows.addAll(next);
+                }
+            }
+            return !rows.isEmpty();
+        }
+
+        int nextId() {
+            return idOf.applyAsInt(rows.getFirst());
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -63,6 +63,14 @@ CREATE TABLE IF NOT EXISTS RATING_MPA
     CONSTRAINT uc_RatingMPA_Name UNIQUE (MPA_NAME)
 );
 
+-- Вторичные индексы, набор v1. Создаются до внешних ключей, чтобы H2 использовал их для ограничений,
+-- а не заводил свои безымянные. Состав проверяется в QueryPlanTest.
+CREATE INDEX IF NOT EXISTS ix_Film_RatingID ON FILMS (RATING_ID);
+CREATE INDEX IF NOT EXISTS ix_Film_Release_Date ON FILMS (RELEASE_DATE);
+CREATE INDEX IF NOT EXISTS ix_Like_FilmID ON LIKES (FILM_ID);
+CREATE INDEX IF NOT EXISTS ix_Friendship_FriendID ON FRIENDSHIP (FRIEND_ID);
+CREATE INDEX IF NOT EXISTS ix_Film_Genre_FilmID ON FILM_GENRE (FILM_ID);
+
 ALTER TABLE FILMS
     ADD CONSTRAINT IF NOT EXISTS fk_Film_RatingID FOREIGN KEY (RATING_ID)
         REFERENCES RATING_MPA (RATING_ID) ON DELETE RESTRICT;
@@ -95,4 +103,25 @@ ALTER TABLE FILM_GENRE
         REFERENCES GENRES (GENRE_ID) ON DELETE RESTRICT;
 
 ALTER TABLE FILM_GENRE
-    ADD CONSTRAINT IF NOT EXISTS UC_Film_Genre_GenreID_FilmID UNIQUE (GENRE_ID, FILM_ID)
\ No newline at end of file
+    ADD CONSTRAINT IF NOT EXISTS UC_Film_Genre_GenreID_FilmID UNIQUE (GENRE_ID, FILM_ID);
+
+-- Логин уникален. В базе, созданной до этого ограничения, повторный логин остаётся у пользователя
+-- с меньшим id, остальным к логину дописывается _<id>, чтобы ограничение встало и приложение запустилось
+UPDATE USERS U
+SET LOGIN = LEFT(U.LOGIN, 54 - LENGTH(CAST(U.USER_ID AS VARCHAR))) || '_' || U.USER_ID
+WHERE EXISTS (SELECT 1 FROM USERS D WHERE D.LOGIN = U.LOGIN AND D.USER_ID < U.USER_ID);
+
+ALTER TABLE USERS
+    ADD CONSTRAINT IF NOT EXISTS uc_User_Login UNIQUE (LOGIN);
+
+CREATE INDEX IF NOT EXISTS ix_Film_Natural_Key ON FILMS (FILM_NAME, RELEASE_DATE, DURATION, RATING_ID);
+
+ALTER TABLE FILMS
+    ADD COLUMN IF NOT EXISTS LIKE_COUNT INT NOT NULL DEFAULT 0;
+
+DELETE FROM FRIENDSHIP F
+WHERE EXISTS (SELECT 1 FROM FRIENDSHIP D
+              WHERE D.USER_ID = F.USER_ID AND D.FRIEND_ID = F.FRIEND_ID AND D.FRIENDSHIP_ID < F.FRIENDSHIP_ID);
+
+ALTER TABLE FRIENDSHIP
+    ADD CONSTRAINT IF NOT EXISTS uc_Friendship_UserID_FriendID UNIQUE (USER_ID, FRIEND_ID);
@@ -0,0 +1,5 @@
+-- Счётчик лайков появился в V1 со значением 0. Один раз пересчитывается по LIKES, дальше его ведут
+-- сами операции с лайками, и при запуске индекс популярности только читает его
+UPDATE FILMS F
+SET LIKE_COUNT = (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID)
+WHERE LIKE_COUNT <> (SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID);
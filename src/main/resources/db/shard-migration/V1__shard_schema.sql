@@ -0,0 +1,8 @@
+-- Только для шардов, поверх общих миграций db/migration; история — в своей таблице flyway_shard_schema_history.
+-- Лайк и заявка в друзья ссылаются на пользователя, который может лежать в другом шарде:
+-- его существование проверяют ShardedFilmStorage и ShardedUserStorage
+ALTER TABLE LIKES DROP CONSTRAINT IF EXISTS fk_Like_UserID;
+ALTER TABLE FRIENDSHIP DROP CONSTRAINT IF EXISTS fk_Friendship_FriendID;
+
+-- Каждый шард отдаёт свою часть популярных фильмов без сортировки всей таблицы
+CREATE INDEX IF NOT EXISTS ix_Film_Like_Count ON FILMS (LIKE_COUNT DESC, FILM_ID);
@@ -0,0 +1,123 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.support.DataSeeder;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * В пуле два соединения, одно из них тест занимает сам: выгрузка, которая держит соединение, пока отдаёт
+ * записи, не даст выполнить ни одного запроса из обработчика записи.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ndjson-stream;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.connection-timeout=250"
+})
+@AutoConfigureMockMvc
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class NdjsonStreamTest {
+    final MockMvc mockMvc;
+    final ObjectMapper objectMapper;
+    final FilmStorage filmStorage;
+    final UserStorage userStorage;
+    final FilmService filmService;
+    final JdbcTemplate jdbcTemplate;
+    final DataSource dataSource;
+
+    @Test
+    public void filmsAreStreamedAsJsonLinesInIdOrderTest() throws Exception {
+        User user = TestData.createUser(userStorage);
+        Film film = TestData.film();
+        film.setGenres(TestData.genres(1));
+        film.setLikes(new ArrayList<>(List.of(user.getId())));
+        Film liked = TestData.createFilm(filmStorage, film);
+        TestData.createFilm(filmStorage);
+
+        List<JsonNode> lines = stream("/films");
+
+        assertTrue(lines.size() >= 2);
+        assertEquals(ids(lines).stream().sorted().toList(), ids(lines));
+        JsonNode line = lines.stream().filter(node -> node.get("id").asInt() == liked.getId()).findFirst().orElseThrow();
+        assertEquals(user.getId(), line.get("likes").get(0).asInt());
+        assertEquals(1, line.get("genres").get(0).get("id").asInt());
+    }
+
+    @Test
+    public void usersAreStreamedAsJsonLinesInIdOrderTest() throws Exception {
+        User user = TestData.createUser(userStorage);
+        User friend = TestData.createUser(userStorage);
+        userStorage.addFriend(user.getId(), friend.getId());
+
+        List<JsonNode> lines = stream("/users");
+
+        assertEquals(ids(lines).stream().sorted().toList(), ids(lines));
+        JsonNode line = lines.stream().filter(node -> node.get("id").asInt() == user.getId()).findFirst().orElseThrow();
+        assertEquals(friend.getId(), line.get("friends").get(0).asInt());
+    }
+
+    @Test
+    public void streamDoesNotHoldConnectionWhileWritingTest() throws Exception {
+        // Больше одной страницы выгрузки
+        DataSeeder.seed(jdbcTemplate, 0, 1200, 0, 0);
+        List<Integer> streamed = new ArrayList<>();
+
+        try (Connection busy = dataSource.getConnection()) {
+            filmService.streamAll(film -> {
+                jdbcTemplate.queryForObject("SELECT 1", Integer.class);
+                streamed.add(film.getId());
+            });
+        }
+
+        assertTrue(streamed.size() >= 1200);
+    }
+
+    private List<JsonNode> stream(String uri) throws Exception {
+        MvcResult started = mockMvc.perform(get(uri).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private static List<Integer> ids(List<JsonNode> lines) {
+        return lines.stream().map(node -> node.get("id").asInt()).toList();
+    }
+}
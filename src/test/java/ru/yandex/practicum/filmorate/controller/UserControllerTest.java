@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UserControllerTest {
+    final MockMvc mockMvc;
+    final ObjectMapper objectMapper;
+    final UserStorage userStorage;
+
+    @Test
+    public void createWithTakenLoginOrEmailReturnsConflictTest() throws Exception {
+        User existing = TestData.createUser(userStorage);
+
+        User sameLogin = TestData.user();
+        sameLogin.setLogin(existing.getLogin());
+        send(post("/users"), sameLogin)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.errorMessage").value("Пользователь с таким email или логином уже существует"));
+
+        User sameEmail = TestData.user();
+        sameEmail.setEmail(existing.getEmail());
+        send(post("/users"), sameEmail).andExpect(status().isConflict());
+    }
+
+    @Test
+    public void updateToTakenLoginOrEmailReturnsConflictWithoutValuesTest() throws Exception {
+        User existing = TestData.createUser(userStorage);
+        User other = TestData.createUser(userStorage);
+
+        other.setLogin(existing.getLogin());
+        send(put("/users"), other)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.errorMessage").value("Пользователь с таким логином уже существует"));
+
+        other.setLogin(TestData.user().getLogin());
+        other.setEmail(existing.getEmail());
+        send(put("/users"), other)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.errorMessage").value("Пользователь с таким email уже существует"))
+                .andExpect(content().string(not(containsString(existing.getEmail()))));
+    }
+
+    private ResultActions send(MockHttpServletRequestBuilder request, User user) throws Exception {
+        return mockMvc.perform(request.contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(user)));
+    }
+}
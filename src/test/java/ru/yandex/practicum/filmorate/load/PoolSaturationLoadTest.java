@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.load;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.support.DataSeeder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Точка насыщения пула соединений на смеси запросов: число клиентов растёт ступенями, на каждой
+ * снимаются пропускная способность, p99, среднее ожидание соединения и таймауты пула (hikaricp.*).
+ * Насыщение — первая ступень, после которой рост клиентов прибавляет меньше 5% пропускной способности:
+ * дальше запросы только стоят в очереди за соединением. Кеши фильмов и пользователей выключены,
+ * чтобы чтения доходили до базы.
+ * Не входит в обычную сборку, запуск: mvn test -Pload-test -Dtest=PoolSaturationLoadTest.
+ * Параметры: -Dload.steps, -Dload.pool-size, -Dload.duration, -Dload.warmup.
+ */
+@Tag("load")
+class PoolSaturationLoadTest {
+    private static final int USERS = 1_000;
+    private static final int FILMS = 500;
+    private static final int FRIENDS_PER_USER = 50;
+    private static final int LIKES_PER_USER = 20;
+
+    private static final int[] STEPS = Arrays.stream(System.getProperty("load.steps", "4,8,16,32,64,128,256")
+            .split(",")).mapToInt(Integer::parseInt).toArray();
+    private static final int POOL_SIZE = Integer.getInteger("load.pool-size", 10);
+    private static final Duration DURATION = Duration.parse(System.getProperty("load.duration", "PT10S"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("load.warmup", "PT3S"));
+
+    // Доли в смеси соответствуют числу повторов строки
+    private static final List<String> MIX = List.of(
+            "GET /films/%1$d", "GET /films/%1$d", "GET /films/%1$d", "GET /films/%1$d", "GET /films/%1$d",
+            "GET /users/%2$d/friends", "GET /users/%2$d/friends",
+            "GET /films/popular?count=10",
+            "GET /users/%2$d/friends/common/%3$d",
+            "PUT /films/%1$d/like/%2$d");
+
+    @Test
+    public void findPoolSaturationPointTest() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("pool size %d", POOL_SIZE));
+        report.add(String.format("%8s %10s %10s %10s %14s %10s %8s",
+                "clients", "req/s", "p50, ms", "p99, ms", "acquire, ms", "timeouts", "errors"));
+        try (ConfigurableApplicationContext context = start()) {
+            DataSeeder.seed(context.getBean(JdbcTemplate.class), USERS, FILMS, FRIENDS_PER_USER, LIKES_PER_USER);
+            context.getBean(FilmPopularityIndex.class).rebuild();
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            Timer acquire = registry.get("hikaricp.connections.acquire").timer();
+            Counter timeouts = registry.get("hikaricp.connections.timeout").counter();
+
+            run(port, STEPS[0], WARMUP);
+            double best = 0;
+            int saturation = -1;
+            for (int clients : STEPS) {
+                long acquireCount = acquire.count();
+                double acquireTime = acquire.totalTime(TimeUnit.MILLISECONDS);
+                double timeoutCount = timeouts.count();
+                Result result = run(port, clients, DURATION);
+                long acquired = acquire.count() - acquireCount;
+                double meanAcquire = acquired == 0 ? 0
+                        : (acquire.totalTime(TimeUnit.MILLISECONDS) - acquireTime) / acquired;
+                report.add(String.format("%8d %10.0f %10.2f %10.2f %14.3f %10.0f %8d",
+                        clients, result.throughput(), result.percentile(0.50), result.percentile(0.99),
+                        meanAcquire, timeouts.count() - timeoutCount, result.errors()));
+                if (saturation < 0 && best > 0 && result.throughput() < best * 1.05) {
+                    saturation = clients;
+                }
+                best = Math.max(best, result.throughput());
+            }
+            report.add(saturation < 0
+                    ? "saturation not reached, add steps"
+                    : String.format("saturation at %d clients, peak %.0f req/s", saturation, best));
+        }
+        Path out = Path.of("target", "load-test", "pool-saturation.txt");
+        Files.createDirectories(out.getParent());
+        Files.write(out, report);
+        assertTrue(report.size() > STEPS.length);
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(FilmorateApplication.class).run("--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load-pool;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                "--spring.datasource.hikari.minimum-idle=" + POOL_SIZE,
+                "--filmorate.cache.films.maximum-weight=0",
+                "--filmorate.cache.users.maximum-weight=0",
+                "--filmorate.logging.requests.mode=off");
+    }
+
+    private Result run(int port, int clientCount, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+        long started = System.nanoTime();
+        try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clientCount; c++) {
+                clients.submit(() -> {
+                    Random random = new Random();
+                    long[] own = new long[1 << 16];
+                    int size = 0;
+                    while (System.nanoTime() < deadline) {
+                        String[] request = String.format(MIX.get(random.nextInt(MIX.size())),
+                                random.nextInt(FILMS) + 1, random.nextInt(USERS) + 1, random.nextInt(USERS) + 1)
+                                .split(" ");
+                        URI uri = URI.create("http://localhost:" + port + request[1]);
+                        long begin = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri)
+                                            .method(request[0], HttpRequest.BodyPublishers.noBody()).build(),
+                                    HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (size == own.length) {
+                            own = Arrays.copyOf(own, size * 2);
+                        }
+                        own[size++] = System.nanoTime() - begin;
+                    }
+                    latencies.add(Arrays.copyOf(own, size));
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(all, elapsed, errors.get());
+    }
+
+    private record Result(long[] sortedNanos, long elapsedNanos, int errors) {
+        double throughput() {
+            return sortedNanos.length * 1e9 / elapsedNanos;
+        }
+
+        double percentile(double p) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.load;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.support.DataSeeder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение пропускной способности и p99 для платформенных и виртуальных потоков.
+ * Не входит в обычную сборку, запуск: mvn test -Pload-test.
+ * Параметры: -Dload.clients, -Dload.duration, -Dload.warmup.
+ */
+@Tag("load")
+class ThreadModeLoadTest {
+    private static final int USERS = 1_000;
+    private static final int FILMS = 500;
+    private static final int FRIENDS_PER_USER = 50;
+    private static final int LIKES_PER_USER = 20;
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 400);
+    private static final Duration DURATION = Duration.parse(System.getProperty("load.duration", "PT10S"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("load.warmup", "PT3S"));
+
+    private static final List<String> ENDPOINTS = List.of("/films", "/films/popular?count=10", "/users/%d/friends");
+
+    @Test
+    public void compareThreadModesTest() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-10s %-26s %10s %10s %10s %8s",
+                "mode", "endpoint", "req/s", "p50, ms", "p99, ms", "errors"));
+        for (String mode : List.of("platform", "virtual")) {
+            try (ConfigurableApplicationContext context = start(mode)) {
+                seed(context);
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                for (String endpoint : ENDPOINTS) {
+                    run(port, endpoint, WARMUP);
+                    Result result = run(port, endpoint, DURATION);
+                    report.add(String.format("%-10s %-26s %10.0f %10.2f %10.2f %8d",
+                            mode, endpoint, result.throughput(), result.percentile(0.50), result.percentile(0.99),
+                            result.errors()));
+                    assertEquals(0, result.errors(), mode + " " + endpoint);
+                }
+            }
+        }
+        Path out = Path.of("target", "load-test", "thread-modes.txt");
+        Files.createDirectories(out.getParent());
+        Files.write(out, report);
+    }
+
+    private ConfigurableApplicationContext start(String mode) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(FilmorateApplication.class);
+        if (mode.equals("virtual")) {
+            builder.profiles("virtual-threads");
+        }
+        return builder.run("--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                "--filmorate.logging.requests.mode=off");
+    }
+
+    private void seed(ConfigurableApplicationContext context) {
+        DataSeeder.seed(context.getBean(JdbcTemplate.class), USERS, FILMS, FRIENDS_PER_USER, LIKES_PER_USER);
+        context.getBean(FilmPopularityIndex.class).rebuild();
+    }
+
+    private Result run(int port, String endpoint, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+        long started = System.nanoTime();
+        try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.submit(() -> {
+                    Random random = new Random();
+                    long[] own = new long[1 << 16];
+                    int size = 0;
+                    while (System.nanoTime() < deadline) {
+                        URI uri = URI.create("http://localhost:" + port
+                                + String.format(endpoint, random.nextInt(USERS) + 1));
+                        long begin = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                                    HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (size == own.length) {
+                            own = Arrays.copyOf(own, size * 2);
+                        }
+                        own[size++] = System.nanoTime() - begin;
+                    }
+                    latencies.add(Arrays.copyOf(own, size));
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(all, elapsed, errors.get());
+    }
+
+    private record Result(long[] sortedNanos, long elapsedNanos, int errors) {
+        double throughput() {
+            return sortedNanos.length * 1e9 / elapsedNanos;
+        }
+
+        double percentile(double p) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+            return sortedNanos[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "filmorate.logging.requests.mode=truncated",
+        "filmorate.logging.requests.max-body-size=40"
+})
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@ExtendWith(OutputCaptureExtension.class)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class RequestLogTest {
+    private static final String DESCRIPTION = "x".repeat(150);
+
+    final MockMvc mockMvc;
+
+    @Test
+    public void exchangeIsLoggedAsOneLineWithTruncatedBodiesTest(CapturedOutput output) throws Exception {
+        String film = "{\"name\":\"logged\",\"description\":\"" + DESCRIPTION + "\",\"releaseDate\":\"2000-01-01\","
+                + "\"duration\":100,\"mpa\":{\"id\":1}}";
+        mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON).content(film))
+                .andExpect(status().isOk());
+
+        String line = awaitLine(output, l -> l.contains("POST /films 200"));
+
+        assertTrue(line.contains("request=["));
+        assertTrue(line.contains("{\"name\":\"logged\""));
+        assertFalse(line.contains(DESCRIPTION.substring(0, 60)));
+        assertTrue(line.contains("response=["));
+    }
+
+    @Test
+    public void utf8BodyIsCutAtCharacterBoundaryTest() {
+        byte[] body = "{\"name\":\"фильм\"}".getBytes(StandardCharsets.UTF_8);
+
+        // {"name":" — 9 байт, дальше по 2 байта на букву
+        assertEquals("{\"name\":\"фи", truncated(body, 14, StandardCharsets.UTF_8));
+        assertEquals("{\"name\":\"фи", truncated(body, 13, StandardCharsets.UTF_8));
+        assertEquals(9, RequestLogConfiguration.truncate(body, 10, StandardCharsets.UTF_8).length);
+        assertEquals(12, RequestLogConfiguration.truncate(body, 12, StandardCharsets.ISO_8859_1).length);
+    }
+
+    @Test
+    public void everyRequestIsLoggedByBackgroundThreadTest(CapturedOutput output) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            mockMvc.perform(get("/genres/1")).andExpect(status().isOk());
+        }
+
+        String line = awaitLine(output, l -> l.contains("GET /genres/1 200")
+                && output.getOut().lines().filter(o -> o.contains("GET /genres/1 200")).count() == 20);
+
+        assertTrue(line.contains("request-log]"));
+    }
+
+    private static String truncated(byte[] body, int limit, Charset charset) {
+        return new String(RequestLogConfiguration.truncate(body, limit, charset), charset);
+    }
+
+    private static String awaitLine(CapturedOutput output, Predicate<String> matcher) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            String line = Arrays.stream(output.getOut().split("\n")).filter(matcher).findFirst().orElse(null);
+            if (line != null) {
+                return line;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Строка не появилась в журнале за 5 секунд");
+    }
+}
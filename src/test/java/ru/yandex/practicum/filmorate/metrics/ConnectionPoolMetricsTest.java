@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pool-metrics;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.connection-timeout=250"
+})
+@AutoConfigureObservability
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ConnectionPoolMetricsTest {
+    final DataSource dataSource;
+    final JdbcTemplate jdbcTemplate;
+    final MeterRegistry registry;
+
+    @Test
+    public void poolGaugesAndAcquireTimerAreRegisteredTest() {
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FILMS", Integer.class);
+
+        assertNotNull(registry.find("hikaricp.connections.active").tag("pool", "filmorate").gauge());
+        assertNotNull(registry.find("hikaricp.connections.idle").tag("pool", "filmorate").gauge());
+        assertNotNull(registry.find("hikaricp.connections.pending").tag("pool", "filmorate").gauge());
+        Timer acquire = registry.find("hikaricp.connections.acquire").tag("pool", "filmorate").timer();
+        assertNotNull(acquire);
+        assertTrue(acquire.count() > 0);
+    }
+
+    @Test
+    public void exhaustedPoolTimesOutAndCountsTimeoutTest() throws Exception {
+        double before = registry.get("hikaricp.connections.timeout").tag("pool", "filmorate").counter().count();
+
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+            assertEquals(2, registry.get("hikaricp.connections.active").gauge().value());
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        }
+
+        assertEquals(before + 1, registry.get("hikaricp.connections.timeout").tag("pool", "filmorate").counter().count());
+    }
+
+    @Test
+    public void queryCacheSizeIsAppliedToConnectionsTest() {
+        String size = jdbcTemplate.queryForObject("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS "
+                + "WHERE SETTING_NAME = 'QUERY_CACHE_SIZE'", String.class);
+
+        assertEquals("64", size);
+    }
+}
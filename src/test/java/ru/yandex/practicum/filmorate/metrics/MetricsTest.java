@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class MetricsTest {
+    final MockMvc mockMvc;
+    final MeterRegistry registry;
+    final FilmStorage filmStorage;
+
+    @Test
+    public void storageCallsAndRequestStatementsAreMeasuredTest() throws Exception {
+        TestData.createFilm(filmStorage);
+
+        mockMvc.perform(get("/films/popular?count=10")).andExpect(status().isOk());
+
+        DistributionSummary requestStatements = registry.find("filmorate.http.sql.statements")
+                .tags("method", "GET", "uri", "/films/popular")
+                .summary();
+        assertNotNull(requestStatements);
+        assertEquals(1, requestStatements.count());
+        Timer popular = registry.find("filmorate.storage")
+                .tags("storage", "FilmDbStorage", "method", "getPopularFilms", "exception", "none")
+                .timer();
+        assertNotNull(popular);
+        assertTrue(popular.count() >= 1);
+        Timer create = registry.find("filmorate.storage").tags("method", "create").timer();
+        assertNotNull(create);
+        assertTrue(registry.find("filmorate.storage.sql.statements")
+                .tags("storage", "FilmDbStorage", "method", "create")
+                .summary().totalAmount() > 0);
+    }
+
+    @Test
+    public void cacheAndQueueGaugesAreRegisteredTest() {
+        assertNotNull(registry.find("cache.size").tag("cache", "films").gauge());
+        assertNotNull(registry.find("cache.gets").tags("cache", "users", "result", "hit").functionCounter());
+        assertNotNull(registry.find("filmorate.likes.write-behind.pending").gauge());
+        assertNotNull(registry.find("filmorate.likes.write-behind.overflows").functionCounter());
+    }
+
+    @Test
+    public void prometheusEndpointExposesStorageMetricsTest() throws Exception {
+        filmStorage.getFilms();
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertTrue(scrape.contains("filmorate_storage_seconds_count"));
+        assertTrue(scrape.contains("filmorate_storage_sql_statements"));
+    }
+}
@@ -0,0 +1,227 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.capacity=2",
+        "filmorate.likes.write-behind.flush-size=100",
+        "filmorate.likes.write-behind.flush-interval=PT1H",
+        "filmorate.likes.write-behind.offer-timeout=PT0.01S"
+})
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeWriteBehindBufferTest {
+    final FilmService filmService;
+    final LikeWriteBehindBuffer likeBuffer;
+    final FilmStorage filmStorage;
+    final UserStorage userStorage;
+    final JdbcTemplate jdbcTemplate;
+    final SqlStatementCounter statementCounter;
+    final FilmPopularityIndex popularityIndex;
+
+    @AfterEach
+    public void flushBuffer() {
+        likeBuffer.flush();
+    }
+
+    @Test
+    public void pendingLikeIsVisibleToReaderBeforeFlushTest() {
+        Film film = createFilm();
+        User user = createUser();
+
+        filmService.addLike(film.getId(), user.getId());
+
+        assertEquals(0, storedLikes(film));
+        assertEquals(List.of(user.getId()), filmService.getById(film.getId()).getLikes());
+
+        likeBuffer.flush();
+        assertEquals(1, storedLikes(film));
+        assertEquals(List.of(user.getId()), filmService.getById(film.getId()).getLikes());
+    }
+
+    @Test
+    public void repeatedActionsOnSamePairAreDeduplicatedTest() {
+        Film film = createFilm();
+        User user = createUser();
+        filmStorage.addLike(film.getId(), user.getId());
+
+        filmService.removeLike(film.getId(), user.getId());
+        filmService.addLike(film.getId(), user.getId());
+        filmService.removeLike(film.getId(), user.getId());
+
+        assertEquals(1, likeBuffer.pendingCount());
+        assertTrue(filmService.getById(film.getId()).getLikes().isEmpty());
+
+        likeBuffer.flush();
+        assertEquals(0, storedLikes(film));
+    }
+
+    @Test
+    public void fullBufferFallsBackToSynchronousWriteTest() {
+        Film film = createFilm();
+        User first = createUser();
+        User second = createUser();
+        User third = createUser();
+
+        filmService.addLike(film.getId(), first.getId());
+        filmService.addLike(film.getId(), second.getId());
+        filmService.addLike(film.getId(), third.getId());
+
+        assertEquals(2, likeBuffer.pendingCount());
+        assertEquals(1, storedLikes(film));
+
+        likeBuffer.flush();
+        assertEquals(3, storedLikes(film));
+    }
+
+    @Test
+    public void shutdownDrainsPendingLikesTest() throws InterruptedException {
+        LikeWriteBehindBuffer buffer = buffer(filmStorage);
+        buffer.start();
+        Film film = createFilm();
+        User user = createUser();
+
+        buffer.addLike(film.getId(), user.getId());
+        assertEquals(0, storedLikes(film));
+
+        buffer.shutdown();
+        assertEquals(1, storedLikes(film));
+    }
+
+    @Test
+    public void failedWriteIsRetriedOnNextFlushTest() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        FilmStorage flaky = (FilmStorage) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FilmStorage.class}, (proxy, method, args) -> {
+                    // Пакет не проходит никогда, по одному лайк не записывается только в первый раз
+                    if (method.getName().equals("applyLikes")
+                            || method.getName().equals("addLike") && calls.incrementAndGet() == 1) {
+                        throw new TransientDataAccessResourceException("база недоступна");
+                    }
+                    return method.invoke(filmStorage, args);
+                });
+        LikeWriteBehindBuffer buffer = buffer(flaky);
+        buffer.start();
+        Film film = createFilm();
+        User user = createUser();
+
+        buffer.addLike(film.getId(), user.getId());
+        assertEquals(0, buffer.flush());
+        assertEquals(1, buffer.pendingCount());
+        assertEquals(List.of(user.getId()), buffer.withPendingLikes(film).getLikes());
+
+        assertEquals(1, buffer.flush());
+        assertEquals(1, storedLikes(film));
+        assertEquals(0, buffer.deadLetterCount());
+        buffer.shutdown();
+    }
+
+    @Test
+    public void likeIsDeadLetteredAfterMaxAttemptsTest() throws InterruptedException {
+        LikeWriteBehindBuffer buffer = buffer(filmStorage);
+        buffer.start();
+        Film film = createFilm();
+        int missingUserId = Integer.MAX_VALUE;
+
+        buffer.addLike(film.getId(), missingUserId);
+        buffer.flush();
+        assertEquals(1, buffer.pendingCount());
+        buffer.flush();
+
+        assertEquals(0, buffer.pendingCount());
+        assertEquals(1, buffer.deadLetterCount());
+        assertEquals(0, storedLikes(film));
+        buffer.shutdown();
+    }
+
+    // Сброс пакета: лайки, снятия и счётчики — по одному пакетному запросу на весь сброс
+    @Test
+    public void flushWritesChunkAsBatchTest() throws InterruptedException {
+        LikeWriteBehindBuffer buffer = buffer(filmStorage);
+        buffer.start();
+        Film first = createFilm();
+        Film second = createFilm();
+        User stale = createUser();
+        filmStorage.addLike(first.getId(), stale.getId());
+        List<User> users = List.of(createUser(), createUser(), createUser());
+
+        users.forEach(user -> buffer.addLike(first.getId(), user.getId()));
+        users.forEach(user -> buffer.addLike(second.getId(), user.getId()));
+        buffer.deleteLike(first.getId(), stale.getId());
+        long before = statementCounter.current();
+        assertEquals(7, buffer.flush());
+
+        assertEquals(3, statementCounter.current() - before);
+        assertEquals(3, storedLikes(first));
+        assertEquals(3, storedLikes(second));
+        assertEquals(3, popularityIndex.getLikes(first.getId()));
+        assertEquals(3, likeCountColumn(first));
+        assertEquals(3, likeCountColumn(second));
+        buffer.shutdown();
+    }
+
+    // Сбойная пара откатывает пакет, но остальные пары записываются по одному в том же сбросе
+    @Test
+    public void failedChunkFallsBackToSingleWritesTest() throws InterruptedException {
+        LikeWriteBehindBuffer buffer = buffer(filmStorage);
+        buffer.start();
+        Film film = createFilm();
+        User user = createUser();
+
+        buffer.addLike(film.getId(), user.getId());
+        buffer.addLike(film.getId(), Integer.MAX_VALUE);
+        assertEquals(1, buffer.flush());
+
+        assertEquals(1, storedLikes(film));
+        assertEquals(1, likeCountColumn(film));
+        assertEquals(1, buffer.pendingCount());
+        buffer.flush();
+        assertEquals(1, buffer.deadLetterCount());
+        buffer.shutdown();
+    }
+
+    private static LikeWriteBehindBuffer buffer(FilmStorage filmStorage) {
+        return new LikeWriteBehindBuffer(filmStorage, true, 10, 10, Duration.ofHours(1), Duration.ofMillis(10), 2);
+    }
+
+    private int likeCountColumn(Film film) {
+        return jdbcTemplate.queryForObject("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?", Integer.class, film.getId());
+    }
+
+    private int storedLikes(Film film) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM LIKES WHERE FILM_ID = ?", Integer.class, film.getId());
+    }
+
+    private Film createFilm() {
+        return TestData.createFilm(filmStorage);
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ConcurrentUpsertTest {
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS = 50;
+    private static final int ROUNDS = 300;
+
+    final FilmStorage filmStorage;
+    final UserStorage userStorage;
+    final FilmPopularityIndex popularityIndex;
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+
+    @Test
+    public void likeStormOnSamePairTest() throws Exception {
+        Film film = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+
+        assertEquals(1, hammer(i -> filmStorage.addLike(film.getId(), user.getId())));
+        assertEquals(1, count("SELECT COUNT(*) FROM LIKES WHERE FILM_ID = ?", film.getId()));
+        assertEquals(1, count("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?", film.getId()));
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+
+        assertEquals(1, hammer(i -> filmStorage.deleteLike(film.getId(), user.getId())));
+        assertEquals(0, count("SELECT COUNT(*) FROM LIKES WHERE FILM_ID = ?", film.getId()));
+        assertEquals(0, count("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?", film.getId()));
+        assertEquals(0, popularityIndex.getLikes(film.getId()));
+    }
+
+    @Test
+    public void friendshipStormFromBothSidesTest() throws Exception {
+        User user = TestData.createUser(userStorage);
+        User friend = TestData.createUser(userStorage);
+
+        hammer(i -> i % 2 == 0
+                ? userStorage.addFriend(user.getId(), friend.getId())
+                : userStorage.addFriend(friend.getId(), user.getId()));
+
+        String sqlQuery = "SELECT COUNT(*) FROM FRIENDSHIP WHERE STATUS = TRUE AND USER_ID IN (?, ?)";
+        assertEquals(2, count(sqlQuery, user.getId(), friend.getId()));
+        assertEquals(List.of(friend.getId()), userStorage.getById(user.getId()).orElseThrow().getFriends());
+        assertEquals(List.of(user.getId()), userStorage.getById(friend.getId()).orElseThrow().getFriends());
+    }
+
+    // Каждый раунд — новая пара, заявки A->B и B->A отправляются одновременно, каждая в своей транзакции,
+    // как из транзакционного сервиса. Без упорядоченной блокировки часть раундов заканчивалась взаимной
+    // блокировкой или неподтверждённой дружбой
+    @Test
+    public void crossConfirmationIsStableTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                User user = TestData.createUser(userStorage);
+                User friend = TestData.createUser(userStorage);
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                Future<?> forward = executor.submit(() -> {
+                    barrier.await();
+                    return transactionTemplate.execute(status -> userStorage.addFriend(user.getId(), friend.getId()));
+                });
+                Future<?> backward = executor.submit(() -> {
+                    barrier.await();
+                    return transactionTemplate.execute(status -> userStorage.addFriend(friend.getId(), user.getId()));
+                });
+                forward.get(10, TimeUnit.SECONDS);
+                backward.get(10, TimeUnit.SECONDS);
+
+                String sqlQuery = "SELECT COUNT(*) FROM FRIENDSHIP WHERE STATUS = TRUE AND USER_ID IN (?, ?)";
+                assertEquals(2, count(sqlQuery, user.getId(), friend.getId()), "раунд " + round);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Запускает действие THREADS * ATTEMPTS раз из THREADS потоков одновременно и возвращает число вызовов,
+    // вернувших true
+    private int hammer(IntPredicate action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS; i++) {
+                    if (action.test(thread * ATTEMPTS + i)) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        return succeeded.get();
+    }
+
+    private int count(String sqlQuery, Object... args) {
+        return jdbcTemplate.queryForObject(sqlQuery, Integer.class, args);
+    }
+}
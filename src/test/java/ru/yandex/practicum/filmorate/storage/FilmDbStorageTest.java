@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+
+class FilmDbStorageTest extends FilmStorageTest {
+    @Autowired
+    FilmDbStorageTest(FilmDbStorage filmStorage) {
+        super(filmStorage);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmStorageQueryCountTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final SqlStatementCounter statementCounter;
+
+    @Test
+    public void readQueryCountDoesNotDependOnCatalogSizeTest() {
+        seed(3);
+        // Индексы загружаются при первом чтении, загрузка в подсчёт не входит
+        filmStorage.getPopularFilms(1);
+        filmStorage.search("film", true, true, 1);
+        int findAllSmall = countStatements(filmStorage::findAll);
+        int getFilmsSmall = countStatements(filmStorage::getFilms);
+        int popularSmall = countStatements(() -> filmStorage.getPopularFilms(100));
+        int popularByGenreSmall = countStatements(() -> filmStorage.getPopularFilms(100, 1, 1, null));
+        int searchSmall = countStatements(() -> filmStorage.search("film", true, true, 100));
+
+        seed(30);
+        assertEquals(findAllSmall, countStatements(filmStorage::findAll));
+        assertEquals(getFilmsSmall, countStatements(filmStorage::getFilms));
+        assertEquals(popularSmall, countStatements(() -> filmStorage.getPopularFilms(100)));
+        assertEquals(popularSmall, popularByGenreSmall);
+        assertEquals(popularByGenreSmall, countStatements(() -> filmStorage.getPopularFilms(100, 1, 1, null)));
+        assertEquals(searchSmall, countStatements(() -> filmStorage.search("film", true, true, 100)));
+    }
+
+    @Test
+    public void readsReturnGenresAndLikesTest() {
+        Film film = seed(1).get(0);
+
+        Film dbFilm = filmStorage.getFilms().stream()
+                .filter(f -> f.getId() == film.getId())
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals(2, dbFilm.getGenres().size());
+        assertEquals(1, dbFilm.getGenres().get(0).getId());
+        assertEquals(1, dbFilm.getLikes().size());
+    }
+
+    private int countStatements(Runnable action) {
+        long before = statementCounter.current();
+        action.run();
+        return (int) (statementCounter.current() - before);
+    }
+
+    private List<Film> seed(int count) {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = TestData.createUser(userStorage);
+            Film film = TestData.film();
+            film.setGenres(TestData.genres(1, 2));
+            film.setLikes(new ArrayList<>(List.of(user.getId())));
+            films.add(TestData.createFilm(filmStorage, film));
+        }
+        return films;
+    }
+}
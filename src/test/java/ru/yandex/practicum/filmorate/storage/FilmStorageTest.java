@@ -1,28 +1,37 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
 import org.assertj.core.api.AssertionsForClassTypes;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+/**
+ * Общие проверки для всех реализаций FilmStorage: каждая подключает свою в наследнике.
+ */
 @SpringBootTest
 @AutoConfigureTestDatabase
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
-class FilmStorageTest {
-    final FilmDbStorage filmStorage;
+public abstract class FilmStorageTest {
+    protected static final int UNKNOWN_ID = Integer.MAX_VALUE;
+
+    final FilmStorage filmStorage;
+
+    protected FilmStorageTest(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
 
     final Film film1 = new Film(1,
             "film1 name",
@@ -101,4 +110,78 @@ class FilmStorageTest {
         // Проверяем, что количество фильмов уменьшилось на 1
         assertEquals(beforeDelete.size() - 1, afterDelete.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findPageTest() {
+        filmStorage.create(film1);
+        filmStorage.create(film);
+        List<Integer> expected = filmStorage.findAll().stream().map(Film::getId).sorted().toList();
+
+        List<Integer> paged = new ArrayList<>();
+        List<Film> page = filmStorage.findPage(0, 2);
+        while (!page.isEmpty()) {
+            assertThat(page.size()).isLessThanOrEqualTo(2);
+            page.forEach(f -> paged.add(f.getId()));
+            page = filmStorage.findPage(page.get(page.size() - 1).getId(), 2);
+        }
+
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void streamAllTest() {
+        filmStorage.create(film1);
+        List<Integer> expected = filmStorage.findAll().stream().map(Film::getId).sorted().toList();
+
+        List<Integer> streamed = new ArrayList<>();
+        filmStorage.streamAll(f -> streamed.add(f.getId()));
+
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void findByNaturalKeyTest() {
+        Film added = filmStorage.create(new Film(0,
+                "natural key film",
+                "description",
+                LocalDate.of(2001, 2, 3),
+                111,
+                0,
+                new Mpa(2, "PG", null),
+                new ArrayList<>(),
+                new ArrayList<>())).orElseThrow();
+
+        assertThat(filmStorage.findByNaturalKey("natural key film", LocalDate.of(2001, 2, 3), 111, 2))
+                .extracting(Film::getId)
+                .containsExactly(added.getId());
+        assertThat(filmStorage.findByNaturalKey("natural key film", LocalDate.of(2001, 2, 3), 111, 1)).isEmpty();
+    }
+
+    // Как fk_Like_UserID: лайк несуществующего пользователя отклоняется и отдельно, и в теле фильма
+    @Test
+    public void likeFromUnknownUserIsRejectedTest() {
+        Film added = TestData.createFilm(filmStorage);
+
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.addLike(added.getId(), UNKNOWN_ID));
+
+        Film withLike = TestData.film();
+        withLike.setLikes(new ArrayList<>(List.of(UNKNOWN_ID)));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.create(withLike));
+
+        added.setLikes(new ArrayList<>(List.of(UNKNOWN_ID)));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.update(added));
+        assertEquals(List.of(), filmStorage.getById(added.getId()).orElseThrow().getLikes());
+    }
+
+    // Как fk_Film_RatingID и fk_Film_Genre_GenreID
+    @Test
+    public void unknownMpaAndGenreAreRejectedTest() {
+        Film unknownMpa = TestData.film();
+        unknownMpa.setMpa(new Mpa(UNKNOWN_ID, null, null));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.create(unknownMpa));
+
+        Film unknownGenre = TestData.film();
+        unknownGenre.setGenres(TestData.genres(1, UNKNOWN_ID));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.create(unknownGenre));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Считает запросы к базе на одну запись фильма через сервис: жанры и лайки пишутся пакетами,
+ * поэтому число запросов не зависит от их количества.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmWriteRoundTripTest {
+    final FilmService filmService;
+    final UserDbStorage userStorage;
+    final FilmDbStorage filmStorage;
+    final JdbcTemplate jdbcTemplate;
+    final SqlStatementCounter statementCounter;
+    // Жанры и лайки уходят одним пакетом каждые, результат читается тремя запросами: фильм, жанры, лайки
+    static final int WRITE_STATEMENTS = 8;
+
+    @Test
+    public void createRoundTripsDoNotDependOnGenresAndLikesTest() {
+        // Первое создание прогревает кеш справочников, его запросы в сравнение не входят
+        filmService.create(film(1, 1));
+        Film smallFilm = film(1, 1);
+        Film largeFilm = film(6, 5);
+        int small = countStatements(() -> filmService.create(smallFilm));
+        int large = countStatements(() -> filmService.create(largeFilm));
+        assertEquals(WRITE_STATEMENTS, small);
+        assertEquals(WRITE_STATEMENTS, large);
+    }
+
+    @Test
+    public void updateRoundTripsDoNotDependOnGenresAndLikesTest() {
+        Film small = filmService.create(film(1, 1)).orElseThrow();
+        Film large = filmService.create(film(1, 1)).orElseThrow();
+        Film smallUpdate = film(1, 1);
+        smallUpdate.setId(small.getId());
+        Film largeUpdate = film(6, 5);
+        largeUpdate.setId(large.getId());
+
+        int smallCount = countStatements(() -> filmService.update(smallUpdate));
+        int largeCount = countStatements(() -> filmService.update(largeUpdate));
+        assertEquals(WRITE_STATEMENTS, smallCount);
+        assertEquals(WRITE_STATEMENTS, largeCount);
+        assertEquals(6, filmService.getById(large.getId()).getGenres().size());
+        assertEquals(6, filmService.getById(large.getId()).getLikes().size());
+    }
+
+    // Лайк и приращение счётчика — один запрос, повторный лайк тоже один запрос и счётчик не меняет
+    @Test
+    public void addLikeIsSingleStatementTest() {
+        Film film = filmService.create(film(1, 0)).orElseThrow();
+        int userId = TestData.createUser(userStorage).getId();
+
+        int first = countStatements(() -> assertTrue(filmStorage.addLike(film.getId(), userId)));
+        int repeated = countStatements(() -> assertFalse(filmStorage.addLike(film.getId(), userId)));
+        assertEquals(1, first);
+        assertEquals(1, repeated);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?",
+                Integer.class, film.getId()));
+    }
+
+    private int countStatements(Runnable action) {
+        long before = statementCounter.current();
+        action.run();
+        return (int) (statementCounter.current() - before);
+    }
+
+    private Film film(int genres, int likes) {
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < likes; i++) {
+            userIds.add(TestData.createUser(userStorage).getId());
+        }
+        Film film = TestData.film();
+        film.setGenres(TestData.genres(IntStream.rangeClosed(1, genres).toArray()));
+        film.setLikes(userIds);
+        return film;
+    }
+}
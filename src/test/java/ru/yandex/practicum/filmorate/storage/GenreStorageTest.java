@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.CachingGenreStorage;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -20,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 class GenreStorageTest {
     final GenreStorage genreStorage;
+    final CachingGenreStorage cachingGenreStorage;
 
     @Test
     public void getAllGenresTest() {
@@ -44,4 +46,18 @@ class GenreStorageTest {
                         assertThat(genre).hasFieldOrPropertyWithValue("id", 1)
                 );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void genresAreServedFromCacheTest() {
+        cachingGenreStorage.invalidate();
+        long misses = cachingGenreStorage.stats().missCount();
+        long hits = cachingGenreStorage.stats().hitCount();
+
+        genreStorage.getAllGenres();
+        genreStorage.getGenreById(2);
+        assertThat(genreStorage.getGenreById(100)).isEmpty();
+
+        assertEquals(misses + 1, cachingGenreStorage.stats().missCount());
+        assertEquals(hits + 2, cachingGenreStorage.stats().hitCount());
+    }
+}
@@ -7,18 +7,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.CachingMpaStorage;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 class MpaStorageTest {
     final MpaStorage mpaStorage;
+    final CachingMpaStorage cachingMpaStorage;
 
     @Test
     public void getAllMpaTest() {
@@ -37,4 +40,18 @@ class MpaStorageTest {
                         assertThat(mpa).hasFieldOrPropertyWithValue("id", 1)
                 );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void mpaIsServedFromCacheTest() {
+        cachingMpaStorage.invalidate();
+        long misses = cachingMpaStorage.stats().missCount();
+        long hits = cachingMpaStorage.stats().hitCount();
+
+        mpaStorage.getAllMpa();
+        mpaStorage.getMpaById(3);
+        assertThat(mpaStorage.getMpaById(100)).isEmpty();
+
+        assertEquals(misses + 1, cachingMpaStorage.stats().missCount());
+        assertEquals(hits + 2, cachingMpaStorage.stats().hitCount());
+    }
+}
@@ -0,0 +1,196 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Прогоняет запросы горячих путей хранилищ через EXPLAIN и падает, если хотя бы один из них
+ * читает таблицу полным сканированием. Полные выборки (findAll, streamAll, перестроение индексов
+ * в памяти) сюда не входят: для них скан ожидаем.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class QueryPlanTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final GenreDbStorage genreStorage;
+    final SqlStatementCounter statementCounter;
+    final JdbcTemplate jdbcTemplate;
+
+    // Набор вторичных индексов v1 из миграции V1__create_schema.sql: таблица -> индекс -> столбцы
+    private static final Map<String, Map<String, String>> SECONDARY_INDEXES = Map.of(
+            "FILMS", Map.of("IX_FILM_RATINGID", "RATING_ID", "IX_FILM_RELEASE_DATE", "RELEASE_DATE"),
+            "LIKES", Map.of("IX_LIKE_FILMID", "FILM_ID"),
+            "FRIENDSHIP", Map.of("IX_FRIENDSHIP_FRIENDID", "FRIEND_ID"),
+            "FILM_GENRE", Map.of("IX_FILM_GENRE_FILMID", "FILM_ID"));
+
+    @Test
+    public void filmHotPathsUseIndexesTest() {
+        User user = createUser();
+        User other = createUser();
+        Film liked = createFilm();
+        // Индексы в памяти загружаются целиком при первом чтении — это намеренное полное чтение таблиц,
+        // а не запрос горячего пути, поэтому загрузка проходит до замера
+        filmStorage.getPopularFilms(1);
+        filmStorage.getRecommendations(user.getId(), 1);
+        filmStorage.search("film", true, true, 1);
+
+        Set<String> statements = capture(() -> {
+            Film film = createFilm();
+            filmStorage.getById(film.getId());
+            film.setGenres(new ArrayList<>(List.of(new Genre(2, null))));
+            filmStorage.update(film);
+            filmStorage.addLike(film.getId(), user.getId());
+            filmStorage.addLike(liked.getId(), other.getId());
+            filmStorage.deleteLike(film.getId(), user.getId());
+            filmStorage.findPage(0, 10);
+            filmStorage.findByNaturalKey(film.getName(), film.getReleaseDate(), film.getDuration(), 1);
+            filmStorage.getPopularFilms(10);
+            filmStorage.getPopularFilms(10, 2, 1, 2000);
+            filmStorage.getRecommendations(user.getId(), 10);
+            filmStorage.search("film", true, true, 10);
+            genreStorage.getGenresByFilmId(film.getId());
+            filmStorage.deleteFilm(film);
+        });
+
+        assertNoTableScans(statements);
+    }
+
+    @Test
+    public void userHotPathsUseIndexesTest() {
+        User friend = createUser();
+        User other = createUser();
+
+        Set<String> statements = capture(() -> {
+            User user = createUser();
+            userStorage.getById(user.getId());
+            userStorage.update(user);
+            userStorage.existsByLoginOrEmail(user.getLogin(), user.getEmail());
+            userStorage.findPage(0, 10);
+            userStorage.addFriend(user.getId(), friend.getId());
+            userStorage.addFriend(friend.getId(), user.getId());
+            userStorage.addFriend(other.getId(), friend.getId());
+            userStorage.getFriends(user.getId());
+            userStorage.getCommonFriends(user.getId(), other.getId());
+            userStorage.getSuggestions(other.getId(), 10);
+            userStorage.deleteFriend(user.getId(), friend.getId());
+        });
+
+        assertNoTableScans(statements);
+    }
+
+    @Test
+    public void explainReportsTableScanTest() {
+        assertTrue(explain("SELECT * FROM FILMS WHERE DESCRIPTION = ?").contains("tableScan"));
+        assertFalse(explain("SELECT * FROM LIKES WHERE FILM_ID = ?").contains("tableScan"));
+    }
+
+    @Test
+    public void secondaryIndexSetTest() {
+        String sqlQuery = "SELECT TABLE_NAME, INDEX_NAME, LISTAGG(COLUMN_NAME, ',') " +
+                "WITHIN GROUP (ORDER BY ORDINAL_POSITION) AS COLUMNS " +
+                "FROM INFORMATION_SCHEMA.INDEX_COLUMNS " +
+                "WHERE TABLE_SCHEMA = 'PUBLIC' " +
+                "GROUP BY TABLE_NAME, INDEX_NAME";
+        Map<String, Map<String, String>> indexes = new TreeMap<>();
+        jdbcTemplate.query(sqlQuery, (ResultSet rs) -> {
+            indexes.computeIfAbsent(rs.getString("TABLE_NAME"), t -> new TreeMap<>())
+                    .put(rs.getString("INDEX_NAME"), rs.getString("COLUMNS"));
+        });
+
+        SECONDARY_INDEXES.forEach((table, expected) -> expected.forEach((name, columns) ->
+                assertEquals(columns, indexes.getOrDefault(table, Map.of()).get(name), table + "." + name)));
+
+        // Внешние ключи должны переиспользовать индексы набора, а не заводить дубликаты с теми же столбцами
+        indexes.forEach((table, byName) -> {
+            Map<String, List<String>> byColumns = byName.entrySet().stream()
+                    .collect(Collectors.groupingBy(Map.Entry::getValue,
+                            Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+            byColumns.forEach((columns, names) ->
+                    assertEquals(1, names.size(), table + "(" + columns + "): " + names));
+        });
+    }
+
+    private Set<String> capture(Runnable action) {
+        // Слушатель получает запросы и фоновых потоков
+        Set<String> statements = Collections.synchronizedSet(new LinkedHashSet<>());
+        Consumer<String> listener = statements::add;
+        statementCounter.addListener(listener);
+        try {
+            action.run();
+        } finally {
+            statementCounter.removeListener(listener);
+        }
+        assertFalse(statements.isEmpty());
+        return statements;
+    }
+
+    private void assertNoTableScans(Set<String> statements) {
+        List<String> scans = new ArrayList<>();
+        for (String statement : statements) {
+            String plan = explain(statement);
+            if (plan.contains("tableScan")) {
+                scans.add(statement + "\n" + plan);
+            }
+        }
+        assertTrue(scans.isEmpty(), "Запросы с полным сканированием таблиц:\n" + String.join("\n\n", scans));
+    }
+
+    // Параметры для EXPLAIN не важны: план строится при подготовке запроса, поэтому все они NULL
+    private String explain(String statement) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + statement)) {
+                int parameters = ps.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    ps.setObject(i, null);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (rs.next()) {
+                        plan.append(rs.getString(1));
+                    }
+                    return plan.toString();
+                }
+            }
+        });
+    }
+
+    private Film createFilm() {
+        return TestData.createFilm(filmStorage, TestData.film(1, LocalDate.of(2000, 1, 1), 1));
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Рекомендации при выключенном индексе лайков: тот же сценарий, что в FilmLikeIndexTest, считается запросом к базе.
+ */
+@SpringBootTest(properties = "filmorate.recommendations.enabled=false")
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class RecommendationSqlTest {
+    final FilmStorage filmStorage;
+    final UserStorage userStorage;
+    final FilmLikeIndex likeIndex;
+
+    @Test
+    public void recommendationsFollowSimilarUsersWithoutIndexTest() {
+        Film f1 = TestData.createFilm(filmStorage);
+        Film f2 = TestData.createFilm(filmStorage);
+        Film f3 = TestData.createFilm(filmStorage);
+        Film f4 = TestData.createFilm(filmStorage);
+        Film f5 = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+        User close = TestData.createUser(userStorage);
+        User far = TestData.createUser(userStorage);
+        User stranger = TestData.createUser(userStorage);
+        like(user, f1, f2);
+        like(close, f1, f2, f3);
+        like(far, f2, f4);
+        like(stranger, f5);
+
+        assertEquals(List.of(f3.getId(), f4.getId()), ids(filmStorage.getRecommendations(user.getId(), 10)));
+        assertEquals(List.of(f3.getId()), ids(filmStorage.getRecommendations(user.getId(), 1)));
+        assertTrue(likeIndex.likedFilms(user.getId()).isEmpty());
+
+        filmStorage.addLike(f3.getId(), user.getId());
+        assertEquals(List.of(f4.getId()), ids(filmStorage.getRecommendations(user.getId(), 10)));
+
+        filmStorage.deleteLike(f2.getId(), far.getId());
+        assertEquals(List.of(), filmStorage.getRecommendations(user.getId(), 10));
+        assertEquals(List.of(), filmStorage.getRecommendations(TestData.createUser(userStorage).getId(), 10));
+    }
+
+    private void like(User user, Film... films) {
+        for (Film film : films) {
+            filmStorage.addLike(film.getId(), user.getId());
+        }
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchemaMigrationTest {
+    private static final ClassPathResource SCHEMA = new ClassPathResource("db/migration/V1__create_schema.sql");
+    private static final ClassPathResource REFERENCE_DATA = new ClassPathResource("db/migration/R__reference_data.sql");
+
+    @Test
+    public void repeatedStartupAppliesNothingTest() {
+        DataSource dataSource = dataSource("fresh");
+
+        assertEquals(3, flyway(dataSource).migrate().migrationsExecuted);
+        assertEquals(0, flyway(dataSource).migrate().migrationsExecuted);
+        assertEquals(5, new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM RATING_MPA", Integer.class));
+    }
+
+    @Test
+    public void legacyDatabaseIsBaselinedTest() {
+        DataSource dataSource = dataSource("legacy");
+        // Так база создавалась при spring.sql.init.mode=always
+        new ResourceDatabasePopulator(SCHEMA, REFERENCE_DATA).execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO USERS (EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
+                "VALUES ('legacy@ya.ru', 'legacy', 'Legacy', DATE '1990-01-01')");
+
+        MigrateResult result = flyway(dataSource).migrate();
+
+        assertEquals("0", result.initialSchemaVersion);
+        assertEquals(List.of("0", "1", "2"), jdbcTemplate.queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"version\" IS NOT NULL ORDER BY \"installed_rank\"",
+                String.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS", Integer.class));
+        assertEquals(0, flyway(dataSource).migrate().migrationsExecuted);
+    }
+
+    @Test
+    public void legacyDuplicateLoginsAreRenamedTest() {
+        DataSource dataSource = dataSource("legacy-logins");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Схема до ограничения uc_User_Login
+        jdbcTemplate.execute("CREATE TABLE USERS (USER_ID INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "EMAIL VARCHAR(254) NOT NULL, LOGIN VARCHAR(55) NOT NULL, USER_NAME VARCHAR(55) NOT NULL, " +
+                "BIRTHDAY DATE NOT NULL, CONSTRAINT uc_User_Email UNIQUE (EMAIL))");
+        for (String email : List.of("first@ya.ru", "second@ya.ru", "third@ya.ru")) {
+            jdbcTemplate.update("INSERT INTO USERS (EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
+                    "VALUES (?, 'twin', 'Twin', DATE '1990-01-01')", email);
+        }
+
+        flyway(dataSource).migrate();
+
+        assertEquals(List.of("twin", "twin_2", "twin_3"),
+                jdbcTemplate.queryForList("SELECT LOGIN FROM USERS ORDER BY USER_ID", String.class));
+    }
+
+    @Test
+    public void legacyLikeCountIsRecountedOnceTest() {
+        DataSource dataSource = dataSource("legacy-likes");
+        new ResourceDatabasePopulator(SCHEMA, REFERENCE_DATA).execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO USERS (EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
+                "VALUES ('fan@ya.ru', 'fan', 'Fan', DATE '1990-01-01')");
+        jdbcTemplate.update("INSERT INTO FILMS (FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) " +
+                "VALUES ('liked', 'description', DATE '2000-01-01', 100, 1)");
+        jdbcTemplate.update("INSERT INTO LIKES (USER_ID, FILM_ID) VALUES (1, 1)");
+
+        flyway(dataSource).migrate();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = 1", Integer.class));
+    }
+
+    // Те же настройки, что spring.flyway.* в application.properties
+    private static Flyway flyway(DataSource dataSource) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load();
+    }
+
+    private static DataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:migration-" + name + ";DB_CLOSE_DELAY=-1", "sa", "password");
+    }
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+
+class UserDbStorageTest extends UserStorageTest {
+    @Autowired
+    UserDbStorageTest(UserDbStorage userStorage, FilmDbStorage filmStorage) {
+        super(userStorage, filmStorage);
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class UserFriendsQueryTest {
+    final UserDbStorage userStorage;
+    final UserService userService;
+    final SqlStatementCounter statementCounter;
+
+    @Test
+    public void friendsAndCommonFriendsTest() {
+        User first = createUser();
+        User second = createUser();
+        User common = createUser();
+        User onlyFirst = createUser();
+        User onlySecond = createUser();
+        userStorage.addFriend(first.getId(), common.getId());
+        userStorage.addFriend(first.getId(), onlyFirst.getId());
+        userStorage.addFriend(second.getId(), common.getId());
+        userStorage.addFriend(second.getId(), onlySecond.getId());
+        userStorage.addFriend(common.getId(), first.getId());
+
+        List<User> friends = userStorage.getFriends(first.getId());
+        assertEquals(List.of(common.getId(), onlyFirst.getId()), friends.stream().map(User::getId).toList());
+        assertEquals(common.getLogin(), friends.get(0).getLogin());
+        assertTrue(friends.get(0).getFriends().isEmpty());
+
+        assertEquals(List.of(common.getId()),
+                userStorage.getCommonFriends(first.getId(), second.getId()).stream().map(User::getId).toList());
+        assertTrue(userStorage.getCommonFriends(first.getId(), onlyFirst.getId()).isEmpty());
+        assertTrue(userStorage.getFriends(onlyFirst.getId()).isEmpty());
+    }
+
+    @Test
+    public void friendQueriesDoNotDependOnFriendCountTest() {
+        User first = createUser();
+        User second = createUser();
+        befriendNew(first, second, 2);
+        int friendsSmall = countStatements(() -> userService.getFriendsListById(first.getId()));
+        int commonSmall = countStatements(() -> userService.getCommonFriendsList(first.getId(), second.getId()));
+
+        befriendNew(first, second, 40);
+        assertEquals(friendsSmall, countStatements(() -> userService.getFriendsListById(first.getId())));
+        assertEquals(commonSmall, countStatements(() -> userService.getCommonFriendsList(first.getId(), second.getId())));
+        assertEquals(42, userService.getCommonFriendsList(first.getId(), second.getId()).size());
+    }
+
+    // Блокировка пары пользователей и один MERGE: и заявка, и подтверждение, и повтор
+    @Test
+    public void addFriendTakesLockAndSingleUpsertTest() {
+        User user = createUser();
+        User friend = createUser();
+
+        long before = statementCounter.current();
+        assertFalse(userStorage.addFriend(user.getId(), friend.getId()));
+        assertEquals(2, statementCounter.current() - before);
+
+        before = statementCounter.current();
+        assertTrue(userStorage.addFriend(friend.getId(), user.getId()));
+        assertEquals(2, statementCounter.current() - before);
+
+        before = statementCounter.current();
+        assertTrue(userStorage.addFriend(user.getId(), friend.getId()));
+        assertEquals(2, statementCounter.current() - before);
+        assertEquals(List.of(friend.getId()), userStorage.getById(user.getId()).orElseThrow().getFriends());
+        assertEquals(List.of(user.getId()), userStorage.getById(friend.getId()).orElseThrow().getFriends());
+    }
+
+    @Test
+    public void suggestionsWithoutGraphTest() {
+        User user = createUser();
+        User a = createUser();
+        User b = createUser();
+        User c = createUser();
+        User x = createUser();
+        User y = createUser();
+        User z = createUser();
+        userStorage.addFriend(user.getId(), a.getId());
+        userStorage.addFriend(user.getId(), b.getId());
+        userStorage.addFriend(user.getId(), c.getId());
+        userStorage.addFriend(a.getId(), x.getId());
+        userStorage.addFriend(a.getId(), y.getId());
+        userStorage.addFriend(b.getId(), x.getId());
+        userStorage.addFriend(b.getId(), c.getId());
+        userStorage.addFriend(b.getId(), user.getId());
+        userStorage.addFriend(c.getId(), z.getId());
+        userStorage.addFriend(c.getId(), y.getId());
+        userStorage.addFriend(c.getId(), x.getId());
+
+        assertEquals(List.of(x.getId(), y.getId(), z.getId()),
+                userStorage.getSuggestions(user.getId(), 10).stream().map(User::getId).toList());
+        assertEquals(List.of(x.getId()),
+                userService.getSuggestions(user.getId(), 1).stream().map(User::getId).toList());
+        assertTrue(userStorage.getSuggestions(z.getId(), 10).isEmpty());
+    }
+
+    private void befriendNew(User first, User second, int count) {
+        for (int i = 0; i < count; i++) {
+            User friend = createUser();
+            userStorage.addFriend(first.getId(), friend.getId());
+            userStorage.addFriend(second.getId(), friend.getId());
+        }
+    }
+
+    private int countStatements(Runnable action) {
+        // Прогрев: проверки существования пользователей идут через кеш, он сбрасывается при добавлении друзей
+        action.run();
+        long before = statementCounter.current();
+        action.run();
+        return (int) (statementCounter.current() - before);
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+}
@@ -1,26 +1,35 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
 import org.assertj.core.api.AssertionsForClassTypes;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
+/**
+ * Общие проверки для всех реализаций UserStorage: каждая подключает свою в наследнике.
+ */
 @SpringBootTest
 @AutoConfigureTestDatabase
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public abstract class UserStorageTest {
+    final UserStorage userStorage;
+    final FilmStorage filmStorage;
 
-public class UserStorageTest {
-    final UserDbStorage userStorage;
+    protected UserStorageTest(UserStorage userStorage, FilmStorage filmStorage) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+    }
 
     final User user1 = new User(1,
             "7899@ya.ru",
@@ -50,17 +59,80 @@ public class UserStorageTest {
 
     @Test
     public void getAllUsersTest() {
+        // База общая для классов тестов с тем же контекстом, поэтому считается прирост
+        int before = userStorage.findAll().size();
         userStorage.create(user2);
         userStorage.create(user3);
         Collection<User> dbUsers = userStorage.findAll();
-        assertEquals(2, dbUsers.size());
+        assertEquals(before + 2, dbUsers.size());
     }
 
     @Test
     public void deleteUserTest() {
+        User added = TestData.createUser(userStorage);
         Collection<User> beforeDelete = userStorage.findAll();
-        userStorage.deleteUser(user1);
+        userStorage.deleteUser(added);
         Collection<User> afterDelete = userStorage.findAll();
         assertEquals(beforeDelete.size() - 1, afterDelete.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findPageTest() {
+        List<Integer> expected = userStorage.findAll().stream().map(User::getId).sorted().toList();
+
+        List<Integer> paged = new ArrayList<>();
+        List<User> page = userStorage.findPage(0, 1);
+        while (!page.isEmpty()) {
+            assertEquals(1, page.size());
+            paged.add(page.get(0).getId());
+            page = userStorage.findPage(page.get(0).getId(), 1);
+        }
+
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void streamAllTest() {
+        List<Integer> expected = userStorage.findAll().stream().map(User::getId).sorted().toList();
+
+        List<Integer> streamed = new ArrayList<>();
+        userStorage.streamAll(u -> streamed.add(u.getId()));
+
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void updateToTakenLoginIsRejectedTest() {
+        User first = TestData.createUser(userStorage);
+        User second = TestData.createUser(userStorage);
+        second.setLogin(first.getLogin());
+
+        assertThrows(DuplicateKeyException.class, () -> userStorage.update(second));
+
+        userStorage.deleteUser(first);
+        userStorage.deleteUser(second);
+    }
+
+    // Как fk_Like_UserID: удаление пользователя с лайками оставило бы лайки без владельца
+    @Test
+    public void deleteUserWithLikesIsRejectedTest() {
+        User user = TestData.createUser(userStorage);
+        Film film = TestData.createFilm(filmStorage);
+        filmStorage.addLike(film.getId(), user.getId());
+
+        assertThrows(DataIntegrityViolationException.class, () -> userStorage.deleteUser(user));
+        assertEquals(List.of(user.getId()), filmStorage.getById(film.getId()).orElseThrow().getLikes());
+
+        filmStorage.deleteLike(film.getId(), user.getId());
+        assertTrue(userStorage.deleteUser(user));
+    }
+
+    @Test
+    public void existsByLoginOrEmailTest() {
+        for (User user : userStorage.findAll()) {
+            assertTrue(userStorage.existsByLoginOrEmail(user.getLogin(), "unknown@ya.ru"));
+            assertTrue(userStorage.existsByLoginOrEmail("unknown", user.getEmail()));
+        }
+        assertFalse(userStorage.existsByLoginOrEmail("unknown", "unknown@ya.ru"));
+    }
+}
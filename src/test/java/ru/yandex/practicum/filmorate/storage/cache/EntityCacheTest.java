@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class EntityCacheTest {
+    final FilmStorage filmStorage;
+    final UserStorage userStorage;
+    final CachingFilmStorage cachingFilmStorage;
+    final CachingUserStorage cachingUserStorage;
+    final GenreStorage genreStorage;
+    final MpaStorage mpaStorage;
+    final TransactionTemplate transactionTemplate;
+
+    @Test
+    public void filmReadsHitCacheUntilLikeChangesTest() {
+        Film film = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+        cachingFilmStorage.invalidate();
+        long hits = cachingFilmStorage.stats().hitCount();
+
+        filmStorage.getById(film.getId());
+        filmStorage.getById(film.getId());
+        assertEquals(hits + 1, cachingFilmStorage.stats().hitCount());
+
+        filmStorage.addLike(film.getId(), user.getId());
+        assertEquals(List.of(user.getId()), filmStorage.getById(film.getId()).orElseThrow().getLikes());
+
+        filmStorage.deleteLike(film.getId(), user.getId());
+        assertTrue(filmStorage.getById(film.getId()).orElseThrow().getLikes().isEmpty());
+    }
+
+    @Test
+    public void filmUpdateIsWrittenThroughTest() {
+        Film film = TestData.createFilm(filmStorage);
+        filmStorage.getById(film.getId());
+
+        Film changed = TestData.film("film after update");
+        changed.setId(film.getId());
+        filmStorage.update(changed);
+
+        assertEquals("film after update", filmStorage.getById(film.getId()).orElseThrow().getName());
+        assertTrue(cachingFilmStorage.weightedSize() > 0);
+    }
+
+    @Test
+    public void friendChangesInvalidateUsersTest() {
+        User user = TestData.createUser(userStorage);
+        User friend = TestData.createUser(userStorage);
+        userStorage.getUser(user.getId());
+        userStorage.getUser(friend.getId());
+
+        userStorage.addFriend(user.getId(), friend.getId());
+        assertEquals(List.of(friend.getId()), userStorage.getUser(user.getId()).getFriends());
+
+        userStorage.deleteFriend(user.getId(), friend.getId());
+        assertTrue(userStorage.getById(user.getId()).orElseThrow().getFriends().isEmpty());
+    }
+
+    @Test
+    public void referenceValuesAreNotSharedTest() {
+        Mpa mpa = mpaStorage.getMpaById(1).orElseThrow();
+        mpa.setName("changed");
+        Genre genre = genreStorage.getAllGenres().iterator().next();
+        genre.setName("changed");
+
+        assertEquals("G", mpaStorage.getMpaById(1).orElseThrow().getName());
+        assertEquals("G", filmStorage.getById(TestData.createFilm(filmStorage).getId()).orElseThrow().getMpa().getName());
+        assertNotEquals("changed", genreStorage.getGenreById(genre.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void cachedValuesAreCopiedTest() {
+        Film film = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+
+        Film read = filmStorage.getById(film.getId()).orElseThrow();
+        read.setName("changed");
+        read.getLikes().add(user.getId());
+        User readUser = userStorage.getUser(user.getId());
+        readUser.getFriends().add(film.getId());
+
+        assertEquals(film.getName(), filmStorage.getById(film.getId()).orElseThrow().getName());
+        assertTrue(filmStorage.getById(film.getId()).orElseThrow().getLikes().isEmpty());
+        assertTrue(userStorage.getUser(user.getId()).getFriends().isEmpty());
+    }
+
+    @Test
+    public void readDuringTransactionDoesNotOutliveCommitTest() {
+        Film film = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+        User friend = TestData.createUser(userStorage);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmStorage.addLike(film.getId(), user.getId());
+            userStorage.addFriend(user.getId(), friend.getId());
+            // Другой поток ещё видит состояние до фиксации и кладёт его в кеш
+            CompletableFuture.runAsync(() -> {
+                filmStorage.getById(film.getId());
+                userStorage.getUser(user.getId());
+            }).join();
+        });
+
+        assertEquals(List.of(user.getId()), filmStorage.getById(film.getId()).orElseThrow().getLikes());
+        assertEquals(List.of(friend.getId()), userStorage.getUser(user.getId()).getFriends());
+    }
+}
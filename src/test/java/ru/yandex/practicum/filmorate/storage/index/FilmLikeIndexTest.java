@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmLikeIndexTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final FilmLikeIndex likeIndex;
+
+    @Test
+    public void recommendationsFollowSimilarUsersTest() {
+        Film f1 = createFilm(new ArrayList<>());
+        Film f2 = createFilm(new ArrayList<>());
+        Film f3 = createFilm(new ArrayList<>());
+        Film f4 = createFilm(new ArrayList<>());
+        Film f5 = createFilm(new ArrayList<>());
+        User user = createUser();
+        User close = createUser();
+        User far = createUser();
+        User stranger = createUser();
+        like(user, f1, f2);
+        like(close, f1, f2, f3);
+        like(far, f2, f4);
+        like(stranger, f5);
+
+        assertEquals(2.0 / 3, likeIndex.jaccard(user.getId(), close.getId()), 1e-9);
+        assertEquals(1.0 / 3, likeIndex.jaccard(user.getId(), far.getId()), 1e-9);
+        assertEquals(List.of(f3.getId(), f4.getId()), likeIndex.recommend(user.getId(), 10));
+        assertEquals(List.of(f3.getId()), ids(filmStorage.getRecommendations(user.getId(), 1)));
+
+        filmStorage.addLike(f3.getId(), user.getId());
+        assertEquals(List.of(f4.getId()), likeIndex.recommend(user.getId(), 10));
+
+        filmStorage.deleteLike(f2.getId(), far.getId());
+        assertEquals(List.of(), likeIndex.recommend(user.getId(), 10));
+        assertEquals(List.of(), likeIndex.recommend(createUser().getId(), 10));
+    }
+
+    @Test
+    public void filmWritesAndRebuildKeepIndexInSyncTest() {
+        User first = createUser();
+        User second = createUser();
+        Film film = createFilm(new ArrayList<>(List.of(first.getId(), second.getId())));
+        Film other = createFilm(new ArrayList<>(List.of(first.getId())));
+        assertEquals(List.of(other.getId()), likeIndex.recommend(second.getId(), 10));
+
+        other.setLikes(new ArrayList<>(List.of(second.getId())));
+        filmStorage.update(other);
+        assertEquals(List.of(first.getId(), second.getId()), toList(likeIndex.likedBy(other.getId()).toArray()));
+
+        likeIndex.removeLike(film.getId(), first.getId());
+        likeIndex.rebuild();
+        assertEquals(List.of(first.getId(), second.getId()), toList(likeIndex.likedBy(film.getId()).toArray()));
+
+        filmStorage.deleteFilm(other);
+        assertEquals(List.of(film.getId()), toList(likeIndex.likedFilms(first.getId()).toArray()));
+        assertEquals(List.of(), likeIndex.recommend(second.getId(), 10));
+    }
+
+    private void like(User user, Film... films) {
+        for (Film film : films) {
+            filmStorage.addLike(film.getId(), user.getId());
+        }
+    }
+
+    private List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private List<Integer> toList(int[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    private Film createFilm(List<Integer> likes) {
+        Film film = TestData.film();
+        film.setLikes(likes);
+        return TestData.createFilm(filmStorage, film);
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+}
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmPopularityIndexTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final FilmPopularityIndex popularityIndex;
+    final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void popularFilmsFollowLikesTest() {
+        Film first = TestData.createFilm(filmStorage);
+        Film second = TestData.createFilm(filmStorage);
+        User user1 = TestData.createUser(userStorage);
+        User user2 = TestData.createUser(userStorage);
+
+        filmStorage.addLike(second.getId(), user1.getId());
+        filmStorage.addLike(second.getId(), user2.getId());
+        filmStorage.addLike(second.getId(), user2.getId());
+        filmStorage.addLike(first.getId(), user1.getId());
+
+        assertEquals(List.of(second.getId(), first.getId()), topIds(first, second));
+        assertEquals(2, popularityIndex.getLikes(second.getId()));
+        assertEquals(2, likeCountColumn(second.getId()));
+
+        filmStorage.deleteLike(second.getId(), user1.getId());
+        filmStorage.deleteLike(second.getId(), user2.getId());
+
+        assertEquals(List.of(first.getId(), second.getId()), topIds(first, second));
+        assertEquals(0, likeCountColumn(second.getId()));
+
+        filmStorage.deleteFilm(first);
+        assertEquals(List.of(second.getId()), topIds(first, second));
+    }
+
+    @Test
+    public void rebuildLoadsCountsFromColumnTest() {
+        Film film = TestData.createFilm(filmStorage);
+        User user = TestData.createUser(userStorage);
+        filmStorage.addLike(film.getId(), user.getId());
+
+        popularityIndex.rebuild();
+
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+        assertEquals(1, likeCountColumn(film.getId()));
+        assertEquals(List.of(film.getId()), topIds(film));
+    }
+
+    @Test
+    public void filteredPopularFilmsTest() {
+        Film comedy2001 = TestData.createFilm(filmStorage, TestData.film(1, LocalDate.of(2001, 5, 1), 1));
+        Film drama2001 = TestData.createFilm(filmStorage, TestData.film(3, LocalDate.of(2001, 6, 1), 2));
+        Film comedy2002 = TestData.createFilm(filmStorage, TestData.film(3, LocalDate.of(2002, 1, 1), 1, 2));
+        User user1 = TestData.createUser(userStorage);
+        User user2 = TestData.createUser(userStorage);
+
+        filmStorage.addLike(comedy2002.getId(), user1.getId());
+        filmStorage.addLike(comedy2002.getId(), user2.getId());
+        filmStorage.addLike(drama2001.getId(), user1.getId());
+        Film[] all = {comedy2001, drama2001, comedy2002};
+
+        assertEquals(List.of(comedy2002.getId(), comedy2001.getId()), topIds(1, null, null, all));
+        assertEquals(List.of(comedy2002.getId(), drama2001.getId()), topIds(2, null, null, all));
+        assertEquals(List.of(comedy2002.getId(), drama2001.getId()), topIds(null, 3, null, all));
+        assertEquals(List.of(drama2001.getId(), comedy2001.getId()), topIds(null, null, 2001, all));
+        assertEquals(List.of(drama2001.getId()), topIds(2, 3, 2001, all));
+        assertEquals(List.of(), topIds(1, null, 1990, all));
+
+        comedy2001.setGenres(TestData.genres(2));
+        filmStorage.update(comedy2001);
+        filmStorage.addLike(comedy2001.getId(), user1.getId());
+        filmStorage.addLike(comedy2001.getId(), user2.getId());
+
+        assertEquals(List.of(comedy2002.getId()), topIds(1, null, null, all));
+        assertEquals(List.of(comedy2001.getId(), comedy2002.getId(), drama2001.getId()), topIds(2, null, null, all));
+
+        popularityIndex.rebuild();
+        assertEquals(List.of(comedy2001.getId(), drama2001.getId()), topIds(2, null, 2001, all));
+    }
+
+    // Год задан у всех фильмов, жанр — у одного: обход идёт по срезу жанра, а условие по году
+    // проверяется у найденных фильмов
+    @Test
+    public void narrowestFacetDrivesFilteredTopTest() {
+        FilmPopularityIndex index = new FilmPopularityIndex(null);
+        index.skipDatabaseLoad();
+        for (int filmId = 1; filmId <= 100; filmId++) {
+            index.setFilm(filmId, filmId, 1, 2000, List.of(1));
+        }
+        index.setFilm(101, 0, 2, 2000, List.of(7));
+        index.setFilm(102, 5, 2, 1999, List.of(7));
+
+        assertEquals(List.of(101), index.top(10, 7, null, 2000));
+        assertEquals(List.of(102, 101), index.top(10, 7, 2, null));
+        assertEquals(List.of(100, 99), index.top(2, 1, 1, 2000));
+        assertEquals(List.of(), index.top(10, 7, 1, null));
+
+        // Фильм ушёл из среза жанра 7, срез по-прежнему выбирается по размеру и даёт верный ответ
+        index.setFilm(101, 0, 2, 2000, List.of(1));
+        assertEquals(List.of(), index.top(10, 7, null, 2000));
+        assertEquals(List.of(101), index.top(10, 1, 2, null));
+    }
+
+    private List<Integer> topIds(Integer genreId, Integer mpaId, Integer year, Film... films) {
+        List<Integer> ids = Arrays.stream(films).map(Film::getId).toList();
+        return filmStorage.getPopularFilms(Integer.MAX_VALUE, genreId, mpaId, year).stream()
+                .map(Film::getId)
+                .filter(ids::contains)
+                .toList();
+    }
+
+    private List<Integer> topIds(Film... films) {
+        List<Integer> ids = Arrays.stream(films).map(Film::getId).toList();
+        return filmStorage.getPopularFilms(Integer.MAX_VALUE).stream()
+                .map(Film::getId)
+                .filter(ids::contains)
+                .toList();
+    }
+
+    private int likeCountColumn(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?", Integer.class, filmId);
+    }
+}
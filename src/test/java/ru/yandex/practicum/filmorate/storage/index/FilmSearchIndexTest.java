@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmSearchIndexTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final FilmSearchIndex searchIndex;
+
+    @Test
+    public void tokenizeCyrillicTest() {
+        assertEquals(List.of("ежик", "тумане", "1975"), FilmSearchIndex.tokenize("Ёжик в тумане (1975)!"));
+        assertEquals(List.of("москва", "слезам", "не", "верит"), FilmSearchIndex.tokenize("Москва—слезам не верит"));
+        assertEquals("снегурочк", FilmSearchIndex.stem("снегурочка"));
+        assertEquals("любов", FilmSearchIndex.stem("любовь"));
+        assertEquals("кот", FilmSearchIndex.stem("кот"));
+    }
+
+    @Test
+    public void searchRanksByFieldAndLikesTest() {
+        Film inTitle = createFilm("Снегурочка", "сказка о девушке");
+        Film inDescription = createFilm("Зимняя сказка", "история снегурочки в лесу");
+        Film popularInTitle = createFilm("Снегурочка возвращается", "продолжение");
+        Film unrelated = createFilm("Осенний марафон", "переводчик и его жизнь");
+        User fan = TestData.createUser(userStorage);
+        filmStorage.addLike(popularInTitle.getId(), fan.getId());
+
+        assertEquals(List.of(popularInTitle.getId(), inTitle.getId(), inDescription.getId()),
+                ids(filmStorage.search("снегурочка", true, true, 10)));
+        assertEquals(List.of(popularInTitle.getId(), inTitle.getId()),
+                ids(filmStorage.search("СНЕГУРОЧКА", true, false, 10)));
+        assertEquals(List.of(inDescription.getId()), ids(filmStorage.search("снегурочки", false, true, 10)));
+        assertEquals(List.of(inDescription.getId()), ids(filmStorage.search("сказка лес", true, true, 10)));
+        assertEquals(List.of(unrelated.getId()), ids(filmStorage.search("марафон переводчик", true, true, 10)));
+        assertEquals(List.of(), ids(filmStorage.search("марафон снегурочка", true, true, 10)));
+        assertEquals(List.of(), ids(filmStorage.search("  ", true, true, 10)));
+    }
+
+    @Test
+    public void indexFollowsFilmWritesTest() {
+        Film film = createFilm("Кин-дза-дза", "пепелац и гравицапа");
+        assertEquals(List.of(film.getId()), ids(filmStorage.search("гравицапа", true, true, 10)));
+
+        film.setDescription("чатланин и пацак");
+        filmStorage.update(film);
+        assertEquals(List.of(), ids(filmStorage.search("гравицапа", true, true, 10)));
+        assertEquals(List.of(film.getId()), ids(filmStorage.search("пацак", true, true, 10)));
+
+        searchIndex.rebuild();
+        assertEquals(List.of(film.getId()), ids(filmStorage.search("чатланин", true, true, 10)));
+
+        filmStorage.deleteFilm(film);
+        assertEquals(List.of(), ids(filmStorage.search("пацак", true, true, 10)));
+    }
+
+    @Test
+    public void concurrentUpdatesOfOneFilmLeaveOnlyLastVersionTest() throws Exception {
+        Film film = createFilm("Солярис", "станция над океаном");
+        filmStorage.search("солярис", true, true, 10);
+        int filmId = film.getId();
+        int threads = 8;
+        int rounds = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int round = 0; round < rounds; round++) {
+                    searchIndex.put(filmId, "версия" + thread + "x" + round, "океан");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        searchIndex.put(filmId, "последняя", "океан");
+        assertEquals(List.of(), searchIndex.search("версия", true, false, 10));
+        assertEquals(List.of(filmId), searchIndex.search("последняя", true, false, 10));
+    }
+
+    private List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+
+    private Film createFilm(String name, String description) {
+        Film film = TestData.film(name);
+        film.setDescription(description);
+        return TestData.createFilm(filmStorage, film);
+    }
+}
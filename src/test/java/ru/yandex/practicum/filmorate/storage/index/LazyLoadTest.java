@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LazyLoadTest {
+    private final List<String> applied = new ArrayList<>();
+
+    @Test
+    public void nothingIsLoadedUntilFirstReadTest() {
+        List<String> loads = new ArrayList<>();
+        LazyLoad lazyLoad = new LazyLoad(() -> loads.add("load"));
+
+        lazyLoad.change(() -> applied.add("before load"));
+        assertEquals(List.of(), loads);
+        assertEquals(List.of(), applied);
+
+        lazyLoad.ensureLoaded();
+        lazyLoad.ensureLoaded();
+        lazyLoad.change(() -> applied.add("after load"));
+
+        assertEquals(List.of("load"), loads);
+        assertEquals(List.of("after load"), applied);
+    }
+
+    @Test
+    public void changesDuringLoadAreReplayedAfterItTest() {
+        LazyLoad[] lazyLoad = new LazyLoad[1];
+        lazyLoad[0] = new LazyLoad(() -> {
+            lazyLoad[0].change(() -> applied.add("change"));
+            lazyLoad[0].change(() -> applied.add("delta"), () -> applied.add("reread"));
+            applied.add("snapshot");
+        });
+
+        lazyLoad[0].ensureLoaded();
+
+        assertEquals(List.of("snapshot", "change", "reread"), applied);
+    }
+
+    @Test
+    public void failedLoadIsRetriedOnNextReadTest() {
+        int[] attempts = new int[1];
+        LazyLoad lazyLoad = new LazyLoad(() -> {
+            if (attempts[0]++ == 0) {
+                throw new IllegalStateException("база недоступна");
+            }
+        });
+
+        assertThrows(IllegalStateException.class, lazyLoad::ensureLoaded);
+        lazyLoad.change(() -> applied.add("dropped"));
+        lazyLoad.ensureLoaded();
+
+        assertEquals(2, attempts[0]);
+        assertEquals(List.of(), applied);
+    }
+
+    @Test
+    public void skippedLoadAppliesChangesDirectlyTest() {
+        LazyLoad lazyLoad = new LazyLoad(() -> applied.add("load"));
+
+        lazyLoad.skip();
+        lazyLoad.change(() -> applied.add("change"));
+        lazyLoad.ensureLoaded();
+
+        assertEquals(List.of("change"), applied);
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Отчёт о памяти графа дружбы на миллион связей для разных форм графа.
+ * Для сравнения приводится оценка для List<Integer>: ссылка 4 байта и объект Integer 16 байт на связь
+ * плюс ArrayList с массивом около 40 байт на пользователя.
+ * Запуск: mvn test -Pload-test -Dtest=SocialGraphFootprintTest.
+ */
+@Tag("load")
+class SocialGraphFootprintTest {
+    private static final int EDGES = 1_000_000;
+
+    @Test
+    public void footprintPerMillionEdgesTest() throws Exception {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-34s %8s %10s %14s %14s",
+                "graph", "users", "edges", "roaring, B/1M", "list, B/1M"));
+        report.add(row("20k users x 50 random friends", 20_000, 50, 20_000));
+        report.add(row("100k users x 10 random friends", 100_000, 10, 100_000));
+        report.add(row("2k users x 500 random friends", 2_000, 500, 2_000));
+        report.add(row("2k users x 500 nearby ids", 2_000, 500, 520));
+        Path out = Path.of("target", "load-test", "social-graph-footprint.txt");
+        Files.createDirectories(out.getParent());
+        Files.write(out, report);
+    }
+
+    private String row(String name, int users, int friendsPerUser, int window) {
+        Map<Integer, RoaringBitmap> adjacency = new HashMap<>();
+        Random random = new Random(7);
+        for (int user = 1; user <= users; user++) {
+            RoaringBitmap friends = new RoaringBitmap();
+            while (friends.getCardinality() < friendsPerUser) {
+                int offset = random.nextInt(window) - window / 2;
+                int friend = Math.floorMod(user + offset - 1, users) + 1;
+                if (friend != user) {
+                    friends.add(friend);
+                }
+            }
+            adjacency.put(user, friends);
+        }
+        SocialGraphIndex graph = new SocialGraphIndex(null, true, 1000, Duration.ofMillis(50), 1);
+        graph.replaceAll(adjacency);
+        SocialGraphIndex.Footprint footprint = graph.footprint();
+        assertEquals(EDGES, footprint.edges());
+        long listBytes = footprint.edges() * 20 + users * 40L;
+        assertTrue(footprint.bytes() < listBytes, name);
+        return String.format("%-34s %8d %10d %14d %14d", name, footprint.users(), footprint.edges(),
+                footprint.bytesPerMillionEdges(), listBytes * 1_000_000 / footprint.edges());
+    }
+}
@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "filmorate.graph.enabled=true")
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class SocialGraphIndexTest {
+    final UserDbStorage userStorage;
+    final SocialGraphIndex socialGraph;
+
+    @Test
+    public void graphFollowsFriendshipWritesTest() {
+        User first = createUser();
+        User second = createUser();
+        User common = createUser();
+        User onlyFirst = createUser();
+        userStorage.addFriend(first.getId(), common.getId());
+        userStorage.addFriend(first.getId(), onlyFirst.getId());
+        userStorage.addFriend(first.getId(), onlyFirst.getId());
+        userStorage.addFriend(second.getId(), common.getId());
+
+        assertArrayEquals(new int[]{common.getId(), onlyFirst.getId()}, socialGraph.friends(first.getId()).toArray());
+        assertArrayEquals(new int[]{common.getId()}, socialGraph.commonFriends(first.getId(), second.getId()).toArray());
+        assertEquals(1, socialGraph.mutualFriendCount(first.getId(), second.getId()));
+        assertEquals(List.of(common.getId()),
+                userStorage.getCommonFriends(first.getId(), second.getId()).stream().map(User::getId).toList());
+
+        userStorage.deleteFriend(first.getId(), common.getId());
+        assertArrayEquals(new int[]{onlyFirst.getId()}, socialGraph.friends(first.getId()).toArray());
+        assertEquals(0, socialGraph.mutualFriendCount(first.getId(), second.getId()));
+        assertEquals(List.of(), userStorage.getCommonFriends(first.getId(), second.getId()));
+    }
+
+    @Test
+    public void friendsOfFriendsExcludeSelfAndDirectFriendsTest() {
+        User user = createUser();
+        User friend = createUser();
+        User friendOfFriend = createUser();
+        userStorage.addFriend(user.getId(), friend.getId());
+        userStorage.addFriend(friend.getId(), user.getId());
+        userStorage.addFriend(friend.getId(), friendOfFriend.getId());
+
+        assertArrayEquals(new int[]{friendOfFriend.getId()}, socialGraph.friendsOfFriends(user.getId()).toArray());
+        assertArrayEquals(new int[]{user.getId(), friendOfFriend.getId()}, socialGraph.friends(friend.getId()).toArray());
+    }
+
+    @Test
+    public void rebuildRestoresGraphFromDatabaseTest() {
+        User user = createUser();
+        User friend = createUser();
+        userStorage.addFriend(user.getId(), friend.getId());
+        SocialGraphIndex.Footprint before = socialGraph.footprint();
+
+        socialGraph.removeEdge(user.getId(), friend.getId());
+        socialGraph.rebuild();
+
+        assertArrayEquals(new int[]{friend.getId()}, socialGraph.friends(user.getId()).toArray());
+        assertEquals(before.edges(), socialGraph.footprint().edges());
+    }
+
+    @Test
+    public void reloadKeepsOldGraphVisibleAndReplaysConcurrentChangesTest() {
+        User user = createUser();
+        User friend = createUser();
+        User newFriend = createUser();
+        userStorage.addFriend(user.getId(), friend.getId());
+        Map<Integer, RoaringBitmap> snapshot = new HashMap<>();
+        snapshot.put(user.getId(), RoaringBitmap.bitmapOf(friend.getId()));
+
+        socialGraph.reload(() -> {
+            // Во время загрузки читатели видят прежний граф, а не пустой
+            assertArrayEquals(new int[]{friend.getId()}, socialGraph.friends(user.getId()).toArray());
+            socialGraph.addEdge(user.getId(), newFriend.getId());
+            socialGraph.removeEdge(user.getId(), friend.getId());
+            return snapshot;
+        });
+
+        assertArrayEquals(new int[]{newFriend.getId()}, socialGraph.friends(user.getId()).toArray());
+        socialGraph.rebuild();
+    }
+
+    @Test
+    public void suggestionsRankNonFriendsByMutualFriendsTest() {
+        User user = createUser();
+        User a = createUser();
+        User b = createUser();
+        User c = createUser();
+        User x = createUser();
+        User y = createUser();
+        User z = createUser();
+        userStorage.addFriend(user.getId(), a.getId());
+        userStorage.addFriend(user.getId(), b.getId());
+        userStorage.addFriend(user.getId(), c.getId());
+        userStorage.addFriend(a.getId(), x.getId());
+        userStorage.addFriend(a.getId(), y.getId());
+        userStorage.addFriend(b.getId(), x.getId());
+        userStorage.addFriend(b.getId(), c.getId());
+        userStorage.addFriend(b.getId(), user.getId());
+        userStorage.addFriend(c.getId(), z.getId());
+        userStorage.addFriend(c.getId(), y.getId());
+        userStorage.addFriend(c.getId(), x.getId());
+
+        assertEquals(List.of(new SocialGraphIndex.Suggestion(x.getId(), 3),
+                        new SocialGraphIndex.Suggestion(y.getId(), 2),
+                        new SocialGraphIndex.Suggestion(z.getId(), 1)),
+                socialGraph.suggestions(user.getId(), 10));
+        assertEquals(List.of(x.getId(), y.getId()),
+                userStorage.getSuggestions(user.getId(), 2).stream().map(User::getId).toList());
+        assertEquals(List.of(), socialGraph.suggestions(z.getId(), 10));
+    }
+
+    @Test
+    public void exhaustedTimeBudgetStopsExpansionTest() {
+        SocialGraphIndex graph = new SocialGraphIndex(null, true, 1000, Duration.ZERO, 2);
+        Map<Integer, RoaringBitmap> adjacency = new HashMap<>();
+        adjacency.put(1, RoaringBitmap.bitmapOf(2, 3));
+        adjacency.put(2, RoaringBitmap.bitmapOf(4));
+        adjacency.put(3, RoaringBitmap.bitmapOf(4));
+        graph.replaceAll(adjacency);
+
+        SocialGraphIndex unhurried = new SocialGraphIndex(null, true, 1000, Duration.ofSeconds(1), 2);
+        unhurried.replaceAll(new HashMap<>(adjacency));
+
+        assertEquals(List.of(), graph.suggestions(1, 10));
+        assertEquals(List.of(new SocialGraphIndex.Suggestion(4, 2)), unhurried.suggestions(1, 10));
+    }
+
+    @Test
+    public void largeFirstHopIsExpandedInPoolTest() {
+        SocialGraphIndex graph = new SocialGraphIndex(null, true, 1000, Duration.ofSeconds(1), 2);
+        Map<Integer, RoaringBitmap> adjacency = new HashMap<>();
+        RoaringBitmap friends = new RoaringBitmap();
+        for (int friendId = 2; friendId <= 501; friendId++) {
+            friends.add(friendId);
+            adjacency.put(friendId, friendId % 2 == 0 ? RoaringBitmap.bitmapOf(1, 1000) : RoaringBitmap.bitmapOf(1001));
+        }
+        adjacency.put(1, friends);
+        graph.replaceAll(adjacency);
+
+        assertEquals(List.of(new SocialGraphIndex.Suggestion(1000, 250), new SocialGraphIndex.Suggestion(1001, 250)),
+                graph.suggestions(1, 10));
+        graph.shutdown();
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+}
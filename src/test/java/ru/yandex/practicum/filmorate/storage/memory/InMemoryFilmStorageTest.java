@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.storage.FilmStorageTest;
+
+@ActiveProfiles("in-memory")
+class InMemoryFilmStorageTest extends FilmStorageTest {
+    @Autowired
+    InMemoryFilmStorageTest(InMemoryFilmStorage filmStorage) {
+        super(filmStorage);
+    }
+}
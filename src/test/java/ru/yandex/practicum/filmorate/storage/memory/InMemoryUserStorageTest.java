@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.storage.UserStorageTest;
+
+@ActiveProfiles("in-memory")
+class InMemoryUserStorageTest extends UserStorageTest {
+    @Autowired
+    InMemoryUserStorageTest(InMemoryUserStorage userStorage, InMemoryFilmStorage filmStorage) {
+        super(userStorage, filmStorage);
+    }
+}
@@ -0,0 +1,166 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Хранилища в памяти поднимаются заново над тем же каталогом и должны восстановить состояние
+ * из снимка и журнала. snapshot-every=3, поэтому по ходу теста снимок переписывается несколько раз.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@ActiveProfiles("in-memory")
+class StorageJournalTest {
+    private static final int SNAPSHOT_EVERY = 3;
+
+    @Autowired
+    MpaStorage mpaStorage;
+    @Autowired
+    GenreStorage genreStorage;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    // Свои индексы, а не бины контекста: лайки пользователей этих хранилищ не должны попасть в общий индекс
+    final FilmPopularityIndex popularityIndex = new FilmPopularityIndex(null);
+    final FilmLikeIndex likeIndex = new FilmLikeIndex(null, true, 50, 1);
+    final FilmSearchIndex searchIndex = new FilmSearchIndex(null, popularityIndex);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void filmsSurviveRestartTest() throws IOException {
+        InMemoryUserStorage users = userStorage(SNAPSHOT_EVERY);
+        User liking = users.create(user("liking")).orElseThrow();
+        User unliking = users.create(user("unliking")).orElseThrow();
+        InMemoryFilmStorage storage = filmStorage(users, SNAPSHOT_EVERY);
+        Film first = storage.create(film("first", 1, 3)).orElseThrow();
+        Film second = storage.create(film("second", 2)).orElseThrow();
+        Film third = storage.create(film("third")).orElseThrow();
+        storage.addLike(first.getId(), liking.getId());
+        storage.addLike(first.getId(), unliking.getId());
+        storage.deleteLike(first.getId(), unliking.getId());
+        second.setName("second updated");
+        storage.update(second);
+        storage.deleteFilm(third);
+        List<String> expected = describeFilms(storage.findAll());
+        storage.close();
+
+        InMemoryFilmStorage restored = filmStorage(users, SNAPSHOT_EVERY);
+
+        assertEquals(expected, describeFilms(restored.findAll()));
+        assertTrue(restored.create(film("fourth")).orElseThrow().getId() > third.getId());
+        restored.close();
+        users.close();
+    }
+
+    @Test
+    public void usersSurviveRestartTest() throws IOException {
+        InMemoryUserStorage storage = userStorage(SNAPSHOT_EVERY);
+        User first = storage.create(user("first")).orElseThrow();
+        User second = storage.create(user("second")).orElseThrow();
+        User third = storage.create(user("third")).orElseThrow();
+        storage.addFriend(first.getId(), second.getId());
+        storage.addFriend(second.getId(), first.getId());
+        storage.addFriend(first.getId(), third.getId());
+        storage.deleteFriend(first.getId(), third.getId());
+        second.setLogin("second-renamed");
+        storage.update(second);
+        storage.deleteUser(third);
+        List<String> expected = describeUsers(storage.findAll());
+        storage.close();
+
+        InMemoryUserStorage restored = userStorage(SNAPSHOT_EVERY);
+
+        assertEquals(expected, describeUsers(restored.findAll()));
+        assertTrue(restored.existsByLoginOrEmail("second-renamed", "unknown@ya.ru"));
+        assertFalse(restored.existsByLoginOrEmail("second", "unknown@ya.ru"));
+        restored.close();
+    }
+
+    @Test
+    public void brokenLogTailIsDroppedTest() throws IOException {
+        InMemoryUserStorage storage = userStorage(1000);
+        storage.create(user("first"));
+        storage.create(user("second"));
+        storage.close();
+        // Процесс упал посреди записи строки
+        Files.writeString(directory.resolve("users.log"), "{\"kind\":\"USER_PUT\",\"us",
+                StandardOpenOption.APPEND);
+
+        InMemoryUserStorage restored = userStorage(1000);
+
+        assertEquals(2, restored.findAll().size());
+        restored.close();
+    }
+
+    private InMemoryFilmStorage filmStorage(InMemoryUserStorage users, int snapshotEvery) {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(mpaStorage, genreStorage, users, popularityIndex,
+                likeIndex, searchIndex, objectMapper, directory.toString(), snapshotEvery);
+        storage.load();
+        return storage;
+    }
+
+    private InMemoryUserStorage userStorage(int snapshotEvery) {
+        InMemoryUserStorage storage = new InMemoryUserStorage(likeIndex, objectMapper, 1000, directory.toString(),
+                snapshotEvery);
+        storage.load();
+        return storage;
+    }
+
+    private static Film film(String name, int... genreIds) {
+        List<Genre> genres = new ArrayList<>();
+        for (int genreId : genreIds) {
+            genres.add(new Genre(genreId, null));
+        }
+        return new Film(0, name, "description", LocalDate.of(2000, 1, 1), 100, 0,
+                new Mpa(1, null, null), genres, new ArrayList<>());
+    }
+
+    private static User user(String login) {
+        return new User(0, login + "@ya.ru", login, "Name", LocalDate.of(1990, 1, 1), new ArrayList<>());
+    }
+
+    private static List<String> describeFilms(Iterable<Film> films) {
+        List<String> described = new ArrayList<>();
+        for (Film film : films) {
+            described.add(film.getId() + " " + film.getName() + " " + film.getMpa().getId() + " "
+                    + film.getGenres().stream().map(Genre::getId).toList() + " " + film.getLikes());
+        }
+        return described;
+    }
+
+    private static List<String> describeUsers(Iterable<User> users) {
+        List<String> described = new ArrayList<>();
+        for (User user : users) {
+            described.add(user.getId() + " " + user.getLogin() + " " + user.getEmail() + " " + user.getFriends());
+        }
+        return described;
+    }
+}
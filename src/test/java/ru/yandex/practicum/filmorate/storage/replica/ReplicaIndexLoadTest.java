@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Свой контекст, чтобы индексы в памяти ещё не были загружены: первой их читает выборка, направленная
+ * на отстающую реплику.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-index-primary;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.url=jdbc:h2:mem:replica-index-replica;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.local-sync.enabled=true",
+        "filmorate.datasource.replica.local-sync.interval=PT1H",
+        "filmorate.datasource.replica.max-lag=PT0.3S"
+})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ReplicaIndexLoadTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final FilmPopularityIndex popularityIndex;
+    final FilmLikeIndex likeIndex;
+    final FilmSearchIndex searchIndex;
+
+    @Test
+    public void indexesLoadedFromReplicaPathReadPrimaryTest() throws Exception {
+        Film film = TestData.createFilm(filmStorage, TestData.film("unreplicated premiere"));
+        User user = TestData.createUser(userStorage);
+        filmStorage.addLike(film.getId(), user.getId());
+        Thread.sleep(400);
+
+        // Реплика ещё не получила ни фильм, ни лайк, и чтение уже идёт на неё
+        filmStorage.getPopularFilms(10);
+        filmStorage.getRecommendations(user.getId(), 10);
+        filmStorage.search("unreplicated", true, false, 10);
+
+        assertEquals(1, popularityIndex.getLikes(film.getId()));
+        assertTrue(likeIndex.likedBy(film.getId()).contains(user.getId()));
+        assertEquals(List.of(film.getId()), searchIndex.search("unreplicated", true, false, 10));
+    }
+}
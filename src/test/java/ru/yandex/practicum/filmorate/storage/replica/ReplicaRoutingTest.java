@@ -0,0 +1,120 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Две базы H2 в памяти: основная и реплика, которую догоняет {@link H2ReplicaSync}.
+ * Фоновый перенос раз в час, поэтому реплика отстаёт, пока тест сам не вызовет sync().
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-test-primary;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.url=jdbc:h2:mem:replica-test-replica;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replica.local-sync.enabled=true",
+        "filmorate.datasource.replica.local-sync.interval=PT1H",
+        "filmorate.datasource.replica.max-lag=PT0.3S",
+        "filmorate.cache.films.maximum-weight=0",
+        "filmorate.cache.users.maximum-weight=0"
+})
+@AutoConfigureObservability
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ReplicaRoutingTest {
+    final FilmDbStorage filmStorage;
+    final UserDbStorage userStorage;
+    final GenreDbStorage genreStorage;
+    final H2ReplicaSync replicaSync;
+    final MeterRegistry registry;
+
+    @Test
+    public void readsGoToReplicaUntilItCatchesUpTest() throws Exception {
+        User user = createUser();
+        Thread.sleep(400);
+
+        assertFalse(userStorage.findAll().stream().anyMatch(u -> u.getId() == user.getId()));
+        assertTrue(replicaSync.sync() > 0);
+        assertTrue(userStorage.findAll().stream().anyMatch(u -> u.getId() == user.getId()));
+        assertEquals(6, genreStorage.getAllGenres().size());
+        assertNotNull(registry.find("hikaricp.connections.active").tag("pool", "filmorate-replica").gauge());
+    }
+
+    @Test
+    public void uniquenessChecksReadPrimaryTest() {
+        User user = createUser();
+
+        assertTrue(userStorage.existsByLoginOrEmail(user.getLogin(), "nobody@ya.ru"));
+    }
+
+    @Test
+    public void likesAndFriendsAreReadFromPrimaryRightAfterWriteTest() throws Exception {
+        Film film = createFilm();
+        User user = createUser();
+        User friend = createUser();
+        replicaSync.sync();
+        Thread.sleep(400);
+
+        filmStorage.addLike(film.getId(), user.getId());
+        userStorage.addFriend(user.getId(), friend.getId());
+
+        assertEquals(List.of(user.getId()), filmStorage.getById(film.getId()).orElseThrow().getLikes());
+        assertEquals(List.of(friend.getId()),
+                userStorage.getFriends(user.getId()).stream().map(User::getId).toList());
+        assertNotNull(registry.find("filmorate.datasource.replica.reads").tag("target", "primary").functionCounter());
+        assertTrue(registry.get("filmorate.datasource.replica.reads").tag("target", "primary")
+                .functionCounter().count() >= 2);
+    }
+
+    @Test
+    public void indexDrivenReadsGoToPrimaryAfterAnyWriteTest() throws Exception {
+        Film film = createFilm();
+        User user = createUser();
+        replicaSync.sync();
+        Thread.sleep(400);
+
+        filmStorage.addLike(film.getId(), user.getId());
+
+        Film popular = filmStorage.getPopularFilms(Integer.MAX_VALUE).stream()
+                .filter(f -> f.getId() == film.getId())
+                .findFirst().orElseThrow();
+        assertEquals(List.of(user.getId()), popular.getLikes());
+    }
+
+    @Test
+    public void afterMaxLagReadsReturnToReplicaTest() throws Exception {
+        Film film = createFilm();
+        User user = createUser();
+        filmStorage.addLike(film.getId(), user.getId());
+        replicaSync.sync();
+
+        filmStorage.deleteLike(film.getId(), user.getId());
+        Thread.sleep(400);
+
+        assertEquals(List.of(user.getId()), filmStorage.getById(film.getId()).orElseThrow().getLikes());
+        replicaSync.sync();
+        assertTrue(filmStorage.getById(film.getId()).orElseThrow().getLikes().isEmpty());
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+
+    private Film createFilm() {
+        return TestData.createFilm(filmStorage);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RowImageTest {
+
+    @Test
+    public void rowSurvivesEncodingTest() throws SQLException {
+        Object[] row = {1, 2L, true, "фильм", null, LocalDate.of(2000, 1, 1),
+                LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_789)};
+
+        assertArrayEquals(row, RowImage.decode(RowImage.encode(row)));
+    }
+
+    @Test
+    public void sqlDateIsReadBackAsLocalDateTest() throws SQLException {
+        Object[] row = {Date.valueOf(LocalDate.of(1990, 5, 17))};
+
+        assertArrayEquals(new Object[]{LocalDate.of(1990, 5, 17)}, RowImage.decode(RowImage.encode(row)));
+    }
+
+    @Test
+    public void unsupportedTypeIsRejectedTest() {
+        assertThrows(SQLException.class, () -> RowImage.encode(new Object[]{BigDecimal.ONE}));
+    }
+}
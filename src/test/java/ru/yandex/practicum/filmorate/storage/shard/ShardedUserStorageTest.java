@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import ru.yandex.practicum.filmorate.storage.UserStorageTest;
+
+@ActiveProfiles("sharded")
+@TestPropertySource(properties = {
+        "filmorate.storage.shards.count=3",
+        "filmorate.storage.shards.url=jdbc:h2:mem:sharded-storage-{shard};DB_CLOSE_DELAY=-1"
+})
+class ShardedUserStorageTest extends UserStorageTest {
+    @Autowired
+    ShardedUserStorageTest(ShardedUserStorage userStorage, ShardedFilmStorage filmStorage) {
+        super(userStorage, filmStorage);
+    }
+}
@@ -0,0 +1,219 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.index.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.support.TestData;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Три шарда — три базы H2 в памяти. Проверки смотрят и в сами шарды: где лежат строки и что в них записано.
+ */
+@SpringBootTest(properties = {
+        "filmorate.storage.shards.count=3",
+        "filmorate.storage.shards.url=jdbc:h2:mem:sharding-test-{shard};DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureTestDatabase
+@ActiveProfiles("sharded")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ShardingTest {
+    final ShardedFilmStorage filmStorage;
+    final ShardedUserStorage userStorage;
+    final Shards shards;
+    final SqlStatementCounter statementCounter;
+    final FilmLikeIndex likeIndex;
+    final FilmSearchIndex searchIndex;
+    final FilmPopularityIndex popularityIndex;
+
+    @Test
+    public void filmsWithLikesAndGenresLiveInFilmShardTest() {
+        User user = createUser();
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            films.add(createFilm(1, 2000, 1));
+        }
+
+        for (Film film : films) {
+            filmStorage.addLike(film.getId(), user.getId());
+            for (int shard = 0; shard < 3; shard++) {
+                int expected = shard == film.getId() % 3 ? 1 : 0;
+                assertEquals(expected, count(shard, "FILMS WHERE FILM_ID = ?", film.getId()));
+                assertEquals(expected, count(shard, "LIKES WHERE FILM_ID = ?", film.getId()));
+                assertEquals(expected, count(shard, "FILM_GENRE WHERE FILM_ID = ?", film.getId()));
+            }
+        }
+        assertEquals(List.of(user.getId()), filmStorage.getById(films.get(4).getId()).orElseThrow().getLikes());
+        assertTrue(filmStorage.findAll().stream().map(Film::getId).toList()
+                .containsAll(films.stream().map(Film::getId).toList()));
+    }
+
+    @Test
+    public void popularFilmsMergeTopOfEachShardTest() {
+        int year = 1900 + TestData.next() % 100;
+        List<User> users = List.of(createUser(), createUser(), createUser(), createUser());
+        List<Film> films = new ArrayList<>();
+        int[] likes = {1, 4, 0, 3, 2, 4};
+        for (int i = 0; i < likes.length; i++) {
+            Film film = createFilm(i % 2 == 0 ? 1 : 2, year);
+            films.add(film);
+            for (int j = 0; j < likes[i]; j++) {
+                filmStorage.addLike(film.getId(), users.get(j).getId());
+            }
+        }
+
+        // 4 лайка у второго и шестого фильмов (равенство решает меньший id), затем 3 и 2
+        assertEquals(List.of(films.get(1).getId(), films.get(5).getId(), films.get(3).getId(), films.get(4).getId()),
+                ids(filmStorage.getPopularFilms(4, null, null, year)));
+        assertEquals(List.of(films.get(4).getId(), films.get(0).getId()),
+                ids(filmStorage.getPopularFilms(2, null, 1, year)));
+
+        filmStorage.deleteLike(films.get(1).getId(), users.get(0).getId());
+        assertEquals(films.get(5).getId(), ids(filmStorage.getPopularFilms(1, null, null, year)).get(0));
+    }
+
+    @Test
+    public void friendshipAcrossShardsTest() {
+        User user = createUser();
+        User friend = createUser();
+        User common = createUser();
+        assertNotEquals(user.getId() % 3, friend.getId() % 3);
+
+        assertFalse(userStorage.addFriend(user.getId(), friend.getId()));
+        assertTrue(userStorage.addFriend(friend.getId(), user.getId()));
+        assertEquals(1, count(user.getId() % 3, "FRIENDSHIP WHERE USER_ID = ? AND STATUS", user.getId()));
+        assertEquals(1, count(friend.getId() % 3, "FRIENDSHIP WHERE USER_ID = ? AND STATUS", friend.getId()));
+
+        userStorage.addFriend(user.getId(), common.getId());
+        userStorage.addFriend(friend.getId(), common.getId());
+        assertEquals(List.of(common.getId()), ids(userStorage.getCommonFriends(user.getId(), friend.getId())));
+        assertEquals(List.of(friend.getId(), common.getId()), ids(userStorage.getFriends(user.getId())));
+        assertEquals(List.of(friend.getId(), common.getId()), userStorage.getUser(user.getId()).getFriends());
+
+        User stranger = createUser();
+        userStorage.addFriend(stranger.getId(), friend.getId());
+        assertEquals(List.of(user.getId(), common.getId()), ids(userStorage.getSuggestions(stranger.getId(), 10)));
+
+        assertTrue(userStorage.deleteFriend(friend.getId(), user.getId()));
+        assertEquals(0, count(user.getId() % 3, "FRIENDSHIP WHERE USER_ID = ? AND STATUS", user.getId()));
+    }
+
+    @Test
+    public void referencedUserIsNotDeletedTest() {
+        User user = createUser();
+        User friend = createUser();
+        User fan = createUser();
+        userStorage.addFriend(user.getId(), friend.getId());
+        filmStorage.addLike(createFilm(1, 2000).getId(), fan.getId());
+
+        assertThrows(DataIntegrityViolationException.class, () -> userStorage.deleteUser(friend));
+        assertThrows(DataIntegrityViolationException.class, () -> userStorage.deleteUser(fan));
+
+        userStorage.deleteFriend(user.getId(), friend.getId());
+        assertTrue(userStorage.deleteUser(friend));
+    }
+
+    // Адресат заявки лежит в другом шарде, fk_Friendship_FriendID там не проверить
+    @Test
+    public void friendRequestToUnknownUserIsRejectedTest() {
+        User user = createUser();
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> userStorage.addFriend(user.getId(), Integer.MAX_VALUE));
+        assertEquals(0, count(user.getId() % 3, "FRIENDSHIP WHERE USER_ID = ?", user.getId()));
+    }
+
+    @Test
+    public void loginAndEmailAreUniqueAcrossShardsTest() {
+        User user = createUser();
+
+        assertTrue(userStorage.existsByLoginOrEmail(user.getLogin(), "nobody@ya.ru"));
+        assertThrows(DuplicateKeyException.class, () -> userStorage.create(new User(0, "other@ya.ru",
+                user.getLogin(), "Other", LocalDate.of(1990, 1, 1), new ArrayList<>())));
+        User other = createUser();
+        other.setEmail(user.getEmail());
+        assertThrows(DuplicateKeyException.class, () -> userStorage.update(other));
+    }
+
+    // Индексы не заполняются при старте: загрузка при первом чтении и rebuild читают все шарды,
+    // а не основную базу, где фильмов нет
+    @Test
+    public void indexesLoadFromAllShardsTest() {
+        User fan = createUser();
+        User newcomer = createUser();
+        Film common = createFilm(1, 2000);
+        Film recommended = createFilm(1, 2000);
+        Film searched = filmStorage.create(TestData.film("sharded lighthouse")).orElseThrow();
+        filmStorage.addLike(common.getId(), fan.getId());
+        filmStorage.addLike(recommended.getId(), fan.getId());
+        filmStorage.addLike(common.getId(), newcomer.getId());
+
+        likeIndex.rebuild();
+        searchIndex.rebuild();
+        popularityIndex.rebuild();
+
+        assertEquals(List.of(recommended.getId()), ids(filmStorage.getRecommendations(newcomer.getId(), 10)));
+        assertEquals(List.of(searched.getId()), ids(filmStorage.search("lighthouse", true, false, 10)));
+        assertEquals(2, popularityIndex.getLikes(common.getId()));
+    }
+
+    // Запросы к шардам идут в виртуальных потоках, но засчитываются потоку, который их разослал
+    @Test
+    public void fanOutStatementsAreCountedForCallingThreadTest() {
+        long before = statementCounter.current();
+
+        shards.queryAll(jdbcTemplate -> jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+
+        assertEquals(shards.count(), statementCounter.current() - before);
+    }
+
+    @Test
+    public void streamAndPagesMergeShardsInIdOrderTest() {
+        for (int i = 0; i < 5; i++) {
+            createUser();
+        }
+        List<Integer> expected = userStorage.findAll().stream().map(User::getId).toList();
+
+        List<Integer> streamed = new ArrayList<>();
+        userStorage.streamAll(user -> streamed.add(user.getId()));
+        assertEquals(expected, streamed);
+        assertEquals(expected.subList(1, 4), ids(userStorage.findPage(expected.get(0), 3)));
+    }
+
+    private int count(int shard, String from, int id) {
+        return shards.at(shard).queryForObject("SELECT COUNT(*) FROM " + from, Integer.class, id);
+    }
+
+    private User createUser() {
+        return TestData.createUser(userStorage);
+    }
+
+    private Film createFilm(int mpaId, int year, int... genreIds) {
+        return TestData.createFilm(filmStorage, TestData.film(mpaId, LocalDate.of(year, 6, 1), genreIds));
+    }
+
+    private static List<Integer> ids(List<?> items) {
+        return items.stream()
+                .map(item -> item instanceof Film film ? film.getId() : ((User) item).getId())
+                .toList();
+    }
+}
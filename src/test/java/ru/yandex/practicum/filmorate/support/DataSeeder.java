@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.support;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Наполняет пустую базу синтетическими пользователями, фильмами, лайками и дружбами пакетными вставками.
+ * Данные детерминированы зерном, чтобы прогоны нагрузочных тестов и бенчмарков можно было сравнивать.
+ * Вставки идут мимо хранилищ, поэтому FILMS.LIKE_COUNT пересчитывается здесь же одним запросом, как миграция V2:
+ * индекс популярности читает только счётчик. Если индексы в памяти уже загружены, после наполнения
+ * их нужно перестроить.
+ */
+public final class DataSeeder {
+    private static final int BATCH_SIZE = 5_000;
+
+    private DataSeeder() {
+    }
+
+    public static void seed(JdbcTemplate jdbcTemplate, int users, int films, int friendsPerUser, int likesPerUser) {
+        List<Object[]> userRows = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            userRows.add(new Object[]{"seed" + i + "@ya.ru", "seed" + i, "Seed " + i, Date.valueOf(LocalDate.of(1990, 1, 1))});
+        }
+        batch(jdbcTemplate, "INSERT INTO USERS (EMAIL, LOGIN, USER_NAME, BIRTHDAY) VALUES (?, ?, ?, ?)", userRows);
+
+        List<Object[]> filmRows = new ArrayList<>();
+        for (int i = 1; i <= films; i++) {
+            filmRows.add(new Object[]{"Film " + i, "description " + i, Date.valueOf(LocalDate.of(2000, 1, 1)), 90, i % 5 + 1});
+        }
+        batch(jdbcTemplate, "INSERT INTO FILMS (FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) " +
+                "VALUES (?, ?, ?, ?, ?)", filmRows);
+
+        Random random = new Random(42);
+        List<Object[]> friendships = new ArrayList<>();
+        List<Object[]> likes = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            for (int friend : distinct(random, Math.min(friendsPerUser, users - 1), users, user)) {
+                friendships.add(new Object[]{user, friend});
+            }
+            for (int film : distinct(random, Math.min(likesPerUser, films), films, 0)) {
+                likes.add(new Object[]{user, film});
+            }
+        }
+        batch(jdbcTemplate, "INSERT INTO FRIENDSHIP (USER_ID, FRIEND_ID, STATUS) VALUES (?, ?, FALSE)", friendships);
+        batch(jdbcTemplate, "INSERT INTO LIKES (USER_ID, FILM_ID) VALUES (?, ?)", likes);
+        if (!likes.isEmpty()) {
+            jdbcTemplate.update("UPDATE FILMS F SET LIKE_COUNT = " +
+                    "(SELECT COUNT(*) FROM LIKES L WHERE L.FILM_ID = F.FILM_ID)");
+        }
+    }
+
+    private static void batch(JdbcTemplate jdbcTemplate, String sqlQuery, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sqlQuery, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    private static Set<Integer> distinct(Random random, int count, int bound, int except) {
+        Set<Integer> ids = new HashSet<>();
+        while (ids.size() < count) {
+            int id = random.nextInt(bound) + 1;
+            if (id != except) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.support;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фильмы и пользователи для тестов хранилищ. Названия и логины уникальны в пределах JVM: тесты делят
+ * базу закешированного контекста и не должны натыкаться на чужие строки.
+ * Фильм по умолчанию — 2000 год, 100 минут, рейтинг 1, без жанров и лайков.
+ */
+public final class TestData {
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private TestData() {
+    }
+
+    public static int next() {
+        return SEQUENCE.incrementAndGet();
+    }
+
+    public static Film film() {
+        return film("film " + next());
+    }
+
+    public static Film film(String name) {
+        return new Film(0, name, "description", LocalDate.of(2000, 1, 1), 100, 0,
+                new Mpa(1, null, null), new ArrayList<>(), new ArrayList<>());
+    }
+
+    public static Film film(int mpaId, LocalDate releaseDate, int... genreIds) {
+        Film film = film();
+        film.setMpa(new Mpa(mpaId, null, null));
+        film.setReleaseDate(releaseDate);
+        film.setGenres(genres(genreIds));
+        return film;
+    }
+
+    public static User user() {
+        int n = next();
+        return new User(0, "user" + n + "@ya.ru", "user" + n, "User " + n, LocalDate.of(1990, 1, 1),
+                new ArrayList<>());
+    }
+
+    public static List<Genre> genres(int... ids) {
+        return new ArrayList<>(Arrays.stream(ids).mapToObj(id -> new Genre(id, null)).toList());
+    }
+
+    public static Film createFilm(FilmStorage filmStorage) {
+        return filmStorage.create(film()).orElseThrow();
+    }
+
+    public static Film createFilm(FilmStorage filmStorage, Film film) {
+        return filmStorage.create(film).orElseThrow();
+    }
+
+    public static User createUser(UserStorage userStorage) {
+        return userStorage.create(user()).orElseThrow();
+    }
+}